@@ -1,5 +1,7 @@
 package com.softwire.todos;
 
+import com.softwire.todos.blame.Blame;
+
 import java.io.File;
 
 public class CodeTodo {
@@ -7,13 +9,23 @@ public class CodeTodo {
     private final int lineNumber;
     private final String line;
     private final GitCheckout containingGitCheckout;
+    private final Blame blame;
 
     @java.beans.ConstructorProperties({"file", "lineNumber", "line"})
     public CodeTodo(File file, int lineNumber, String line, GitCheckout containingGitCheckout) {
+        this(file, lineNumber, line, containingGitCheckout, null);
+    }
+
+    public CodeTodo(File file, int lineNumber, String line, GitCheckout containingGitCheckout, Blame blame) {
         this.file = file;
         this.lineNumber = lineNumber;
         this.line = line;
         this.containingGitCheckout = containingGitCheckout;
+        this.blame = blame;
+    }
+
+    public CodeTodo withBlame(Blame blame) {
+        return new CodeTodo(file, lineNumber, line, containingGitCheckout, blame);
     }
 
     public File getFile() {
@@ -42,6 +54,14 @@ public class CodeTodo {
         return containingGitCheckout;
     }
 
+    /**
+     * Who last changed this line, and when, or null if the TODOs weren't blamed.
+     * This is not part of the TODO's identity, so is ignored by {@link #equals}.
+     */
+    public Blame getBlame() {
+        return blame;
+    }
+
     public boolean equals(Object o) {
         if (o == this) return true;
         if (!(o instanceof CodeTodo)) return false;
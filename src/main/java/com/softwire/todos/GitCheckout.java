@@ -1,12 +1,22 @@
 package com.softwire.todos;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.softwire.todos.jfr.FlightRecording;
+import com.softwire.todos.jfr.GitExecEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -19,26 +29,52 @@ import static java.util.Collections.singleton;
 
 public class GitCheckout {
     private final File baseDir;
-    private final SourceControlLinkFormatter linkFormatter;
+    private final Config config;
+    private final Supplier<SourceControlLinkFormatter> linkFormatter;
+    private final Logger log = LoggerFactory.getLogger(getClass());
     private static final Pattern GITHUB_URL_PAT = Pattern.compile(
             "git@(?<hostname>(github|gitlab)\\.[\\w.-]+):(?<path>.*)\\.git");
+    // Submodules are often cloned over HTTPS
+    private static final Pattern GITHUB_HTTPS_URL_PAT = Pattern.compile(
+            "https://([^@/]+@)?(?<hostname>(github|gitlab)\\.[\\w.-]+)/(?<path>.*?)(\\.git)?");
+    // A line of `git submodule status` output, for a submodule which has been checked
+    // out. (The status is "-" if it hasn't.)
+    private static final Pattern SUBMODULE_STATUS_PATT = Pattern.compile(
+            "[ +](?<commit>[0-9a-f]+) (?<path>.+?)( \\(.*\\))?");
 
-    public GitCheckout(File baseDir, Config config) throws Exception {
+    public GitCheckout(File baseDir, Config config) {
         this.baseDir = baseDir;
-        this.linkFormatter = createLinkFormatter(config);
+        this.config = config;
+        // Determining the link format needs several `git` commands, so is left until
+        // there is a TODO to link to.
+        this.linkFormatter = Suppliers.memoize(() -> {
+            try {
+                return createLinkFormatter();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * A checkout whose link format is already known, for example one which was
+     * scanned elsewhere and so may not exist on this machine.
+     */
+    public GitCheckout(File baseDir, SourceControlLinkFormatter linkFormatter) {
+        this.baseDir = baseDir;
+        this.config = null;
+        this.linkFormatter = Suppliers.ofInstance(linkFormatter);
     }
 
     public SourceControlLinkFormatter getSourceControlLinkFormatter() {
-        return linkFormatter;
+        return linkFormatter.get();
     }
 
     public File getBaseDir() {
         return baseDir;
     }
 
-    private SourceControlLinkFormatter createLinkFormatter(
-            Config config)
-            throws Exception {
+    private SourceControlLinkFormatter createLinkFormatter() throws Exception {
 
         String gitBranchName = determineGitBranchName();
 
@@ -49,10 +85,11 @@ public class GitCheckout {
         } else {
             // Auto-detect
             try {
-                // (In Git >= 2.7.0 we could do "git remote get-url origin")
-                List<String> output = git(asList("ls-remote", "--get-url", "origin"));
-                String originUrl = Iterables.getOnlyElement(output);
+                String originUrl = getOriginUrl();
                 Matcher matcher = GITHUB_URL_PAT.matcher(originUrl);
+                if (!matcher.matches()) {
+                    matcher = GITHUB_HTTPS_URL_PAT.matcher(originUrl);
+                }
                 checkArgument(matcher.matches());
                 String githubUrl = String.format(
                         "https://%s/%s",
@@ -60,6 +97,12 @@ public class GitCheckout {
                         matcher.group("path"));
                 return new SourceControlLinkFormatter.Github(githubUrl, gitBranchName);
             } catch (Exception e) {
+                if (config instanceof SubmoduleConfig) {
+                    // Better to link to the wrong repository than to fail the whole run
+                    log.warn("Unable to auto-detect a GitHub or GitLab URL for the submodule in {}, " +
+                            "so linking its TODOs as if they were in the superproject", baseDir);
+                    return ((SubmoduleConfig) config).superproject.getSourceControlLinkFormatter();
+                }
                 throw new ConfigException(
                         "Unable to auto-detect a GitHub or GitLab URL for this checkout. " +
                                 "Please specify --github-url or --gitblit-url or fix the cause",
@@ -69,6 +112,9 @@ public class GitCheckout {
     }
 
     public String determineGitBranchName() throws Exception {
+        if (config != null && config.getGitBranchName() != null) {
+            return config.getGitBranchName();
+        }
         // On Jenkins, $GIT_BRANCH will be e.g. origin/master
         String gitBranchEnv = System.getenv("GIT_BRANCH");
         if (gitBranchEnv != null) {
@@ -81,6 +127,56 @@ public class GitCheckout {
         }
     }
 
+    public String getOriginUrl() throws Exception {
+        // (In Git >= 2.7.0 we could do "git remote get-url origin")
+        return Iterables.getOnlyElement(git(asList("ls-remote", "--get-url", "origin")));
+    }
+
+    /**
+     * The checkouts of this checkout's submodules, and of their submodules in turn,
+     * which have been checked out.
+     * <p>
+     * Each submodule is a separate repository, so the command-line link settings don't
+     * apply: its link format is detected from its own "origin", and its links go to the
+     * commit which is checked out there, since a submodule isn't usually on a branch.
+     * If its "origin" isn't on GitHub or GitLab, this checkout's link format is used.
+     */
+    public List<GitCheckout> findSubmodules() throws Exception {
+        List<GitCheckout> submodules = new ArrayList<>();
+        for (String line : git(asList("-c", "core.quotePath=false", "submodule", "status", "--recursive"))) {
+            Matcher matcher = SUBMODULE_STATUS_PATT.matcher(line);
+            if (matcher.matches()) {
+                submodules.add(new GitCheckout(
+                        new File(baseDir, matcher.group("path")),
+                        new SubmoduleConfig(this, matcher.group("commit"))));
+            }
+        }
+        return submodules;
+    }
+
+    /**
+     * Fetches the given branch from "origin", so that commits pushed to it since
+     * this checkout was last updated can be inspected without touching the working tree.
+     */
+    public void fetchBranch(String branchName) throws Exception {
+        git(asList("fetch", "--quiet", "origin", "refs/heads/" + branchName));
+    }
+
+    /**
+     * The commit which is checked out.
+     */
+    public String getHeadCommit() throws Exception {
+        return Iterables.getOnlyElement(git(asList("rev-parse", "HEAD")));
+    }
+
+    /**
+     * Lists the paths of files which were added or modified between the two commits.
+     */
+    public List<String> changedPaths(String fromRevision, String toRevision) throws Exception {
+        return git(asList("-c", "core.quotePath=false", "diff", "--name-only", "--no-renames", "--diff-filter=d",
+                fromRevision, toRevision, "--"));
+    }
+
     /**
      * Runs the `git` command with the given args in this checkout and returns the output
      */
@@ -89,47 +185,94 @@ public class GitCheckout {
     }
 
     public List<String> git(List<String> cmd, Set<Integer> expectedReturnCodes) throws Exception {
+        byte[] output = gitBytes(cmd, expectedReturnCodes);
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(output), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Runs the `git` command with the given args in this checkout and returns the raw
+     * output, e.g. for output which uses NUL separators
+     */
+    public byte[] gitBytes(List<String> cmd, Set<Integer> expectedReturnCodes) throws Exception {
         List<String> completeCommand = new ArrayList<>();
         completeCommand.add("git");
         completeCommand.addAll(cmd);
         return exec(completeCommand, expectedReturnCodes);
     }
 
-    private List<String> exec(List<String> cmd, Set<Integer> expectedReturnCodes) throws Exception {
+    private byte[] exec(List<String> cmd, Set<Integer> expectedReturnCodes) throws Exception {
         ProcessBuilder builder = new ProcessBuilder(cmd);
         // This simplifies threading, as it avoids deadlock on stderr blocking
         builder.redirectErrorStream(true);
 
         builder.directory(baseDir);
 
+        GitExecEvent event = FlightRecording.isAvailable() ? GitExecEvent.begin(String.join(" ", cmd)) : null;
+
         Process process = builder.start();
 
         process.getOutputStream().close();
 
-        ArrayList<String> output = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream()))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.add(line);
-            }
-            int ret = process.waitFor();
-            if (!expectedReturnCodes.contains(ret)) {
-                throw new IOException(String.format(
-                        "exec \"%s\" failed with code %s. Output was:\n%s",
-                        String.join(" ", cmd),
-                        ret,
-                        String.join("\n", output)));
-            }
-            return output;
+        byte[] output;
+        try (InputStream processOutput = process.getInputStream()) {
+            output = ByteStreams.toByteArray(processOutput);
+        }
+        int ret = process.waitFor();
+        if (event != null) {
+            event.end(ret, output.length);
         }
+        if (!expectedReturnCodes.contains(ret)) {
+            throw new IOException(String.format(
+                    "exec \"%s\" failed with code %s. Output was:\n%s",
+                    String.join(" ", cmd),
+                    ret,
+                    new String(output, StandardCharsets.UTF_8)));
+        }
+        return output;
     }
 
     public interface Config {
         String getGithubUrl();
 
         String getGitblitUrl();
+
+        /**
+         * The branch to link to, or null to detect it
+         */
+        String getGitBranchName();
+    }
+
+    private static class SubmoduleConfig implements Config {
+        private final GitCheckout superproject;
+        private final String commit;
+
+        SubmoduleConfig(GitCheckout superproject, String commit) {
+            this.superproject = superproject;
+            this.commit = commit;
+        }
+
+        @Override
+        public String getGithubUrl() {
+            return null;
+        }
+
+        @Override
+        public String getGitblitUrl() {
+            return null;
+        }
+
+        @Override
+        public String getGitBranchName() {
+            return commit;
+        }
     }
 
     private static class ConfigException extends Exception {
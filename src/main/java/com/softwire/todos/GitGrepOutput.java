@@ -0,0 +1,119 @@
+package com.softwire.todos;
+
+import com.google.common.base.VerifyException;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Parses the output of `git grep -n -z`, which is a record per matching line of
+ * "path NUL line-number NUL text LF".
+ * <p>
+ * Since the fields are separated by NULs, which can't appear in a path or in the text
+ * of a file which isn't binary, any path can be parsed, including one with a ":" in it.
+ * The output is parsed as bytes: the line number is read without decoding it, and
+ * the path is only decoded once for each file, as all the matches in a file come
+ * together. Paths and text are taken to be UTF-8, as git stores them.
+ */
+class GitGrepOutput {
+    private static final byte NUL = 0;
+
+    private GitGrepOutput() {
+    }
+
+    /**
+     * @param outputPrefix a prefix on each path to remove, e.g. "revision:" when
+     *                     grepping a revision rather than the working tree
+     */
+    static List<CodeTodo> parse(byte[] output, String outputPrefix, GitCheckout gitCheckout) {
+        byte[] prefix = outputPrefix.getBytes(StandardCharsets.UTF_8);
+        List<CodeTodo> todos = new ArrayList<>();
+        // The last file seen, so that its path isn't decoded again for each match
+        int lastPathStart = -1;
+        int lastPathEnd = -1;
+        File lastFile = null;
+
+        int i = 0;
+        while (i < output.length) {
+            int pathStart = i;
+            int pathEnd = indexOf(output, NUL, pathStart);
+            int lineNumberEnd = pathEnd < output.length ? indexOf(output, NUL, pathEnd + 1) : output.length;
+            if (lineNumberEnd >= output.length) {
+                throw unexpected(output, pathStart, output.length);
+            }
+            int textEnd = indexOf(output, (byte) '\n', lineNumberEnd + 1);
+
+            if (lastFile == null || !rangeEquals(output, lastPathStart, lastPathEnd, pathStart, pathEnd)) {
+                if (!startsWith(output, pathStart, pathEnd, prefix)) {
+                    throw unexpected(output, pathStart, textEnd);
+                }
+                lastFile = new File(new String(
+                        output, pathStart + prefix.length, pathEnd - pathStart - prefix.length, StandardCharsets.UTF_8));
+                lastPathStart = pathStart;
+                lastPathEnd = pathEnd;
+            }
+
+            int lineNumber = 0;
+            for (int j = pathEnd + 1; j < lineNumberEnd; j++) {
+                int digit = output[j] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw unexpected(output, pathStart, textEnd);
+                }
+                lineNumber = lineNumber * 10 + digit;
+            }
+
+            // (As a line read with BufferedReader.readLine, the text has no "\r\n")
+            int textStart = lineNumberEnd + 1;
+            int end = textEnd > textStart && output[textEnd - 1] == '\r' ? textEnd - 1 : textEnd;
+            String text = new String(output, textStart, end - textStart, StandardCharsets.UTF_8);
+
+            todos.add(new CodeTodo(lastFile, lineNumber, text, gitCheckout));
+            i = textEnd + 1;
+        }
+        return todos;
+    }
+
+    private static VerifyException unexpected(byte[] output, int start, int end) {
+        String record = new String(output, start, end - start, StandardCharsets.UTF_8).replace('\0', ':');
+        return new VerifyException("Unexpected `git grep -z` output: '" + record + "'");
+    }
+
+    /**
+     * @return the index of the first {@code b} at or after {@code from}, or the length
+     * of the output if there is none
+     */
+    private static int indexOf(byte[] output, byte b, int from) {
+        int i = from;
+        while (i < output.length && output[i] != b) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean rangeEquals(byte[] output, int start1, int end1, int start2, int end2) {
+        if (end1 - start1 != end2 - start2) {
+            return false;
+        }
+        for (int i = 0; i < end1 - start1; i++) {
+            if (output[start1 + i] != output[start2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] output, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (output[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,135 @@
+package com.softwire.todos;
+
+import com.softwire.todos.regex.UserRegex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The paths which are not scanned for TODOs in a checkout.
+ * <p>
+ * Paths are excluded by patterns in the `.gitignore` format, from `--exclude-path` and
+ * from a `.todocheckerignore` file at the root of the checkout. These are handed to
+ * the scan itself, as `git grep` pathspecs, or as ignore rules for the
+ * {@link com.softwire.todos.worktree.WorkingTreeScanner}, so that excluded files are
+ * never read. Unlike a `.gitignore`, "!" patterns are not supported, as a pathspec
+ * can't re-include a path which another has excluded.
+ * <p>
+ * The older `--exclude-path-regex` is matched against the path of each TODO found,
+ * so the excluded files are still read.
+ */
+public class PathExclusions {
+    static final String IGNORE_FILE = ".todocheckerignore";
+    private static final Logger log = LoggerFactory.getLogger(PathExclusions.class);
+
+    private final List<String> patterns;
+    // Null if there is no --exclude-path-regex
+    private final UserRegex regex;
+
+    PathExclusions(List<String> patterns, UserRegex regex) {
+        this.patterns = patterns;
+        this.regex = regex;
+    }
+
+    /**
+     * The exclusions which apply to every checkout.
+     *
+     * @throws IllegalArgumentException if the `--exclude-path-regex` can't be used
+     */
+    public static PathExclusions fromConfig(TodoCheckerApp.Config config) {
+        UserRegex regex = config.getExcludePathRegex() == null
+                ? null
+                : UserRegex.compile(
+                        "--exclude-path-regex",
+                        config.getExcludePathRegex(),
+                        0,
+                        Duration.ofMillis(config.getRegexTimeoutMillis()));
+        List<String> patterns = new ArrayList<>();
+        for (String pattern : config.getExcludePaths()) {
+            addPattern(patterns, pattern, "--exclude-path");
+        }
+        return new PathExclusions(patterns, regex);
+    }
+
+    /**
+     * These exclusions, plus those in the `.todocheckerignore` in the given directory,
+     * if there is one.
+     */
+    PathExclusions withIgnoreFile(File baseDir) throws IOException {
+        Path ignoreFile = baseDir.toPath().resolve(IGNORE_FILE);
+        if (!Files.isRegularFile(ignoreFile)) {
+            return this;
+        }
+        List<String> combined = new ArrayList<>(patterns);
+        for (String line : Files.readAllLines(ignoreFile, StandardCharsets.UTF_8)) {
+            addPattern(combined, line, ignoreFile.toString());
+        }
+        return new PathExclusions(combined, regex);
+    }
+
+    private static void addPattern(List<String> patterns, String line, String source) {
+        String pattern = line.trim();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        if (pattern.startsWith("!")) {
+            log.warn("Ignoring \"{}\" in {}: re-including a path is not supported", pattern, source);
+            return;
+        }
+        patterns.add(pattern);
+    }
+
+    /**
+     * The patterns, in the `.gitignore` format, relative to the root of the checkout.
+     */
+    public List<String> getPatterns() {
+        return Collections.unmodifiableList(patterns);
+    }
+
+    /**
+     * The patterns as `git grep` pathspecs which exclude the same paths.
+     * <p>
+     * See https://git-scm.com/docs/gitglossary#Documentation/gitglossary.txt-aiddefpathspecapathspec
+     */
+    List<String> toPathspecs() {
+        List<String> pathspecs = new ArrayList<>();
+        for (String pattern : patterns) {
+            boolean directoryOnly = pattern.endsWith("/");
+            String glob = directoryOnly ? pattern.substring(0, pattern.length() - 1) : pattern;
+            // As in a .gitignore, a pattern without a "/" matches at any depth
+            boolean anchored = glob.contains("/");
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.isEmpty()) {
+                continue;
+            }
+            if (!anchored) {
+                glob = "**/" + glob;
+            }
+            if (!directoryOnly) {
+                pathspecs.add(":(exclude,glob)" + glob);
+            }
+            // A glob with wildcards doesn't match the paths inside a directory it matches
+            pathspecs.add(":(exclude,glob)" + glob + "/**");
+        }
+        return pathspecs;
+    }
+
+    /**
+     * Whether the `--exclude-path-regex` matches the TODO's path. (The patterns are
+     * applied by the scan.)
+     */
+    boolean isExcludedByRegex(CodeTodo todo) {
+        return regex != null && regex.find(todo.getPosixPath(), null) != null;
+    }
+}
@@ -9,7 +9,33 @@ import static com.google.common.base.Preconditions.checkArgument;
 public abstract class SourceControlLinkFormatter {
     public abstract String build(String file, int line);
 
+    /**
+     * A name for this kind of link, which can be passed to {@link #create}
+     */
+    public abstract String getType();
+
+    public abstract String getBaseUrl();
+
+    public abstract String getGitBranchName();
+
+    /**
+     * Recreates a formatter from its type, base URL and branch name, e.g. when reading
+     * back scan results which were saved elsewhere.
+     */
+    public static SourceControlLinkFormatter create(String type, String baseUrl, String gitBranchName) {
+        switch (type) {
+            case Github.TYPE:
+                return new Github(baseUrl, gitBranchName);
+            case Gitblit.TYPE:
+                return new Gitblit(baseUrl, gitBranchName);
+            default:
+                throw new IllegalArgumentException("Unknown link type: " + type);
+        }
+    }
+
     public static class Github extends SourceControlLinkFormatter {
+        static final String TYPE = "github";
+
         private final String baseUrl;
         private final String gitBranchName;
 
@@ -25,9 +51,26 @@ public abstract class SourceControlLinkFormatter {
                     urlEncodeExceptSlash(file),
                     line);
         }
+
+        @Override
+        public String getType() {
+            return TYPE;
+        }
+
+        @Override
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        @Override
+        public String getGitBranchName() {
+            return gitBranchName;
+        }
     }
 
     public static class Gitblit extends SourceControlLinkFormatter {
+        static final String TYPE = "gitblit";
+
         private final String baseUrl;
         private final String gitBranchName;
 
@@ -44,6 +87,21 @@ public abstract class SourceControlLinkFormatter {
                     urlEncode(gitBranchName),
                     line);
         }
+
+        @Override
+        public String getType() {
+            return TYPE;
+        }
+
+        @Override
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        @Override
+        public String getGitBranchName() {
+            return gitBranchName;
+        }
     }
 
     private static String urlEncode(String s) {
@@ -3,51 +3,85 @@ package com.softwire.todos;
 import com.atlassian.jira.rest.client.api.domain.Issue;
 import com.atlassian.jira.rest.client.api.domain.Resolution;
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.re2j.Matcher;
+import com.softwire.todos.concurrent.StageExecutor;
+import com.softwire.todos.concurrent.TaskExecutors;
 import com.softwire.todos.errors.TodoCheckerErrors;
 import com.softwire.todos.errors.WithInvalidStatusError;
 import com.softwire.todos.errors.WithResolvedCardError;
 import com.softwire.todos.errors.WithoutCardError;
+import com.softwire.todos.history.RunHistory;
+import com.softwire.todos.history.RunRecord;
+import com.softwire.todos.jira.IssueSummary;
+import com.softwire.todos.jira.JiraCallBudgetExceededException;
 import com.softwire.todos.jira.JiraClient;
 import com.softwire.todos.jira.JiraCommenter;
 import com.softwire.todos.jira.JiraProject;
+import com.softwire.todos.jira.ResolvedIssueCache;
+import com.softwire.todos.jira.SharedIssueCache;
+import com.softwire.todos.metrics.Metrics;
+import com.softwire.todos.regex.UserRegex;
 import com.softwire.todos.reporter.Reporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.singletonList;
 
 /**
  * The high-level application logic for the `TodoChecker` tool.
  */
 public class TodoCheckerApp {
+    // The number of tasks which may wait for each stage of the pipeline
+    private static final int STAGE_BUFFER_SIZE = 1000;
+
     private final Config config;
     private final JiraClient jiraClient;
     private final List<Reporter> reporters;
     private final JiraCommenter jiraCommenter;
     private final List<TodoFinder> todoFinders;
+    private final Metrics metrics;
+    private final TaskExecutors taskExecutors;
+    private final ResolvedIssueCache resolvedIssueCache;
+    private final SharedIssueCache sharedIssueCache;
+    private final RunHistory runHistory;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     public TodoCheckerApp(Config config,
-                          JiraClient jiraClient,
                           ArrayList<Reporter> reporters,
                           JiraCommenter jiraCommenter,
-                          List<TodoFinder> todoFinders) {
+                          List<TodoFinder> todoFinders,
+                          TodoCheckerServices services) {
         this.config = config;
-        this.jiraClient = jiraClient;
+        this.jiraClient = services.getJiraClient();
         this.reporters = reporters;
         this.jiraCommenter = jiraCommenter;
         this.todoFinders = todoFinders;
+        this.metrics = services.getMetrics();
+        this.taskExecutors = services.getTaskExecutors();
+        this.resolvedIssueCache = services.getResolvedIssueCache();
+        this.sharedIssueCache = services.getSharedIssueCache();
+        this.runHistory = services.getRunHistory();
     }
 
     public boolean run() throws Exception {
@@ -56,51 +90,361 @@ public class TodoCheckerApp {
                      "as a command-line argument");
         }
 
-        log.info("Connected to JIRA, server build number = {}", jiraClient.getServerInfo().getBuildNumber());
+        return checkInPipeline(scans(), true);
+    }
+
+    /**
+     * Finds the TODOs in every checkout, without connecting to JIRA.
+     */
+    public List<CodeTodo> scan() throws Exception {
+        return metrics.time("scan", () -> taskExecutors.runAll("scan", config.getParallelism(), scans()).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList()));
+    }
+
+    private List<Callable<List<CodeTodo>>> scans() {
+        return todoFinders.stream()
+                .map(todoFinder -> (Callable<List<CodeTodo>>)
+                        () -> todoFinder.findAllTodosInSource(PathExclusions.fromConfig(config)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Checks TODOs which have already been found, e.g. by a scan on another machine,
+     * updating the JIRA comments and reporting any errors.
+     */
+    public boolean check(List<CodeTodo> allTodos) throws Exception {
+        return checkInPipeline(singletonList(() -> allTodos), true);
+    }
+
+    /**
+     * Checks only the given paths in one checkout, as of the given revision.
+     * <p>
+     * This is used to give quick feedback on a push. Since only part of the codebase
+     * has been scanned, the JIRA comments (which list every TODO on a card) are left
+     * alone: they will be brought up to date by the next full run.
+     */
+    public boolean runIncremental(
+            TodoFinder todoFinder,
+            String revision,
+            Collection<String> paths) throws Exception {
+        return checkInPipeline(
+                singletonList(() -> todoFinder.findTodosInRevision(
+                        PathExclusions.fromConfig(config),
+                        revision,
+                        paths)),
+                false);
+    }
+
+    public List<TodoFinder> getTodoFinders() {
+        return todoFinders;
+    }
+
+    /**
+     * Checks the TODOs found by the given scans, as a pipeline of stages:
+     * <ol>
+     *     <li>scan each checkout</li>
+     *     <li>extract the card key from each TODO</li>
+     *     <li>look up each card in JIRA, unless it is known to have been resolved for a while, or
+     *     another run on this machine has just fetched it</li>
+     *     <li>validate the TODOs against their cards</li>
+     *     <li>update the JIRA comments, if {@code updateComments}</li>
+     *     <li>report any errors</li>
+     *     <li>add the run to the {@link RunHistory}, if {@code updateComments}, i.e. if the
+     *     whole codebase was checked</li>
+     * </ol>
+     * Each stage has its own executor, so work moves on as soon as its input is ready:
+     * e.g. the cards referenced from one checkout are looked up while the next is still
+     * being scanned, and errors are reported while the comments are still being written.
+     * <p>
+     * A card's comment lists all of its TODOs, and a card may be referenced by an old
+     * key after it has moved, so validation and comment updates wait until every scan
+     * and lookup has finished.
+     */
+    private boolean checkInPipeline(
+            List<Callable<List<CodeTodo>>> scans,
+            boolean updateComments) throws Exception {
+        ConcurrentMap<String, CompletableFuture<Issue>> lookups = new ConcurrentHashMap<>();
+        // The cards which weren't fetched, as they were in the resolved or shared card cache
+        ConcurrentMap<String, IssueSummary> cachedCards = new ConcurrentHashMap<>();
+        int jiraParallelism = config.getJiraParallelism();
+
+        try (StageExecutor scanStage = taskExecutors.newStage("scan", config.getParallelism(), STAGE_BUFFER_SIZE);
+             StageExecutor extractStage = taskExecutors.newStage("extract", 1, STAGE_BUFFER_SIZE);
+             StageExecutor lookupStage = taskExecutors.newStage("jira-lookup", jiraParallelism, STAGE_BUFFER_SIZE);
+             StageExecutor validateStage = taskExecutors.newStage("validate", 1, STAGE_BUFFER_SIZE);
+             StageExecutor reconcileStage = taskExecutors.newStage("jira-reconcile", 1, STAGE_BUFFER_SIZE);
+             StageExecutor commentStage = taskExecutors.newStage("jira-comment", jiraParallelism, STAGE_BUFFER_SIZE);
+             StageExecutor reportStage = taskExecutors.newStage(
+                     "report", Math.max(1, reporters.size()), STAGE_BUFFER_SIZE)) {
 
-        List<CodeTodo> allTodos = todoFinders.stream()
-            .flatMap(todoFinder -> {
-                try {
-                    return todoFinder.findAllTodosInSource(config.getExcludePathRegex()).stream();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+            // 1. and 2. Start looking up each card as soon as the first TODO against it is found
+            List<CompletableFuture<List<CodeTodo>>> scanned = scans.stream()
+                    .map(scan -> scanStage.submit(() -> timed("scan", scan)))
+                    .collect(Collectors.toList());
+            List<CompletableFuture<ListMultimap<String, CodeTodo>>> extracted = scanned.stream()
+                    .map(future -> future.thenApplyAsync(todos -> {
+                        ListMultimap<String, CodeTodo> todosByIssueId =
+                                timed("group", () -> groupTodosByJiraIssueId(todos));
+                        for (String issueId : todosByIssueId.keySet()) {
+                            if (issueId != null) {
+                                startLookup(issueId, lookups, cachedCards, lookupStage);
+                            }
+                        }
+                        return todosByIssueId;
+                    }, extractStage))
+                    .collect(Collectors.toList());
+
+            // 3. Once every card has been looked up, group the TODOs by card
+            CompletableFuture<TodosByCard> grouped = allOf(extracted)
+                    .thenCompose(ignored -> allOf(new ArrayList<>(lookups.values())))
+                    .thenApply(ignored -> {
+                        List<CodeTodo> allTodos = scanned.stream()
+                                .flatMap(future -> future.join().stream())
+                                .collect(Collectors.toList());
+                        log.info("{} code TODOs found", allTodos.size());
+                        log.debug(Joiner.on("\n").join(allTodos));
+
+                        TodosByCard todosByCard = new TodosByCard();
+                        for (CompletableFuture<ListMultimap<String, CodeTodo>> future : extracted) {
+                            for (Map.Entry<String, CodeTodo> entry : future.join().entries()) {
+                                if (entry.getKey() == null) {
+                                    todosByCard.todosByIssue.put(null, entry.getValue());
+                                    continue;
+                                }
+                                // Null if the card wasn't fetched
+                                Issue issue = lookups.get(entry.getKey()).join();
+                                IssueSummary cachedCard = cachedCards.get(entry.getKey());
+                                if (issue != null) {
+                                    todosByCard.todosByIssue.put(issue, entry.getValue());
+                                } else if (cachedCard != null) {
+                                    todosByCard.todosByCachedCard.put(cachedCard, entry.getValue());
+                                }
+                            }
+                        }
+                        return todosByCard;
+                    });
+
+            // 4. and 6. Validate, then report
+            CompletableFuture<TodoCheckerErrors> validated = grouped.thenApplyAsync(this::validate, validateStage);
+            CompletableFuture<Boolean> reported = validated
+                    .thenCompose(errors -> allOf(reporters.stream()
+                            .map(reporter -> CompletableFuture.runAsync(() -> timed(
+                                    "report",
+                                    reporter.getClass().getSimpleName(),
+                                    () -> {
+                                        reporter.report(errors);
+                                        return null;
+                                    }), reportStage))
+                            .collect(Collectors.toList()))
+                            .thenApply(ignored -> errors.isSuccess()));
+
+            // 5. Meanwhile, update the comments
+            CompletableFuture<Void> commented = updateComments
+                    ? grouped.thenComposeAsync(
+                            todosByCard -> updateJiraComments(todosByCard, commentStage), reconcileStage)
+                    : CompletableFuture.completedFuture(null);
+
+            // 7. Meanwhile, record the run
+            CompletableFuture<Void> recorded = updateComments
+                    ? grouped.thenAcceptBothAsync(validated, (todosByCard, errors) -> timed("history", () -> {
+                        runHistory.append(runRecord(todosByCard, errors));
+                        return null;
+                    }), reportStage)
+                    : CompletableFuture.completedFuture(null);
+
+            return join(reported
+                    .thenCombine(commented, (success, ignored) -> success)
+                    .thenCombine(recorded, (success, ignored) -> success));
+        }
+    }
+
+    private void startLookup(
+            String issueId,
+            ConcurrentMap<String, CompletableFuture<Issue>> lookups,
+            ConcurrentMap<String, IssueSummary> cachedCards,
+            StageExecutor lookupStage) {
+        CompletableFuture<Issue> lookup = new CompletableFuture<>();
+        if (lookups.putIfAbsent(issueId, lookup) != null) {
+            // Already being looked up
+            return;
+        }
+        IssueSummary cachedCard = resolvedIssueCache.lookup(issueId);
+        if (cachedCard != null) {
+            log.debug("Not fetching {}, as it was resolved when last fetched", issueId);
+            cachedCards.put(issueId, cachedCard);
+            lookup.complete(null);
+            return;
+        }
+        lookupStage.submit(() -> timed("jira_lookup", () -> {
+            // (This may wait for another run to fetch the card)
+            IssueSummary sharedCard = sharedIssueCache.lookupOrClaim(issueId);
+            if (sharedCard != null) {
+                log.debug("Not fetching {}, as another run has just fetched it", issueId);
+                cachedCards.put(issueId, sharedCard);
+                return null;
+            }
+            Issue issue = null;
+            try {
+                issue = jiraClient.getIssue(issueId);
+                if (issue != null) {
+                    resolvedIssueCache.record(issueId, issue);
+                    sharedIssueCache.record(issueId, issue);
                 }
-            })
-            .collect(Collectors.toList());
+                return issue;
+            } catch (JiraCallBudgetExceededException e) {
+                // The card will be listed in the budget's summary at the end of the run
+                log.debug("Not checking code TODOs against {}", issueId);
+                return null;
+            } finally {
+                if (issue == null) {
+                    sharedIssueCache.release(issueId);
+                }
+            }
+        })).whenComplete((issue, e) -> {
+            if (e != null) {
+                lookup.completeExceptionally(e);
+            } else {
+                lookup.complete(issue);
+            }
+        });
+    }
 
-        log.info("{} code TODOs found", allTodos.size());
-        log.debug(Joiner.on("\n").join(allTodos));
+    private CompletableFuture<Void> updateJiraComments(
+            TodosByCard todosByCard,
+            StageExecutor commentStage) {
+        Multimap<Issue, CodeTodo> todosByIssue = todosByCard.todosByIssue;
+        if (todosByIssue.isEmpty() && todosByCard.todosByCachedCard.isEmpty() && !config.getWriteToJira()) {
+            // Nothing to comment on, so don't connect to JIRA at all.
+            // (When writing, we still need to search JIRA for stale comments to remove.)
+            log.info("Skipping JIRA comment updates, as there are no TODOs");
+            return CompletableFuture.completedFuture(null);
+        }
 
-        Multimap<Issue, CodeTodo> todosByIssue = groupTodosByJiraIssue(allTodos);
+        // The journal lets an interrupted run's successor skip the cards already done
+        Multimap<String, CodeTodo> todosByIssueKey = HashMultimap.create();
+        todosByIssue.asMap().forEach((issue, codeTodos) -> {
+            if (issue != null) {
+                todosByIssueKey.putAll(issue.getKey(), codeTodos);
+            }
+        });
+        todosByCard.todosByCachedCard.asMap().forEach(
+                (cachedCard, codeTodos) -> todosByIssueKey.putAll(cachedCard.getKey(), codeTodos));
+        // (This runs on its own stage, rather than the comment stage, as queueing the
+        // cards' updates there from one of its own workers could wait forever for a free
+        // slot, and rather than on whichever lookup worker finished last)
+        timed("comment", () -> {
+            jiraCommenter.beginReconciliation(todosByIssueKey);
+            return null;
+        });
+        return startJiraCommentUpdates(todosByCard, commentStage)
+                .thenRunAsync(() -> timed("comment", () -> {
+                    jiraCommenter.finishReconciliation();
+                    return null;
+                }), commentStage);
+    }
 
-        jiraCommenter.updateJiraComments(todosByIssue);
+    private CompletableFuture<Void> startJiraCommentUpdates(
+            TodosByCard todosByCard,
+            StageExecutor commentStage) {
+        Multimap<Issue, CodeTodo> todosByIssue = todosByCard.todosByIssue;
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
+        for (Map.Entry<Issue, Collection<CodeTodo>> entry : todosByIssue.asMap().entrySet()) {
+            if (entry.getKey() != null) {
+                updates.add(CompletableFuture.runAsync(
+                        () -> timed("comment", () -> {
+                            jiraCommenter.updateJiraComment(entry.getKey(), entry.getValue());
+                            return null;
+                        }),
+                        commentStage));
+            }
+        }
+        for (Map.Entry<IssueSummary, Collection<CodeTodo>> entry : todosByCard.todosByCachedCard.asMap().entrySet()) {
+            updates.add(CompletableFuture.runAsync(
+                    () -> timed("comment", () -> {
+                        jiraCommenter.updateJiraComment(entry.getKey().getKey(), entry.getValue());
+                        return null;
+                    }),
+                    commentStage));
+        }
+        Set<String> unfetchedIssueKeys = todosByCard.todosByCachedCard.keySet().stream()
+                .map(IssueSummary::getKey)
+                .collect(Collectors.toSet());
+        updates.add(CompletableFuture.runAsync(
+                () -> timed("comment", () -> {
+                    jiraCommenter.removeStaleComments(todosByIssue.keySet(), unfetchedIssueKeys);
+                    return null;
+                }),
+                commentStage));
+        return allOf(updates);
+    }
+
+    private RunRecord runRecord(TodosByCard todosByCard, TodoCheckerErrors errors) throws Exception {
+        Map<String, String> commits = new HashMap<>();
+        for (TodoFinder todoFinder : todoFinders) {
+            GitCheckout gitCheckout = todoFinder.getGitCheckout();
+            commits.put(gitCheckout.getBaseDir().getPath(), gitCheckout.getHeadCommit());
+        }
+        Map<String, Integer> todosByIssue = new HashMap<>();
+        for (Map.Entry<Issue, Collection<CodeTodo>> entry : todosByCard.todosByIssue.asMap().entrySet()) {
+            if (entry.getKey() != null) {
+                todosByIssue.merge(entry.getKey().getKey(), entry.getValue().size(), Integer::sum);
+            }
+        }
+        for (Map.Entry<IssueSummary, Collection<CodeTodo>> entry : todosByCard.todosByCachedCard.asMap().entrySet()) {
+            todosByIssue.merge(entry.getKey().getKey(), entry.getValue().size(), Integer::sum);
+        }
+        return RunRecord.of(System.currentTimeMillis(), config.getJobName(), commits, todosByIssue, errors);
+    }
 
+    private TodoCheckerErrors validate(TodosByCard todosByCard) {
         TodoCheckerErrors errors = TodoCheckerErrors.empty();
-        findTodosOnClosedCards(todosByIssue, errors);
-        findTodosWithoutACardNumber(todosByIssue, errors);
+        findTodosOnClosedCards(todosByCard.todosByIssue, errors);
+        findTodosOnCachedCards(todosByCard.todosByCachedCard, errors);
+        findTodosWithoutACardNumber(todosByCard.todosByIssue, errors);
+        return errors;
+    }
 
-        for (Reporter reporter : reporters) {
-            reporter.report(errors);
-        }
+    private <T> T timed(String phase, Callable<T> task) {
+        return StageExecutor.call(() -> metrics.time(phase, task));
+    }
+
+    private <T> T timed(String phase, String detail, Callable<T> task) {
+        return StageExecutor.call(() -> metrics.time(phase, detail, task));
+    }
 
-        return errors.isSuccess();
+    private static CompletableFuture<Void> allOf(List<? extends CompletableFuture<?>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
     }
 
     /**
-     * Sort the list into a multimap from JiraCard to CodeTodos.
+     * Waits for the pipeline to finish, and throws the exception which stopped it, if any.
+     */
+    private static <T> T join(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw e;
+        }
+    }
+
+    /**
+     * Sort the list into a multimap from JIRA card key to CodeTodos.
      * <p>
      * Any CodeTodos with no card will be included at the "null" key.
      * <p>
      * Any CodeTodos against ignored projects will not be returned
      */
-    private Multimap<Issue, CodeTodo> groupTodosByJiraIssue(List<CodeTodo> allTodos) throws Exception {
-        HashMultimap<Issue, CodeTodo> acc = HashMultimap.create();
+    private ListMultimap<String, CodeTodo> groupTodosByJiraIssueId(List<CodeTodo> allTodos) {
+        ListMultimap<String, CodeTodo> acc = LinkedListMultimap.create();
 
-        List<Pattern> jiraProjectPatterns = config.getJiraProjects().stream()
-            .map(JiraProject::getIssueIdPattern)
+        Duration regexTimeout = Duration.ofMillis(config.getRegexTimeoutMillis());
+        List<UserRegex> jiraProjectPatterns = config.getJiraProjects().stream()
+            .map(project -> project.getIssueIdRegex(regexTimeout))
             .collect(Collectors.toList());
-        List<Pattern> ignoredJiraProjectPatterns = config.getIgnoredJiraProjects().stream()
-            .map(JiraProject::getIssueIdPattern)
+        List<UserRegex> ignoredJiraProjectPatterns = config.getIgnoredJiraProjects().stream()
+            .map(project -> project.getIssueIdRegex(regexTimeout))
             .collect(Collectors.toList());
 
         outer:
@@ -108,8 +452,8 @@ public class TodoCheckerApp {
             String id = null;
             // Check if the item matches a jira project
             for (int i = 0; i < config.getJiraProjects().size(); i++) {
-                Matcher matcher = jiraProjectPatterns.get(i).matcher(codeTodo.getLine());
-                if (matcher.find()) {
+                Matcher matcher = jiraProjectPatterns.get(i).find(codeTodo.getLine(), location(codeTodo));
+                if (matcher != null) {
                     String idGroup = matcher.group("id");
                     checkNotNull(idGroup);
                     id = config.getJiraProjects().get(i).getKey() + "-" + idGroup;
@@ -118,9 +462,9 @@ public class TodoCheckerApp {
             }
             // Else check if it matches an ignored jira project
             if (id == null) {
-                for (Pattern pattern : ignoredJiraProjectPatterns) {
-                    Matcher matcher = pattern.matcher(codeTodo.getLine());
-                    if (matcher.find()) {
+                for (UserRegex pattern : ignoredJiraProjectPatterns) {
+                    Matcher matcher = pattern.find(codeTodo.getLine(), location(codeTodo));
+                    if (matcher != null) {
                         log.debug("Ignoring code TODO against {}: {}", matcher.group(), codeTodo);
                         continue outer;
                     }
@@ -130,8 +474,7 @@ public class TodoCheckerApp {
             // Now add it to the multimap
             if (id != null) {
                 if (null == config.getRestrictToSingleCardId() || id.equals(config.getRestrictToSingleCardId())) {
-                    Issue issue = jiraClient.getIssue(id);
-                    acc.put(issue, codeTodo);
+                    acc.put(id, codeTodo);
                 }
             } else {
                 if (null == config.getRestrictToSingleCardId()) {
@@ -143,6 +486,10 @@ public class TodoCheckerApp {
         return acc;
     }
 
+    private static String location(CodeTodo codeTodo) {
+        return codeTodo.getFile() + ":" + codeTodo.getLineNumber();
+    }
+
     private void findTodosOnClosedCards(
             Multimap<Issue, CodeTodo> todosByIssue,
             TodoCheckerErrors errors) {
@@ -154,25 +501,53 @@ public class TodoCheckerApp {
             }
 
             Resolution resolution = issue.getResolution();
-            if (resolution != null) {
-                log.error(
-                        String.format("TODOs on a resolved '%s' JIRA card found %s",
-                        resolution.getName(),
-                        issue.getKey()
-                ));
-                logTodos(entry.getValue());
-                errors.getWithResolvedCardErrors().add(new WithResolvedCardError(entry.getValue(), issue, resolution.getName()));
-            }
+            addCardErrors(
+                    issue.getKey(),
+                    resolution == null ? null : resolution.getName(),
+                    issue.getStatus().getName(),
+                    entry.getValue(),
+                    errors);
+        }
+    }
 
-            if (config.getInvalidCardStatuses().contains(issue.getStatus().getName())) {
-                    log.error(String.format(
-                            "TODOs on a JIRA card with status '%s': %s",
-                            issue.getStatus().getName(),
-                            issue.getKey()
-                    ));
-                logTodos(entry.getValue());
-                errors.getWithInvalidStatusErrors().add(new WithInvalidStatusError(entry.getValue(), issue, issue.getStatus().getName()));
-            }
+    private void findTodosOnCachedCards(
+            Multimap<IssueSummary, CodeTodo> todosByCachedCard,
+            TodoCheckerErrors errors) {
+
+        for (Map.Entry<IssueSummary, Collection<CodeTodo>> entry : todosByCachedCard.asMap().entrySet()) {
+            IssueSummary card = entry.getKey();
+            addCardErrors(card.getKey(), card.getResolutionName(), card.getStatusName(), entry.getValue(), errors);
+        }
+    }
+
+    /**
+     * @param resolutionName the card's resolution, or null if it is unresolved
+     */
+    private void addCardErrors(
+            String issueKey,
+            String resolutionName,
+            String statusName,
+            Collection<CodeTodo> codeTodos,
+            TodoCheckerErrors errors) {
+
+        if (resolutionName != null) {
+            log.error(
+                    String.format("TODOs on a resolved '%s' JIRA card found %s",
+                    resolutionName,
+                    issueKey
+            ));
+            logTodos(codeTodos);
+            errors.getWithResolvedCardErrors().add(new WithResolvedCardError(codeTodos, issueKey, resolutionName));
+        }
+
+        if (config.getInvalidCardStatuses().contains(statusName)) {
+                log.error(String.format(
+                        "TODOs on a JIRA card with status '%s': %s",
+                        statusName,
+                        issueKey
+                ));
+            logTodos(codeTodos);
+            errors.getWithInvalidStatusErrors().add(new WithInvalidStatusError(codeTodos, issueKey, statusName));
         }
     }
 
@@ -195,12 +570,41 @@ public class TodoCheckerApp {
         }
     }
 
+    /**
+     * The TODOs against each card, split by whether the card was fetched or found in
+     * the resolved card cache. TODOs without a card are under the "null" card.
+     */
+    private static class TodosByCard {
+        private final Multimap<Issue, CodeTodo> todosByIssue = HashMultimap.create();
+        private final Multimap<IssueSummary, CodeTodo> todosByCachedCard = HashMultimap.create();
+    }
+
     public interface Config {
+        String getJobName();
         List<String> getInvalidCardStatuses();
         List<JiraProject> getJiraProjects();
         String getRestrictToSingleCardId();
         List<JiraProject> getIgnoredJiraProjects();
         String getExcludePathRegex();
+        /**
+         * Patterns in the `.gitignore` format for paths which aren't scanned
+         */
+        List<String> getExcludePaths();
+        /**
+         * How long to spend matching a user-supplied regex against each line, before
+         * giving up on that line
+         */
+        int getRegexTimeoutMillis();
         boolean getWriteToJira();
+
+        /**
+         * The number of checkouts to scan at once
+         */
+        int getParallelism();
+
+        /**
+         * The number of JIRA cards to look up at once
+         */
+        int getJiraParallelism();
     }
 }
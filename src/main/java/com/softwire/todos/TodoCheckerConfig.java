@@ -1,17 +1,20 @@
 package com.softwire.todos;
 
+import com.softwire.todos.blame.GitBlamer;
+import com.softwire.todos.history.RunHistoryQuery;
 import com.softwire.todos.jira.JiraClient;
 import com.softwire.todos.jira.JiraCommenter;
 import com.softwire.todos.jira.JiraProject;
 import com.softwire.todos.jira.JiraProjectOptionHandler;
 import com.softwire.todos.slack.SlackClient;
+import com.softwire.todos.webhook.WebhookServer;
 import org.kohsuke.args4j.Option;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Config, GitCheckout.Config, SlackClient.Config, TodoCheckerApp.Config {
+public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Config, GitCheckout.Config, SlackClient.Config, TodoCheckerApp.Config, WebhookServer.Config, GitBlamer.Config, RunHistoryQuery.Config {
     private static final List<String> DEFAULT_INVALID_CARD_STATUSES = Arrays.asList("In Test", "Passed test", "UAT", "Done");
 
     @Option(name = "--write-to-jira",
@@ -27,10 +30,76 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
 
     @Option(name = "--src",
             usage = "The directory to scan for TODOs (must be in a git checkout). " +
-                    "Pass this arg multiple times for multiple projects.",
-            required = true)
+                    "Pass this arg multiple times for multiple projects. Required unless --manifest or --reconcile-only " +
+                    "is given.",
+            forbids = "--manifest")
     public List<String> srcDirs;
 
+    @Option(name = "--recurse-submodules",
+            usage = "Also scan the submodules of each --src checkout which have been checked out, and their " +
+                    "submodules in turn, each as a separate checkout. Links to TODOs in a submodule go to the " +
+                    "commit checked out there, in the repository of its \"origin\".",
+            forbids = "--manifest")
+    public boolean recurseSubmodules = false;
+
+    @Option(name = "--manifest",
+            usage = "A JSON file listing many repositories to check in this one run, each with its own settings. " +
+                    "See the README for the format.",
+            forbids = "--src")
+    public String manifest = null;
+
+    @Option(name = "--parallelism",
+            usage = "The number of --src checkouts, or --manifest repositories, to check at once. Defaults to 4.")
+    public int parallelism = 4;
+
+    @Option(name = "--jira-parallelism",
+            usage = "The number of JIRA requests to make at once, for each repository. Defaults to 1.")
+    public int jiraParallelism = 1;
+
+    @Option(name = "--virtual-threads",
+            usage = "Run JIRA requests and git commands on virtual threads, rather than on a pool of " +
+                    "platform threads. Needs the Java 21 build, see the README.")
+    public boolean virtualThreads = false;
+
+    @Option(name = "--summary-file",
+            usage = "With --manifest, write a summary of the results for every repository to this file.")
+    public String summaryFile = null;
+
+    @Option(name = "--scan-only",
+            usage = "Only scan the --src checkouts, and save the TODOs found to this file, without connecting " +
+                    "to JIRA. The file can then be checked by a --reconcile-only run, e.g. on another machine.",
+            forbids = {"--manifest", "--reconcile-only"})
+    public String scanOnly = null;
+
+    @Option(name = "--reconcile-only",
+            usage = "Don't scan, but read the TODOs from this file, saved by a --scan-only run, then update the " +
+                    "JIRA comments and report errors as usual.",
+            forbids = {"--manifest", "--src"})
+    public String reconcileOnly = null;
+
+    @Option(name = "--shard-count",
+            usage = "With --manifest, split the repositories between this many workers. Each worker only scans " +
+                    "its own share and saves the TODOs found to --shard-dir, for a later --merge-shards run.",
+            depends = {"--manifest", "--shard-index", "--shard-dir"})
+    public Integer shardCount = null;
+
+    @Option(name = "--shard-index",
+            usage = "With --shard-count, which of the workers this is, counting from 0.",
+            depends = {"--shard-count"})
+    public Integer shardIndex = null;
+
+    @Option(name = "--shard-dir",
+            usage = "The directory to which each --shard-count worker saves its results, and from which " +
+                    "--merge-shards reads them.")
+    public String shardDir = null;
+
+    @Option(name = "--merge-shards",
+            usage = "With --manifest, don't scan, but read the results of every --shard-count worker from " +
+                    "--shard-dir, then update the JIRA comments and report errors for all of the repositories.",
+            depends = {"--manifest", "--shard-dir"},
+            forbids = {"--shard-count"})
+    public boolean mergeShards = false;
+
     @Option(name = "--jira-url",
             usage = "The base url for jira with trailing slash, defaults to https://jira.softwire.com/jira/",
             required = false)
@@ -42,8 +111,8 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
                     "card key in a todo comment, then pass it here with an \"=\". For example if your JIRA project " +
                     "key is something long like COMPANY-DEPT-FOO but your team writes TODOs like " +
                     "\"TODO:FOO-123\", then pass \"--jira-project COMPANY-DEPT-FOO=FOO\"\n" +
-                    "You can also use a regex, e.g. \"--jira-project COMPANY-DEPT-FOO=FOO|DEPT-FOO\"",
-            required = true,
+                    "You can also use a regex, e.g. \"--jira-project COMPANY-DEPT-FOO=FOO|DEPT-FOO\"\n" +
+                    "Required unless --manifest or --scan-only is given.",
             handler = JiraProjectOptionHandler.class)
     public List<JiraProject> jiraProjects = new ArrayList<>();
 
@@ -68,13 +137,13 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
     public String gitblitUrl;
 
     @Option(name = "--jira-username",
-            usage = "The username of the Jira user who will comment on Jira tickets, e.g. sjw",
-            required = true)
+            usage = "The username of the Jira user who will comment on Jira tickets, e.g. sjw. " +
+                    "Required unless only scanning.")
     public String jiraUsername;
 
     @Option(name = "--jira-password",
-            usage = "The password of the Jira user who will comment on Jira tickets",
-            required = true)
+            usage = "The password of the Jira user who will comment on Jira tickets. " +
+                    "Required unless only scanning.")
     public String jiraPassword;
 
 
@@ -86,11 +155,133 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
                     "an error.  By default these are \"In Test\", \"Passed test\", \"UAT\", and \"Done\".")
     public List<String> invalidCardStatuses = null;
 
+    @Option(name = "--exclude-path",
+            usage = "A path to exclude, as a pattern in the .gitignore format, e.g. 'node_modules/' or '*.min.js'. " +
+                    "Pass this flag multiple times for multiple patterns. Excluded files are not read at all. " +
+                    "Patterns can also be listed in a .todocheckerignore file at the root of the checkout.")
+    public List<String> excludePaths = new ArrayList<>();
+
     @Option(name = "--exclude-path-regex",
-            usage = "Any paths to exclude, by regex, e.g. '^(node_modules/|broken-code/)'",
+            usage = "Any paths to exclude, by regex, e.g. '^(node_modules/|broken-code/)'. This uses RE2 syntax, " +
+                    "so backreferences and lookaround are not supported. Prefer --exclude-path, as the files " +
+                    "excluded by this are still read.",
             required = false)
     public String excludePathRegex;
 
+    @Option(name = "--regex-timeout-millis",
+            usage = "How long to spend matching --exclude-path-regex, or a --jira-project-key regex, against each " +
+                    "line before giving up on it. Lines which are given up on are logged, and treated as not " +
+                    "matching. Defaults to 1000.")
+    public int regexTimeoutMillis = 1000;
+
+    @Option(name = "--working-tree",
+            usage = "Scan the files on disk, including untracked files and any which are not in git at all, " +
+                    "rather than only the files in git. Files matched by a .gitignore are skipped.",
+            forbids = {"--blame"})
+    public boolean workingTree = false;
+
+    @Option(name = "--blame",
+            usage = "Find who added each TODO, and when, with `git blame`. Reports then list the oldest TODOs " +
+                    "first, with their authors.")
+    public boolean blame = false;
+
+    @Option(name = "--blame-cache",
+            usage = "With --blame, keep the blame of each file in this file between runs, so that files which " +
+                    "haven't changed are not blamed again.",
+            depends = {"--blame"})
+    public String blameCache = null;
+
+    @Option(name = "--blame-parallelism",
+            usage = "With --blame, the number of files to blame at once, for each checkout. Defaults to 4.",
+            depends = {"--blame"})
+    public int blameParallelism = 4;
+
+    @Option(name = "--jira-max-reads",
+            usage = "The maximum number of requests this run may make to read from JIRA. Once these are used up, " +
+                    "TODOs against cards which haven't been fetched yet are not checked. Defaults to no limit.")
+    public Integer jiraMaxReads = null;
+
+    @Option(name = "--jira-max-writes",
+            usage = "The maximum number of comments this run may add, update or delete in JIRA. Once these are " +
+                    "used up, no further comments are changed. Defaults to no limit.")
+    public Integer jiraMaxWrites = null;
+
+    @Option(name = "--resolved-card-cache",
+            usage = "Keep the cards which were resolved when they were fetched in this file between runs, so that " +
+                    "cards which have been resolved for a while are not fetched again on every run.")
+    public String resolvedCardCache = null;
+
+    @Option(name = "--resolved-card-reverify-days",
+            usage = "With --resolved-card-cache, the number of days after which a resolved card is fetched again, " +
+                    "in case it has been reopened. Defaults to 7.",
+            depends = {"--resolved-card-cache"})
+    public int resolvedCardReverifyDays = 7;
+
+    @Option(name = "--shared-card-cache",
+            usage = "Share the cards fetched by each run with other runs on this machine through this file, so that " +
+                    "concurrent jobs against the same JIRA project fetch each card once between them. A run which " +
+                    "needs a card that another is fetching waits for it, for up to 30 seconds, taking up one of its " +
+                    "--jira-parallelism threads and briefly locking the file every 100ms to check. Requires " +
+                    "--comment-snapshot, to tell which of the shared cards' comments need updating.",
+            depends = {"--comment-snapshot"})
+    public String sharedCardCache = null;
+
+    @Option(name = "--shared-card-cache-seconds",
+            usage = "With --shared-card-cache, the number of seconds for which a card fetched by another run is " +
+                    "used rather than fetching it again. Defaults to 300.",
+            depends = {"--shared-card-cache"})
+    public int sharedCardCacheSeconds = 300;
+
+    @Option(name = "--comment-snapshot",
+            usage = "Keep a fingerprint of each JIRA comment written in this file between runs, so that only cards " +
+                    "whose TODOs have changed are commented on, and JIRA isn't searched for stale comments unless " +
+                    "a TODO has been removed.")
+    public String commentSnapshot = null;
+
+    @Option(name = "--comment-full-verify-days",
+            usage = "With --comment-snapshot, the number of days after which every comment is checked against " +
+                    "JIRA again, to correct any which have been edited or deleted there. Defaults to 7.",
+            depends = {"--comment-snapshot"})
+    public int commentFullVerifyDays = 7;
+
+    @Option(name = "--jira-issue-properties",
+            usage = "With --comment-snapshot, also record the id and fingerprint of each comment in an entity " +
+                    "property on its card, and find stale comments by searching for the property rather than the " +
+                    "comment text. The property must be indexed by JIRA for the search to find it.",
+            depends = {"--comment-snapshot"})
+    public boolean useIssueProperties = false;
+
+    @Option(name = "--reconcile-journal",
+            usage = "Journal each JIRA comment written or deleted to a file in this directory, which is deleted " +
+                    "once every comment is up to date. If the run is interrupted, the next run with the same TODOs " +
+                    "and settings skips the cards in the journal.")
+    public String reconcileJournal = null;
+
+    @Option(name = "--jira-max-requests-per-second",
+            usage = "The maximum rate of requests to JIRA, across all repositories in --manifest mode. " +
+                    "Defaults to no limit.")
+    public Double jiraMaxRequestsPerSecond = null;
+
+    @Option(name = "--jira-max-connections",
+            usage = "The most connections to keep open to JIRA at once, shared by all repositories. This should be " +
+                    "at least --jira-parallelism, or --parallelism times that in --manifest mode, or requests will " +
+                    "queue for a connection. Defaults to 20.")
+    public int jiraMaxConnections = 20;
+
+    @Option(name = "--jira-connection-ttl-seconds",
+            usage = "How long a connection to JIRA may be reused for, from when it was opened, before it is closed " +
+                    "and a new one opened. This is a limit on the connection's lifetime: idle connections aren't " +
+                    "closed any sooner. Defaults to 30.")
+    public int jiraConnectionTtlSeconds = 30;
+
+    @Option(name = "--jira-connect-timeout-seconds",
+            usage = "How long to wait to connect to JIRA. Defaults to 5.")
+    public int jiraConnectTimeoutSeconds = 5;
+
+    @Option(name = "--jira-read-timeout-seconds",
+            usage = "How long to wait for JIRA to send any data in response to a request. Defaults to 20.")
+    public int jiraReadTimeoutSeconds = 20;
+
     @Option(name = "--job-name",
             usage = "Job name.  This will be prefixed to all JIRA comments.  You must set this to a unique value if " +
                     "you have multiple jobs running against different codebases but with the same JIRA project, " +
@@ -111,6 +302,75 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
             depends={"--slack-channel"})
     public String slackToken = null;
 
+    @Option(name = "--slack-state",
+            usage = "Keep the Slack messages of each report in this file, so that the next run can edit them in " +
+                    "place, and only post new messages when there is a new card or TODO to report, or once all " +
+                    "are fixed. The file may be shared by jobs posting to different channels, or with different " +
+                    "--job-name.")
+    public String slackState = null;
+
+    @Option(name = "--metrics-file",
+            usage = "At the end of the run, write timings of each phase and of each call to JIRA and Slack to " +
+                    "this file. The file is written as JSON if its name ends in \".json\", or otherwise in the " +
+                    "Prometheus text format, e.g. for the node exporter's textfile collector.")
+    public String metricsFile = null;
+
+    @Option(name = "--history",
+            usage = "Add a summary of each run, with its counts of TODOs by error category, JIRA project and card, " +
+                    "and the commits scanned, to the run history in this directory. See --history-query.")
+    public String history = null;
+
+    @Option(name = "--history-query",
+            usage = "Don't run a check, but print a report from the run history in --history: \"trend\" for the " +
+                    "counts of TODOs in each --history-interval, \"top-issues\" or \"top-projects\" for the " +
+                    "--history-top cards or JIRA projects with the most TODOs, or \"runs\" for every run. Only the " +
+                    "runs with the given --job-name are included, if there is one.",
+            depends = {"--history"},
+            forbids = {"--src", "--manifest", "--scan-only", "--reconcile-only", "--webhook-port"})
+    public String historyQuery = null;
+
+    @Option(name = "--history-since",
+            usage = "With --history-query, the first day to include, e.g. 2024-01-31. Defaults to 90 days ago.",
+            depends = {"--history-query"})
+    public String historySince = null;
+
+    @Option(name = "--history-interval",
+            usage = "With --history-query trend, the length of each period: day, week or month. Defaults to week.",
+            depends = {"--history-query"})
+    public String historyInterval = "week";
+
+    @Option(name = "--history-top",
+            usage = "With --history-query top-issues or top-projects, the number to list. Defaults to 10.",
+            depends = {"--history-query"})
+    public int historyTop = 10;
+
+    @Option(name = "--jfr-dump-dir",
+            usage = "Record the run with Java Flight Recorder and, if the run fails or is slower than " +
+                    "--jfr-slow-run-seconds, save the recording to a new file in this directory.")
+    public String jfrDumpDir = null;
+
+    @Option(name = "--jfr-slow-run-seconds",
+            usage = "With --jfr-dump-dir, runs taking longer than this many seconds have their flight " +
+                    "recording saved. Defaults to 300.",
+            depends = {"--jfr-dump-dir"})
+    public long jfrSlowRunSeconds = 300;
+
+    @Option(name = "--webhook-port",
+            usage = "If set, do not run a single check, but instead listen on this port for GitHub or GitLab " +
+                    "push webhooks (POSTed to /push) and check only the files changed by each push. " +
+                    "JIRA comments are not updated in this mode.")
+    public Integer webhookPort = null;
+
+    @Option(name = "--webhook-queue-capacity",
+            usage = "The maximum number of branches which may be waiting to be checked in --webhook-port mode. " +
+                    "Further pushes will be refused with a 503 until the queue drains. Defaults to 16.")
+    public int webhookQueueCapacity = 16;
+
+    @Option(name = "--webhook-secret",
+            usage = "The secret configured on the GitHub webhook, or the GitLab webhook token. If set, any " +
+                    "webhook which does not match will be refused.")
+    public String webhookSecret = null;
+
     public void applyDefaults() {
         // We have to provide the default ourselves for the invalidCardStatuses, see comment by the @Option.
         if (invalidCardStatuses == null) {
@@ -133,11 +393,41 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
         return ignoredJiraProjects;
     }
 
+    @Override
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public int getJiraParallelism() {
+        return jiraParallelism;
+    }
+
+    @Override
+    public int getBlameParallelism() {
+        return blameParallelism;
+    }
+
     @Override
     public String getExcludePathRegex() {
         return excludePathRegex;
     }
 
+    @Override
+    public List<String> getExcludePaths() {
+        return excludePaths;
+    }
+
+    @Override
+    public int getRegexTimeoutMillis() {
+        return regexTimeoutMillis;
+    }
+
+    @Override
+    public boolean getUseIssueProperties() {
+        return useIssueProperties;
+    }
+
     @Override
     public boolean getWriteToJira() {
         return writeToJira;
@@ -178,6 +468,26 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
         return jiraPassword;
     }
 
+    @Override
+    public int getJiraMaxConnections() {
+        return jiraMaxConnections;
+    }
+
+    @Override
+    public int getJiraConnectionTtlSeconds() {
+        return jiraConnectionTtlSeconds;
+    }
+
+    @Override
+    public int getJiraConnectTimeoutSeconds() {
+        return jiraConnectTimeoutSeconds;
+    }
+
+    @Override
+    public int getJiraReadTimeoutSeconds() {
+        return jiraReadTimeoutSeconds;
+    }
+
     @Override
     public String getSlackChannel() {
         return slackChannel;
@@ -187,4 +497,45 @@ public class TodoCheckerConfig implements JiraClient.Config, JiraCommenter.Confi
     public String getSlackToken() {
         return slackToken;
     }
+
+    @Override
+    public Integer getWebhookPort() {
+        return webhookPort;
+    }
+
+    @Override
+    public int getWebhookQueueCapacity() {
+        return webhookQueueCapacity;
+    }
+
+    @Override
+    public String getWebhookSecret() {
+        return webhookSecret;
+    }
+
+    @Override
+    public String getGitBranchName() {
+        // Detected from the checkout, or from $GIT_BRANCH on Jenkins
+        return null;
+    }
+
+    @Override
+    public String getHistoryQuery() {
+        return historyQuery;
+    }
+
+    @Override
+    public String getHistorySince() {
+        return historySince;
+    }
+
+    @Override
+    public String getHistoryInterval() {
+        return historyInterval;
+    }
+
+    @Override
+    public int getHistoryTop() {
+        return historyTop;
+    }
 }
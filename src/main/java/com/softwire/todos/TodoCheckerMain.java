@@ -1,23 +1,42 @@
 package com.softwire.todos;
 
 import com.atlassian.jira.rest.client.api.RestClientException;
+import com.softwire.todos.blame.BlameCache;
+import com.softwire.todos.blame.GitBlamer;
+import com.softwire.todos.concurrent.TaskExecutors;
+import com.softwire.todos.history.RunHistory;
+import com.softwire.todos.history.RunHistoryQuery;
+import com.softwire.todos.jfr.FlightRecording;
+import com.softwire.todos.jira.CommentSnapshot;
+import com.softwire.todos.jira.JiraCallBudget;
 import com.softwire.todos.jira.JiraClient;
 import com.softwire.todos.jira.JiraCommenter;
+import com.softwire.todos.jira.ReconciliationJournal;
+import com.softwire.todos.jira.ResolvedIssueCache;
+import com.softwire.todos.jira.SharedIssueCache;
+import com.softwire.todos.metrics.Metrics;
+import com.softwire.todos.orchestrator.Orchestrator;
+import com.softwire.todos.orchestrator.RepositoryManifest;
 import com.softwire.todos.reporter.FileReporter;
 import com.softwire.todos.reporter.Reporter;
+import com.softwire.todos.reporter.SlackReportState;
 import com.softwire.todos.reporter.SlackReporter;
+import com.softwire.todos.scan.ScanResultReader;
+import com.softwire.todos.scan.ScanResultWriter;
 import com.softwire.todos.slack.SlackClient;
+import com.softwire.todos.webhook.WebhookServer;
+import com.softwire.todos.worktree.WorkingTreeScanner;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.net.URISyntaxException;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -41,13 +60,133 @@ public class TodoCheckerMain {
         }
 
         config.applyDefaults();
-        TodoCheckerApp app = todoCheckerApp(config);
+        if (config.historyQuery != null) {
+            // Answered from the history alone, without scanning or connecting to JIRA
+            try {
+                new RunHistoryQuery(RunHistory.open(Paths.get(config.history)), config).run(System.out);
+                returnCode = TodoCheckerReturnCode.SUCCESS;
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                log.error(e.getMessage());
+                returnCode = TodoCheckerReturnCode.INCORRECT_CLI_ARG;
+            } catch (Exception e) {
+                log.error("Unable to query the run history in " + config.history, e);
+                returnCode = TodoCheckerReturnCode.ERROR;
+            }
+            System.exit(returnCode.getValue());
+            return;
+        }
+        String missingArgs = null;
+        if (config.manifest == null && config.reconcileOnly == null && config.srcDirs == null) {
+            missingArgs = "--src is required, unless --manifest or --reconcile-only is given";
+        } else if (config.manifest == null && config.scanOnly == null && config.jiraProjects.isEmpty()) {
+            missingArgs = "--jira-project-key is required, unless --manifest or --scan-only is given";
+        } else if (config.scanOnly == null && config.shardCount == null
+                && (config.jiraUsername == null || config.jiraPassword == null)) {
+            missingArgs = "--jira-username and --jira-password are required, unless only scanning";
+        }
+        if (missingArgs != null) {
+            log.error(missingArgs);
+            parser.printUsage(System.err);
+            System.exit(TodoCheckerReturnCode.INCORRECT_CLI_ARG.getValue());
+        }
+
+        TaskExecutors taskExecutors;
+        try {
+            taskExecutors = config.virtualThreads ? TaskExecutors.virtualThreads() : TaskExecutors.platformThreads();
+        } catch (IllegalStateException e) {
+            log.error(e.getMessage());
+            System.exit(TodoCheckerReturnCode.INCORRECT_CLI_ARG.getValue());
+            return;
+        }
+
+        BlameCache blameCache = config.blameCache == null
+                ? new BlameCache()
+                : BlameCache.read(Paths.get(config.blameCache));
+        GitBlamer gitBlamer = config.blame ? new GitBlamer(config, blameCache, taskExecutors) : null;
+        WorkingTreeScanner workingTreeScanner = config.workingTree
+                ? new WorkingTreeScanner(Runtime.getRuntime().availableProcessors(), config.recurseSubmodules)
+                : null;
+        ResolvedIssueCache resolvedIssueCache = config.resolvedCardCache == null
+                ? ResolvedIssueCache.disabled()
+                : ResolvedIssueCache.read(
+                        Paths.get(config.resolvedCardCache),
+                        Duration.ofDays(config.resolvedCardReverifyDays));
+        SharedIssueCache sharedIssueCache = config.sharedCardCache == null
+                ? SharedIssueCache.disabled()
+                : SharedIssueCache.open(
+                        Paths.get(config.sharedCardCache),
+                        Duration.ofSeconds(config.sharedCardCacheSeconds));
+        CommentSnapshot commentSnapshot = config.commentSnapshot == null
+                ? CommentSnapshot.disabled()
+                : CommentSnapshot.read(
+                        Paths.get(config.commentSnapshot),
+                        Duration.ofDays(config.commentFullVerifyDays));
+        ReconciliationJournal reconciliationJournal = config.reconcileJournal == null
+                ? ReconciliationJournal.disabled()
+                : ReconciliationJournal.open(Paths.get(config.reconcileJournal));
+        RunHistory runHistory = config.history == null
+                ? RunHistory.disabled()
+                : RunHistory.open(Paths.get(config.history));
+        SlackReportState slackReportState = config.slackState == null
+                ? SlackReportState.disabled()
+                : SlackReportState.open(Paths.get(config.slackState));
+
+        FlightRecording flightRecording = startFlightRecording(config);
+        Metrics metrics = new Metrics();
+        JiraClient jiraClient = new JiraClient(
+                config,
+                metrics,
+                new JiraCallBudget(config.jiraMaxReads, config.jiraMaxWrites, config.jiraMaxRequestsPerSecond));
+        TodoCheckerServices services = new TodoCheckerServices(
+                jiraClient,
+                metrics,
+                taskExecutors,
+                gitBlamer,
+                workingTreeScanner,
+                resolvedIssueCache,
+                sharedIssueCache,
+                commentSnapshot,
+                reconciliationJournal,
+                runHistory,
+                slackReportState);
+
+        if (config.webhookPort != null) {
+            // Runs until the process is stopped, then saves the caches and metrics as
+            // any other run would
+            WebhookServer webhookServer = new WebhookServer(config, todoCheckerApp(config, services));
+            webhookServer.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                webhookServer.stop();
+                finish(config, services, blameCache, flightRecording, TodoCheckerReturnCode.SUCCESS);
+            }, "webhook-shutdown"));
+            return;
+        }
 
         try {
-            if(app.run()) {
+            if (config.manifest != null) {
+                RepositoryManifest manifest = RepositoryManifest.read(Paths.get(config.manifest));
+                Orchestrator orchestrator = new Orchestrator(config, manifest, services);
+                if (config.shardCount != null) {
+                    orchestrator.scanShard(config.shardIndex, config.shardCount, Paths.get(config.shardDir));
+                    returnCode = TodoCheckerReturnCode.SUCCESS;
+                } else if (config.mergeShards) {
+                    returnCode = orchestrator.mergeShards(Paths.get(config.shardDir));
+                } else {
+                    returnCode = orchestrator.run();
+                }
+            } else if (config.scanOnly != null) {
+                List<CodeTodo> todos = todoCheckerApp(config, services).scan();
+                ScanResultWriter.write(Paths.get(config.scanOnly), todos);
+                log.info("Saved {} code TODOs to {}", todos.size(), config.scanOnly);
                 returnCode = TodoCheckerReturnCode.SUCCESS;
             } else {
-                returnCode = TodoCheckerReturnCode.FOUND_INAPPROPRIATE_TODOS;
+                TodoCheckerApp app = todoCheckerApp(config, services);
+                boolean success = config.reconcileOnly != null
+                        ? app.check(ScanResultReader.open(Paths.get(config.reconcileOnly)).readAll())
+                        : app.run();
+                returnCode = success
+                        ? TodoCheckerReturnCode.SUCCESS
+                        : TodoCheckerReturnCode.FOUND_INAPPROPRIATE_TODOS;
             }
         } catch (RestClientException e) {
             if (e.getMessage().contains("Client response status: 401")) {
@@ -63,39 +202,132 @@ public class TodoCheckerMain {
             returnCode = TodoCheckerReturnCode.ERROR;
         }
 
+        finish(config, services, blameCache, flightRecording, returnCode);
         System.exit(returnCode.getValue());
     }
 
     /**
-     * Manually construct the TodoCheckerApp via dependency injection
+     * Saves the caches, metrics and flight recording at the end of a run.
      */
-    private static TodoCheckerApp todoCheckerApp(TodoCheckerConfig config) throws URISyntaxException {
-        JiraClient jiraClient = new JiraClient(config);
+    private static void finish(
+            TodoCheckerConfig config,
+            TodoCheckerServices services,
+            BlameCache blameCache,
+            FlightRecording flightRecording,
+            TodoCheckerReturnCode returnCode) {
+        Logger log = LoggerFactory.getLogger(TodoCheckerMain.class);
+        services.getJiraClient().getCallBudget().logSummary();
+
+        if (flightRecording != null) {
+            try {
+                flightRecording.finish(
+                        returnCode == TodoCheckerReturnCode.ERROR,
+                        Duration.ofSeconds(config.jfrSlowRunSeconds),
+                        Paths.get(config.jfrDumpDir));
+            } catch (Exception e) {
+                log.error("Unable to save flight recording", e);
+            }
+        }
+
+        if (config.blameCache != null) {
+            try {
+                blameCache.writeTo(Paths.get(config.blameCache));
+            } catch (Exception e) {
+                log.error("Unable to save the blame cache to " + config.blameCache, e);
+            }
+        }
 
+        if (config.resolvedCardCache != null) {
+            log.info("{} resolved cards were not fetched, as they were in the cache",
+                    services.getResolvedIssueCache().getHits());
+            try {
+                services.getResolvedIssueCache().writeTo(Paths.get(config.resolvedCardCache));
+            } catch (Exception e) {
+                log.error("Unable to save the resolved card cache to " + config.resolvedCardCache, e);
+            }
+        }
+
+        if (config.sharedCardCache != null) {
+            log.info("{} cards were not fetched, as another run had just fetched them",
+                    services.getSharedIssueCache().getHits());
+        }
+
+        if (config.commentSnapshot != null) {
+            try {
+                services.getCommentSnapshot().writeTo(Paths.get(config.commentSnapshot));
+            } catch (Exception e) {
+                log.error("Unable to save the comment snapshot to " + config.commentSnapshot, e);
+            }
+        }
+
+        if (config.metricsFile != null) {
+            try {
+                services.getMetrics().writeTo(Paths.get(config.metricsFile));
+            } catch (Exception e) {
+                log.error("Unable to write metrics to " + config.metricsFile, e);
+            }
+        }
+    }
+
+    private static FlightRecording startFlightRecording(TodoCheckerConfig config) throws Exception {
+        if (config.jfrDumpDir == null) {
+            return null;
+        }
+        if (!FlightRecording.isAvailable()) {
+            LoggerFactory.getLogger(TodoCheckerMain.class)
+                    .warn("Java Flight Recorder is not available in this JVM, ignoring --jfr-dump-dir");
+            return null;
+        }
+        return FlightRecording.startContinuousRecording();
+    }
+
+    /**
+     * Manually construct the TodoCheckerApp via dependency injection
+     */
+    private static TodoCheckerApp todoCheckerApp(
+            TodoCheckerConfig config,
+            TodoCheckerServices services) throws Exception {
         ArrayList<Reporter> reporters = new ArrayList<>();
         if (config.reportFile != null) {
-            reporters.add(new FileReporter(Paths.get(config.reportFile), jiraClient));
+            reporters.add(new FileReporter(Paths.get(config.reportFile), services.getJiraClient()));
         }
         if (config.slackChannel != null) {
-            reporters.add(new SlackReporter(new SlackClient(config), jiraClient));
-        }
-        JiraCommenter jiraCommenter = new JiraCommenter(config, jiraClient);
-
-        List<TodoFinder> todoFinders = config.srcDirs.stream().map(
-                srcDir -> {
-                    File srcDirFile = new File(srcDir);
-                    checkArgument(srcDirFile.isDirectory(), "Invalid --src argument: " + srcDir);
-                    GitCheckout gitCheckout;
-                    try {
-                        gitCheckout = new GitCheckout(srcDirFile, config);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                    return new TodoFinder(gitCheckout);
-                })
-                .collect(Collectors.toList());
-
-        return new TodoCheckerApp(config, jiraClient, reporters, jiraCommenter, todoFinders);
+            reporters.add(new SlackReporter(
+                    new SlackClient(config, services.getMetrics()),
+                    services.getJiraClient(),
+                    services.getSlackReportState(),
+                    config.jobName));
+        }
+        JiraCommenter jiraCommenter = new JiraCommenter(
+                config,
+                services.getJiraClient(),
+                services.getTaskExecutors(),
+                services.getCommentSnapshot(),
+                services.getReconciliationJournal());
+
+        // (There is nothing to scan in --reconcile-only mode)
+        List<String> srcDirs = config.srcDirs == null ? new ArrayList<>() : config.srcDirs;
+        List<TodoFinder> todoFinders = new ArrayList<>();
+        for (String srcDir : srcDirs) {
+            File srcDirFile = new File(srcDir);
+            checkArgument(srcDirFile.isDirectory(), "Invalid --src argument: " + srcDir);
+            GitCheckout gitCheckout = new GitCheckout(srcDirFile, config);
+            todoFinders.add(new TodoFinder(gitCheckout, services.getGitBlamer(), services.getWorkingTreeScanner()));
+            if (config.recurseSubmodules) {
+                // Each is scanned alongside the other checkouts
+                List<GitCheckout> submodules = gitCheckout.findSubmodules();
+                LoggerFactory.getLogger(TodoCheckerMain.class)
+                        .info("Found {} submodule(s) in {}", submodules.size(), srcDir);
+                for (GitCheckout submodule : submodules) {
+                    todoFinders.add(new TodoFinder(
+                            submodule,
+                            services.getGitBlamer(),
+                            services.getWorkingTreeScanner()));
+                }
+            }
+        }
+
+        return new TodoCheckerApp(config, reporters, jiraCommenter, todoFinders, services);
     }
 
 }
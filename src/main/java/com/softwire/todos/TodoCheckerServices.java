@@ -0,0 +1,105 @@
+package com.softwire.todos;
+
+import com.softwire.todos.blame.GitBlamer;
+import com.softwire.todos.concurrent.TaskExecutors;
+import com.softwire.todos.history.RunHistory;
+import com.softwire.todos.jira.CommentSnapshot;
+import com.softwire.todos.jira.JiraClient;
+import com.softwire.todos.jira.ReconciliationJournal;
+import com.softwire.todos.jira.ResolvedIssueCache;
+import com.softwire.todos.jira.SharedIssueCache;
+import com.softwire.todos.metrics.Metrics;
+import com.softwire.todos.reporter.SlackReportState;
+import com.softwire.todos.worktree.WorkingTreeScanner;
+
+/**
+ * The clients, caches and stores which are created once per process, from the
+ * command-line arguments, and shared by every {@link TodoCheckerApp} in it, e.g.
+ * one per repository in --manifest mode.
+ */
+public class TodoCheckerServices {
+    private final JiraClient jiraClient;
+    private final Metrics metrics;
+    private final TaskExecutors taskExecutors;
+    private final GitBlamer gitBlamer;
+    private final WorkingTreeScanner workingTreeScanner;
+    private final ResolvedIssueCache resolvedIssueCache;
+    private final SharedIssueCache sharedIssueCache;
+    private final CommentSnapshot commentSnapshot;
+    private final ReconciliationJournal reconciliationJournal;
+    private final RunHistory runHistory;
+    private final SlackReportState slackReportState;
+
+    /**
+     * @param gitBlamer          null unless --blame
+     * @param workingTreeScanner null unless --working-tree
+     */
+    public TodoCheckerServices(
+            JiraClient jiraClient,
+            Metrics metrics,
+            TaskExecutors taskExecutors,
+            GitBlamer gitBlamer,
+            WorkingTreeScanner workingTreeScanner,
+            ResolvedIssueCache resolvedIssueCache,
+            SharedIssueCache sharedIssueCache,
+            CommentSnapshot commentSnapshot,
+            ReconciliationJournal reconciliationJournal,
+            RunHistory runHistory,
+            SlackReportState slackReportState) {
+        this.jiraClient = jiraClient;
+        this.metrics = metrics;
+        this.taskExecutors = taskExecutors;
+        this.gitBlamer = gitBlamer;
+        this.workingTreeScanner = workingTreeScanner;
+        this.resolvedIssueCache = resolvedIssueCache;
+        this.sharedIssueCache = sharedIssueCache;
+        this.commentSnapshot = commentSnapshot;
+        this.reconciliationJournal = reconciliationJournal;
+        this.runHistory = runHistory;
+        this.slackReportState = slackReportState;
+    }
+
+    public JiraClient getJiraClient() {
+        return jiraClient;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public TaskExecutors getTaskExecutors() {
+        return taskExecutors;
+    }
+
+    public GitBlamer getGitBlamer() {
+        return gitBlamer;
+    }
+
+    public WorkingTreeScanner getWorkingTreeScanner() {
+        return workingTreeScanner;
+    }
+
+    public ResolvedIssueCache getResolvedIssueCache() {
+        return resolvedIssueCache;
+    }
+
+    public SharedIssueCache getSharedIssueCache() {
+        return sharedIssueCache;
+    }
+
+    public CommentSnapshot getCommentSnapshot() {
+        return commentSnapshot;
+    }
+
+    public ReconciliationJournal getReconciliationJournal() {
+        return reconciliationJournal;
+    }
+
+    public RunHistory getRunHistory() {
+        return runHistory;
+    }
+
+    public SlackReportState getSlackReportState() {
+        return slackReportState;
+    }
+}
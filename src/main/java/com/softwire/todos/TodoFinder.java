@@ -1,53 +1,140 @@
 package com.softwire.todos;
 
+import com.softwire.todos.blame.GitBlamer;
+import com.softwire.todos.worktree.WorkingTreeScanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import static com.google.common.base.Verify.verify;
 import static com.google.common.collect.Sets.newHashSet;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 
 public class TodoFinder {
+    // Windows limits a command line to 32767 characters, so the paths to grep are
+    // split between several commands, leaving room for the other arguments
+    private static final int MAX_PATH_CHARS_PER_COMMAND = 16_000;
+
     private final Logger log = LoggerFactory.getLogger(getClass());
-    private static final Pattern GREP_LINE_PATT = Pattern.compile(
-            "([^:]+):(\\d+):(.*)");
     private final GitCheckout gitCheckout;
+    private final GitBlamer gitBlamer;
+    private final WorkingTreeScanner workingTreeScanner;
 
     public TodoFinder(GitCheckout gitCheckout) {
+        this(gitCheckout, null);
+    }
+
+    public TodoFinder(GitCheckout gitCheckout, GitBlamer gitBlamer) {
+        this(gitCheckout, gitBlamer, null);
+    }
+
+    /**
+     * @param gitBlamer          if not null, the TODOs found in the source are blamed, to find
+     *                           who added them and when
+     * @param workingTreeScanner if not null, the source is scanned by reading the files on
+     *                           disk, rather than with `git grep`
+     */
+    public TodoFinder(GitCheckout gitCheckout, GitBlamer gitBlamer, WorkingTreeScanner workingTreeScanner) {
         this.gitCheckout = gitCheckout;
+        this.gitBlamer = gitBlamer;
+        this.workingTreeScanner = workingTreeScanner;
+    }
+
+    public GitCheckout getGitCheckout() {
+        return gitCheckout;
     }
 
-    public List<CodeTodo> findAllTodosInSource(String excludePathRegex) throws Exception {
+    /**
+     * @param exclusions see {@link PathExclusions#fromConfig}. Those in the checkout's
+     *                   `.todocheckerignore` are added to these.
+     */
+    public List<CodeTodo> findAllTodosInSource(PathExclusions exclusions) throws Exception {
         log.info("Scanning {}", gitCheckout.getBaseDir());
 
+        PathExclusions checkoutExclusions = exclusions.withIgnoreFile(gitCheckout.getBaseDir());
+        List<CodeTodo> todos = workingTreeScanner == null
+                ? gitGrep(checkoutExclusions, singletonList("--"), "")
+                : scanWorkingTree(checkoutExclusions);
+        return gitBlamer == null ? todos : gitBlamer.blame(gitCheckout, todos);
+    }
+
+    /**
+     * Scans only the given paths, as they are at the given revision, rather than
+     * everything in the current checkout. If there are no paths, everything is scanned.
+     */
+    public List<CodeTodo> findTodosInRevision(
+            PathExclusions exclusions,
+            String revision,
+            Collection<String> paths) throws Exception {
+        log.info("Scanning {} path(s) at {} in {}", paths.size(), revision, gitCheckout.getBaseDir());
+
+        PathExclusions checkoutExclusions = exclusions.withIgnoreFile(gitCheckout.getBaseDir());
+        List<CodeTodo> todos = new ArrayList<>();
+        for (List<String> batch : batchPaths(paths, MAX_PATH_CHARS_PER_COMMAND)) {
+            List<String> args = new ArrayList<>();
+            args.add(revision);
+            args.add("--");
+            args.addAll(batch);
+            // When grepping a tree, git prefixes each match with "<revision>:"
+            todos.addAll(gitGrep(checkoutExclusions, args, revision + ":"));
+        }
+        return todos;
+    }
+
+    /**
+     * Splits the paths into batches whose total length, with a separator after each,
+     * is at most {@code maxChars}, unless a single path is longer than that. There is
+     * always at least one batch, which is empty if there are no paths.
+     */
+    static List<List<String>> batchPaths(Collection<String> paths, int maxChars) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        int batchChars = 0;
+        for (String path : paths) {
+            if (!batch.isEmpty() && batchChars + path.length() + 1 > maxChars) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchChars = 0;
+            }
+            batch.add(path);
+            batchChars += path.length() + 1;
+        }
+        batches.add(batch);
+        return batches;
+    }
+
+    private List<CodeTodo> gitGrep(
+            PathExclusions exclusions,
+            List<String> extraArgs,
+            String outputPrefix) throws Exception {
         // We use "git grep" since it will automatically search only in committed
         // files without needing any complicated features.
         // git grep will return 0 if any matching lines found, 1 if no matching lines were found, and
         // 2 otherwise, see https://www.gnu.org/software/grep/manual/html_node/Exit-Status.html.
-        List<String> matches = gitCheckout.git(asList("grep", "-iIwn", "todo"), newHashSet(0, 1));  // todo-checker-ignore
+        // With -z, the path and line number are followed by NULs rather than ":"s, so
+        // that paths containing ":" can be parsed, see GitGrepOutput.
+        List<String> cmd = new ArrayList<>(asList("grep", "-iIwnz", "todo"));  // todo-checker-ignore
+        // (The arguments end with "--", so the exclusions are taken as paths)
+        cmd.addAll(extraArgs);
+        cmd.addAll(exclusions.toPathspecs());
+        byte[] matches = gitCheckout.gitBytes(cmd, newHashSet(0, 1));
 
-        Pattern excludePat = excludePathRegex == null ? null : Pattern.compile(excludePathRegex);
+        return GitGrepOutput.parse(matches, outputPrefix, gitCheckout).stream()
+                .filter(todo -> !isExcluded(exclusions, todo))
+                .collect(toList());
+    }
 
-        return matches.stream()
-                .filter(x -> excludePat == null || !excludePat.matcher(x).find())
-                .filter(x -> !x.contains("todo-checker-ignore"))
-                .map(this::gitGrepLineToTodo)
+    private List<CodeTodo> scanWorkingTree(PathExclusions exclusions) throws Exception {
+        return workingTreeScanner.scan(gitCheckout, exclusions.getPatterns()).stream()
+                .filter(todo -> !isExcluded(exclusions, todo))
                 .collect(toList());
     }
 
-    private CodeTodo gitGrepLineToTodo(String line) {
-        Matcher matcher = GREP_LINE_PATT.matcher(line);
-        verify(matcher.matches(), "Unexpected `git grep -n` output: '%s'", line);
-        return new CodeTodo(
-                new File(matcher.group(1)),
-                Integer.parseInt(matcher.group(2)),
-                matcher.group(3),
-                gitCheckout);
+    private static boolean isExcluded(PathExclusions exclusions, CodeTodo todo) {
+        return exclusions.isExcludedByRegex(todo) || todo.getLine().contains("todo-checker-ignore");
     }
 }
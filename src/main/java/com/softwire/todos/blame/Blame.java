@@ -0,0 +1,87 @@
+package com.softwire.todos.blame;
+
+import com.google.common.collect.Ordering;
+import com.softwire.todos.CodeTodo;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Who last changed a line, and when, according to `git blame`.
+ */
+public class Blame {
+    // git blame attributes lines which have not been committed to this all-zero id
+    private static final String NOT_COMMITTED_YET = "0000000000000000000000000000000000000000";
+
+    private final String commitId;
+    private final String authorName;
+    private final String authorEmail;
+    private final long authorTime;
+
+    public Blame(String commitId, String authorName, String authorEmail, long authorTime) {
+        this.commitId = commitId;
+        this.authorName = authorName;
+        this.authorEmail = authorEmail;
+        this.authorTime = authorTime;
+    }
+
+    public String getCommitId() {
+        return commitId;
+    }
+
+    public String getAuthorName() {
+        return authorName;
+    }
+
+    public String getAuthorEmail() {
+        return authorEmail;
+    }
+
+    /**
+     * The author date of the commit, in seconds since the epoch
+     */
+    public long getAuthorTime() {
+        return authorTime;
+    }
+
+    public boolean isCommitted() {
+        return !NOT_COMMITTED_YET.equals(commitId);
+    }
+
+    /**
+     * e.g. "Jane Smith on 2019-03-04"
+     */
+    public String describe() {
+        return String.format("%s on %s",
+                authorName,
+                DateTimeFormatter.ISO_LOCAL_DATE.format(Instant.ofEpochSecond(authorTime).atOffset(ZoneOffset.UTC)));
+    }
+
+    /**
+     * Orders TODOs with the oldest first, so that the stalest are the most prominent
+     * in a report. TODOs which haven't been blamed come last.
+     */
+    public static Ordering<CodeTodo> oldestFirst() {
+        return Ordering.<Long>natural().nullsLast().onResultOf(
+                todo -> todo.getBlame() == null ? null : todo.getBlame().getAuthorTime());
+    }
+
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof Blame)) return false;
+        final Blame other = (Blame) o;
+        return commitId.equals(other.commitId)
+                && authorName.equals(other.authorName)
+                && authorEmail.equals(other.authorEmail)
+                && authorTime == other.authorTime;
+    }
+
+    public int hashCode() {
+        return commitId.hashCode();
+    }
+
+    public String toString() {
+        return "com.softwire.todos.blame.Blame(commitId=" + commitId + ", author=" + describe() + ")";
+    }
+}
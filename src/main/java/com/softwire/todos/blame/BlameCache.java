@@ -0,0 +1,106 @@
+package com.softwire.todos.blame;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The blame of the TODO lines in each file, keyed by the git blob id of the file's
+ * contents, so that a file which hasn't changed since the last run isn't blamed again.
+ * <p>
+ * The cache is saved as JSON between runs. Only the files looked up in this run are
+ * saved, so files which have since changed or been deleted drop out of the cache.
+ */
+public class BlameCache {
+    private static final int FORMAT_VERSION = 1;
+    private static final Logger log = LoggerFactory.getLogger(BlameCache.class);
+
+    private final Map<String, Map<Integer, Blame>> blamesByBlobId = new ConcurrentHashMap<>();
+    private final Set<String> usedBlobIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Reads the cache saved by a previous run, or returns an empty cache if there is
+     * none, or it can't be read.
+     */
+    public static BlameCache read(Path path) {
+        BlameCache cache = new BlameCache();
+        if (!Files.exists(path)) {
+            return cache;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            CacheFile file = new Gson().fromJson(reader, CacheFile.class);
+            if (file == null || file.formatVersion != FORMAT_VERSION) {
+                log.warn("Ignoring the blame cache {}, as it was saved by another version", path);
+            } else {
+                cache.blamesByBlobId.putAll(file.files);
+            }
+        } catch (IOException | JsonParseException e) {
+            // It's only a cache, so everything will be blamed again
+            log.warn("Ignoring the blame cache " + path + ", as it could not be read", e);
+        }
+        return cache;
+    }
+
+    /**
+     * The cached blame of each line in the given file contents which has been blamed
+     * before, by line number.
+     */
+    public Map<Integer, Blame> get(String blobId) {
+        usedBlobIds.add(blobId);
+        Map<Integer, Blame> blames = blamesByBlobId.get(blobId);
+        return blames == null ? new HashMap<>() : blames;
+    }
+
+    public void put(String blobId, Map<Integer, Blame> blames) {
+        usedBlobIds.add(blobId);
+        blamesByBlobId.merge(blobId, blames, (cached, added) -> {
+            Map<Integer, Blame> merged = new HashMap<>(cached);
+            merged.putAll(added);
+            return merged;
+        });
+    }
+
+    /**
+     * Saves the files used in this run to the given file. The file is replaced
+     * atomically, so that a concurrent run never reads a partly written cache.
+     */
+    public void writeTo(Path path) throws IOException {
+        CacheFile file = new CacheFile();
+        for (String blobId : usedBlobIds) {
+            Map<Integer, Blame> blames = blamesByBlobId.get(blobId);
+            if (blames != null) {
+                file.files.put(blobId, blames);
+            }
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new Gson().toJson(file, writer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("Saved the blame of {} files to {}", file.files.size(), path);
+    }
+
+    private static class CacheFile {
+        private int formatVersion = FORMAT_VERSION;
+        private Map<String, Map<Integer, Blame>> files = new HashMap<>();
+    }
+}
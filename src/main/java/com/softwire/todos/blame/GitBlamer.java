@@ -0,0 +1,175 @@
+package com.softwire.todos.blame;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.concurrent.TaskExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Verify.verify;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Finds who added each TODO, and when, with `git blame`.
+ * <p>
+ * Each file containing TODOs is blamed once, for just its TODO lines, and the files
+ * are blamed in parallel. The results are kept in a {@link BlameCache} by the blob
+ * id of the file's contents, so unchanged files are not blamed again on later runs.
+ */
+public class GitBlamer {
+    // Keeps each `git hash-object` command line well within the OS limit
+    private static final int PATHS_PER_COMMAND = 500;
+    // "<commit> <original line> <final line> [<lines in group>]"
+    private static final Pattern PORCELAIN_HEADER_PATT = Pattern.compile(
+            "([0-9a-f]{40,64}) \\d+ (\\d+)(?: \\d+)?");
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Config config;
+    private final BlameCache cache;
+    private final TaskExecutors taskExecutors;
+
+    public GitBlamer(Config config, BlameCache cache, TaskExecutors taskExecutors) {
+        this.config = config;
+        this.cache = cache;
+        this.taskExecutors = taskExecutors;
+    }
+
+    /**
+     * @return the given TODOs, in the same order, each with its {@link CodeTodo#getBlame()}
+     */
+    public List<CodeTodo> blame(GitCheckout gitCheckout, List<CodeTodo> todos) throws Exception {
+        if (todos.isEmpty()) {
+            return todos;
+        }
+        ListMultimap<String, CodeTodo> todosByPath = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+        for (CodeTodo todo : todos) {
+            todosByPath.put(todo.getPosixPath(), todo);
+        }
+        List<String> paths = new ArrayList<>(todosByPath.keySet());
+        List<String> blobIds = hashObjects(gitCheckout, paths);
+
+        AtomicInteger cacheHits = new AtomicInteger();
+        List<Callable<Map<Integer, Blame>>> tasks = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            String blobId = blobIds.get(i);
+            Set<Integer> lineNumbers = todosByPath.get(path).stream()
+                    .map(CodeTodo::getLineNumber)
+                    .collect(toCollection(TreeSet::new));
+            tasks.add(() -> {
+                Map<Integer, Blame> cached = cache.get(blobId);
+                if (cached.keySet().containsAll(lineNumbers)) {
+                    cacheHits.incrementAndGet();
+                    return cached;
+                }
+                Map<Integer, Blame> blames = gitBlame(gitCheckout, path, lineNumbers);
+                // Uncommitted lines will be attributed to a real commit once they are committed
+                Map<Integer, Blame> committed = new HashMap<>(blames);
+                committed.values().removeIf(blame -> !blame.isCommitted());
+                cache.put(blobId, committed);
+                return blames;
+            });
+        }
+        List<Map<Integer, Blame>> results = taskExecutors.runAll("blame", config.getBlameParallelism(), tasks);
+        log.info("Blamed {} files containing TODOs, {} of them from the cache", paths.size(), cacheHits.get());
+
+        Map<String, Map<Integer, Blame>> blamesByPath = new HashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            blamesByPath.put(paths.get(i), results.get(i));
+        }
+        return todos.stream()
+                .map(todo -> todo.withBlame(blamesByPath.get(todo.getPosixPath()).get(todo.getLineNumber())))
+                .collect(toList());
+    }
+
+    /**
+     * The blob id of each file's current contents, as `git grep` sees them.
+     */
+    private static List<String> hashObjects(GitCheckout gitCheckout, List<String> paths) throws Exception {
+        List<String> blobIds = new ArrayList<>();
+        for (List<String> batch : Lists.partition(paths, PATHS_PER_COMMAND)) {
+            List<String> cmd = new ArrayList<>(asList("hash-object", "--"));
+            cmd.addAll(batch);
+            List<String> output = gitCheckout.git(cmd);
+            verify(output.size() == batch.size(), "Unexpected `git hash-object` output: %s", output);
+            blobIds.addAll(output);
+        }
+        return blobIds;
+    }
+
+    private static Map<Integer, Blame> gitBlame(
+            GitCheckout gitCheckout,
+            String path,
+            Set<Integer> lineNumbers) throws Exception {
+        List<String> cmd = new ArrayList<>(asList("blame", "--porcelain"));
+        for (int lineNumber : lineNumbers) {
+            cmd.add("-L");
+            cmd.add(lineNumber + "," + lineNumber);
+        }
+        cmd.add("--");
+        cmd.add(path);
+        return parsePorcelain(gitCheckout.git(cmd));
+    }
+
+    /**
+     * Parses the output of `git blame --porcelain`, in which the author of each commit
+     * is only given the first time that commit appears.
+     *
+     * @return the blame of each line in the output, by line number
+     */
+    static Map<Integer, Blame> parsePorcelain(List<String> output) {
+        Map<String, Blame> blamesByCommitId = new HashMap<>();
+        Map<Integer, Blame> blamesByLineNumber = new HashMap<>();
+        String commitId = null;
+        int lineNumber = 0;
+        String authorName = null;
+        String authorEmail = null;
+        long authorTime = 0;
+        for (String line : output) {
+            Matcher header = PORCELAIN_HEADER_PATT.matcher(line);
+            if (line.startsWith("\t")) {
+                // The contents of the line, which ends this line's entry
+                verify(commitId != null, "Unexpected `git blame --porcelain` output: '%s'", line);
+                if (!blamesByCommitId.containsKey(commitId)) {
+                    verify(authorName != null, "No author for %s in `git blame --porcelain` output", commitId);
+                    blamesByCommitId.put(commitId, new Blame(commitId, authorName, authorEmail, authorTime));
+                }
+                blamesByLineNumber.put(lineNumber, blamesByCommitId.get(commitId));
+                commitId = null;
+            } else if (commitId == null && header.matches()) {
+                commitId = header.group(1);
+                lineNumber = Integer.parseInt(header.group(2));
+                authorName = null;
+                authorEmail = "";
+                authorTime = 0;
+            } else if (line.startsWith("author ")) {
+                authorName = line.substring("author ".length());
+            } else if (line.startsWith("author-mail ")) {
+                authorEmail = line.substring("author-mail ".length()).replaceAll("^<|>$", "");
+            } else if (line.startsWith("author-time ")) {
+                authorTime = Long.parseLong(line.substring("author-time ".length()));
+            }
+        }
+        return blamesByLineNumber;
+    }
+
+    public interface Config {
+        int getBlameParallelism();
+    }
+}
@@ -0,0 +1,72 @@
+package com.softwire.todos.concurrent;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the tasks of one stage of a pipeline, up to {@code parallelism} at once, with
+ * a bounded buffer of tasks waiting to run.
+ * <p>
+ * When the buffer is full, submitting another task blocks until there is room.
+ * This holds back the stages feeding a slow stage, rather than letting their
+ * output pile up in memory. So a task must not queue more tasks on its own stage
+ * while that may fill the buffer: it could wait for a slot which only it can free.
+ */
+public class StageExecutor implements Executor, AutoCloseable {
+    private final ExecutorService executor;
+    private final Semaphore running;
+    private final Semaphore slots;
+
+    StageExecutor(ExecutorService executor, int parallelism, int bufferSize) {
+        this.executor = executor;
+        this.running = new Semaphore(parallelism);
+        this.slots = new Semaphore(parallelism + bufferSize);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        slots.acquireUninterruptibly();
+        try {
+            executor.execute(() -> {
+                // (A thread-per-task executor doesn't limit the parallelism itself)
+                running.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    running.release();
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> call(task), this);
+    }
+
+    /**
+     * Calls the task, wrapping any checked exception for use in a {@link CompletableFuture}.
+     */
+    public static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,119 @@
+package com.softwire.todos.concurrent;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs blocking work, such as JIRA requests and git commands, concurrently: on
+ * platform threads, or on virtual threads if this is the Java 21 build.
+ */
+public abstract class TaskExecutors {
+    private static final String VIRTUAL_THREAD_IMPLEMENTATION =
+            "com.softwire.todos.concurrent.VirtualThreadTaskExecutors";
+
+    public static TaskExecutors platformThreads() {
+        return new PlatformThreadTaskExecutors();
+    }
+
+    /**
+     * @throws IllegalStateException if this is not the Java 21 build
+     */
+    public static TaskExecutors virtualThreads() {
+        try {
+            return (TaskExecutors) Class.forName(VIRTUAL_THREAD_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(
+                    "Virtual threads are only available in the Java 21 build, see the README", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates an executor which runs each task on its own thread, or on one of a
+     * pool of at least {@code parallelism} threads.
+     */
+    protected abstract ExecutorService newExecutor(String name, int parallelism);
+
+    /**
+     * Runs the tasks, at most {@code parallelism} at once, and waits for them all to
+     * finish. The results are returned in the same order as the tasks.
+     * <p>
+     * If any task fails, the others are cancelled and the first failure is thrown, so
+     * no task outlives this call.
+     */
+    public <T> List<T> runAll(String name, int parallelism, List<? extends Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<>();
+        if (parallelism <= 1 || tasks.size() <= 1) {
+            // No need for any other threads
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        ExecutorService executor = newExecutor(name, Math.min(parallelism, tasks.size()));
+        Semaphore permits = new Semaphore(parallelism);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Throwables.propagateIfPossible(e.getCause(), Exception.class);
+                    throw e;
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Creates an executor for one stage of a pipeline, see {@link StageExecutor}.
+     */
+    public StageExecutor newStage(String name, int parallelism, int bufferSize) {
+        return new StageExecutor(newExecutor(name, parallelism), parallelism, bufferSize);
+    }
+
+    /**
+     * Whether tasks run on virtual threads.
+     */
+    public abstract boolean isVirtual();
+
+    private static class PlatformThreadTaskExecutors extends TaskExecutors {
+        @Override
+        protected ExecutorService newExecutor(String name, int parallelism) {
+            return Executors.newFixedThreadPool(
+                    parallelism,
+                    new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+        }
+
+        @Override
+        public boolean isVirtual() {
+            return false;
+        }
+    }
+}
@@ -1,23 +1,22 @@
 package com.softwire.todos.errors;
 
-import com.atlassian.jira.rest.client.api.domain.Issue;
 import com.softwire.todos.CodeTodo;
 
 import java.util.Collection;
 
 public class WithInvalidStatusError extends TodoCheckerError {
-    private final Issue issue;
+    private final String issueKey;
     private final String statusName;
 
-    public WithInvalidStatusError(Collection<CodeTodo> value, Issue issue, String statusName) {
+    public WithInvalidStatusError(Collection<CodeTodo> value, String issueKey, String statusName) {
         super(value);
 
-        this.issue = issue;
+        this.issueKey = issueKey;
         this.statusName = statusName;
     }
 
-    public Issue getIssue() {
-        return issue;
+    public String getIssueKey() {
+        return issueKey;
     }
 
     public String getStatusName() {
@@ -0,0 +1,293 @@
+package com.softwire.todos.history;
+
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A summary of every run, kept so that trends can be reported without scanning old
+ * commits again.
+ * <p>
+ * The history is a directory holding:
+ * <ul>
+ *     <li>`runs.jsonl`: a {@link RunRecord} for each run, as a line of JSON</li>
+ *     <li>`runs.idx`: a fixed-size {@link Entry} for each run, with its time, its job,
+ *     its counts of TODOs and where its record is in `runs.jsonl`</li>
+ *     <li>`jobs.txt`: the `--job-name` of the runs, a line for each, so that the index
+ *     can refer to them by number</li>
+ * </ul>
+ * Both files are only ever appended to. A trend can be worked out from the index alone,
+ * which is small enough to read in full even after years of hourly runs, and only the
+ * records which are needed are read from `runs.jsonl`.
+ * <p>
+ * Runs are appended while holding an exclusive lock on `runs.lock`, so many processes
+ * may share a history. This is safe to use from multiple threads.
+ */
+public class RunHistory {
+    static final String RECORDS_FILE = "runs.jsonl";
+    static final String INDEX_FILE = "runs.idx";
+    static final String JOBS_FILE = "jobs.txt";
+    private static final String LOCK_FILE = "runs.lock";
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4;
+    // timestamp, offset, length, job, todos, withoutCard, invalidStatus, resolvedCard
+    private static final int ENTRY_SIZE = 8 + 8 + 4 + 4 + 4 * 4;
+    private static final Logger log = LoggerFactory.getLogger(RunHistory.class);
+
+    // Null if the history is disabled
+    private final Path dir;
+
+    RunHistory(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * A history which records nothing.
+     */
+    public static RunHistory disabled() {
+        return new RunHistory(null);
+    }
+
+    public static RunHistory open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return new RunHistory(dir);
+    }
+
+    /**
+     * Adds a run to the end of the history.
+     */
+    public void append(RunRecord record) throws IOException {
+        if (dir == null) {
+            return;
+        }
+        byte[] line = (new Gson().toJson(record) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        // File locks are held by the whole JVM, and taking one which overlaps another
+        // throws, so threads must also take turns
+        synchronized (RunHistory.class) {
+            try (FileChannel lockChannel = FileChannel.open(
+                    dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try (FileChannel index = open(INDEX_FILE);
+                     FileChannel records = open(RECORDS_FILE)) {
+                    long recordsEnd = repair(index, records, dir);
+                    int job = jobNumber(record.getJobName());
+
+                    write(records, ByteBuffer.wrap(line), recordsEnd);
+                    ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+                    entry.putLong(record.getTimestamp())
+                            .putLong(recordsEnd)
+                            .putInt(line.length)
+                            .putInt(job)
+                            .putInt(record.getTodos())
+                            .putInt(record.getWithoutCard())
+                            .putInt(record.getInvalidStatus())
+                            .putInt(record.getResolvedCard())
+                            .flip();
+                    write(index, entry, index.size());
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        log.info("Added this run to the history in {}", dir);
+    }
+
+    /**
+     * Reads the index of every run, oldest first.
+     */
+    public List<Entry> readIndex() throws IOException {
+        List<String> jobNames = readJobNames();
+        List<Entry> entries = new ArrayList<>();
+        Path indexPath = dir.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            return entries;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+        if (buffer.remaining() < HEADER_SIZE) {
+            return entries;
+        }
+        checkHeader(buffer);
+        while (buffer.remaining() >= ENTRY_SIZE) {
+            long timestamp = buffer.getLong();
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            int job = buffer.getInt();
+            entries.add(new Entry(
+                    timestamp,
+                    offset,
+                    length,
+                    job < jobNames.size() ? jobNames.get(job) : "",
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getInt()));
+        }
+        // (Any incomplete last entry is from an append which didn't finish)
+        return entries;
+    }
+
+    /**
+     * Reads the full record of the given run.
+     */
+    public RunRecord read(Entry entry) throws IOException {
+        try (FileChannel records = FileChannel.open(dir.resolve(RECORDS_FILE), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            while (buffer.hasRemaining() && records.read(buffer, entry.offset + buffer.position()) >= 0) {
+                // Keep reading
+            }
+            return new Gson().fromJson(new String(buffer.array(), StandardCharsets.UTF_8), RunRecord.class);
+        }
+    }
+
+    private FileChannel open(String fileName) throws IOException {
+        return FileChannel.open(
+                dir.resolve(fileName),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Undoes any append which didn't finish, e.g. as the process was killed, so that
+     * the index and the records match. (Called with the lock held.)
+     *
+     * @return the length of the records which are in the index
+     */
+    private static long repair(FileChannel index, FileChannel records, Path dir) throws IOException {
+        if (index.size() < HEADER_SIZE) {
+            index.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(FORMAT_VERSION);
+            header.flip();
+            write(index, header, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            index.read(header, 0);
+            header.flip();
+            checkHeader(header);
+        }
+
+        long entries = (index.size() - HEADER_SIZE) / ENTRY_SIZE;
+        index.truncate(HEADER_SIZE + entries * ENTRY_SIZE);
+        long recordsEnd = 0;
+        if (entries > 0) {
+            ByteBuffer lastEntry = ByteBuffer.allocate(ENTRY_SIZE);
+            index.read(lastEntry, HEADER_SIZE + (entries - 1) * ENTRY_SIZE);
+            lastEntry.flip();
+            lastEntry.getLong();
+            recordsEnd = lastEntry.getLong() + lastEntry.getInt();
+        }
+        if (records.size() < recordsEnd) {
+            throw new IOException("The records in the run history " + dir + " are shorter than its index");
+        }
+        records.truncate(recordsEnd);
+        return recordsEnd;
+    }
+
+    private static void checkHeader(ByteBuffer buffer) throws IOException {
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("The run history was written by another version (format " + formatVersion + ")");
+        }
+    }
+
+    /**
+     * The number of the job in `jobs.txt`, adding it if it's new. (Called with the
+     * lock held.)
+     */
+    private int jobNumber(String jobName) throws IOException {
+        List<String> jobNames = readJobNames();
+        int job = jobNames.indexOf(jobName);
+        if (job >= 0) {
+            return job;
+        }
+        Files.write(
+                dir.resolve(JOBS_FILE),
+                (jobName + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        return jobNames.size();
+    }
+
+    private List<String> readJobNames() throws IOException {
+        Path path = dir.resolve(JOBS_FILE);
+        return Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8) : new ArrayList<>();
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * The index of one run: its time, its job and its counts of TODOs, without its
+     * TODOs for each card.
+     */
+    public static class Entry {
+        private final long timestamp;
+        private final long offset;
+        private final int length;
+        private final String jobName;
+        private final int todos;
+        private final int withoutCard;
+        private final int invalidStatus;
+        private final int resolvedCard;
+
+        Entry(long timestamp,
+              long offset,
+              int length,
+              String jobName,
+              int todos,
+              int withoutCard,
+              int invalidStatus,
+              int resolvedCard) {
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.length = length;
+            this.jobName = jobName;
+            this.todos = todos;
+            this.withoutCard = withoutCard;
+            this.invalidStatus = invalidStatus;
+            this.resolvedCard = resolvedCard;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * The run's `--job-name`, or "" if it had none
+         */
+        public String getJobName() {
+            return jobName;
+        }
+
+        public int getTodos() {
+            return todos;
+        }
+
+        public int getWithoutCard() {
+            return withoutCard;
+        }
+
+        public int getInvalidStatus() {
+            return invalidStatus;
+        }
+
+        public int getResolvedCard() {
+            return resolvedCard;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.softwire.todos.history;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Arrays.asList;
+
+/**
+ * Answers questions about the {@link RunHistory}, e.g. how the number of TODOs without
+ * a card has changed over the last quarter, without scanning anything.
+ * <p>
+ * When the runs of several jobs are in the history, their counts are added together,
+ * unless a `--job-name` is given. A job which didn't run during a period is counted as
+ * it was at its last run.
+ */
+public class RunHistoryQuery {
+    public static final List<String> QUERIES = asList("trend", "top-issues", "top-projects", "runs");
+    public static final List<String> INTERVALS = asList("day", "week", "month");
+    private static final int DEFAULT_DAYS = 90;
+
+    private final RunHistory history;
+    private final Config config;
+    private final Clock clock;
+
+    public RunHistoryQuery(RunHistory history, Config config) {
+        this(history, config, Clock.systemUTC());
+    }
+
+    RunHistoryQuery(RunHistory history, Config config, Clock clock) {
+        checkArgument(QUERIES.contains(config.getHistoryQuery()),
+                "--history-query must be one of %s", QUERIES);
+        checkArgument(INTERVALS.contains(config.getHistoryInterval()),
+                "--history-interval must be one of %s", INTERVALS);
+        this.history = history;
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public void run(PrintStream out) throws IOException {
+        long since = since().atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        List<RunHistory.Entry> entries = history.readIndex().stream()
+                .filter(entry -> entry.getTimestamp() >= since)
+                .filter(entry -> config.getJobName() == null || config.getJobName().equals(entry.getJobName()))
+                .sorted(Comparator.comparingLong(RunHistory.Entry::getTimestamp))
+                .collect(Collectors.toList());
+
+        switch (config.getHistoryQuery()) {
+            case "trend":
+                trend(entries, out);
+                break;
+            case "top-issues":
+                top(entries, RunRecord::getTodosByIssue, "card", out);
+                break;
+            case "top-projects":
+                top(entries, RunRecord::getTodosByProject, "project", out);
+                break;
+            default:
+                runs(entries, out);
+                break;
+        }
+    }
+
+    private LocalDate since() {
+        return config.getHistorySince() == null
+                ? LocalDate.now(clock).minusDays(DEFAULT_DAYS)
+                : LocalDate.parse(config.getHistorySince());
+    }
+
+    /**
+     * Prints the counts of TODOs at the end of each period, from the index alone.
+     */
+    private void trend(List<RunHistory.Entry> entries, PrintStream out) {
+        // The last run of each job in each period
+        Map<LocalDate, Map<String, RunHistory.Entry>> periods = new TreeMap<>();
+        Map<LocalDate, Integer> runsByPeriod = new HashMap<>();
+        for (RunHistory.Entry entry : entries) {
+            LocalDate period = period(entry.getTimestamp());
+            periods.computeIfAbsent(period, ignored -> new HashMap<>()).put(entry.getJobName(), entry);
+            runsByPeriod.merge(period, 1, Integer::sum);
+        }
+
+        out.println(String.format("%-10s %6s %8s %12s %14s %13s",
+                "period", "runs", "todos", "without_card", "invalid_status", "resolved_card"));
+        Map<String, RunHistory.Entry> latestByJob = new HashMap<>();
+        for (Map.Entry<LocalDate, Map<String, RunHistory.Entry>> period : periods.entrySet()) {
+            latestByJob.putAll(period.getValue());
+            out.println(String.format("%-10s %6d %8d %12d %14d %13d",
+                    period.getKey(),
+                    runsByPeriod.get(period.getKey()),
+                    latestByJob.values().stream().mapToInt(RunHistory.Entry::getTodos).sum(),
+                    latestByJob.values().stream().mapToInt(RunHistory.Entry::getWithoutCard).sum(),
+                    latestByJob.values().stream().mapToInt(RunHistory.Entry::getInvalidStatus).sum(),
+                    latestByJob.values().stream().mapToInt(RunHistory.Entry::getResolvedCard).sum()));
+        }
+    }
+
+    /**
+     * Prints the `--history-top` keys with the most TODOs as of the last run, with the
+     * change since the first run in the period. Only those two runs of each job are read.
+     */
+    private void top(
+            List<RunHistory.Entry> entries,
+            Function<RunRecord, Map<String, Integer>> counts,
+            String heading,
+            PrintStream out) throws IOException {
+        Map<String, RunHistory.Entry> firstByJob = new LinkedHashMap<>();
+        Map<String, RunHistory.Entry> lastByJob = new LinkedHashMap<>();
+        for (RunHistory.Entry entry : entries) {
+            firstByJob.putIfAbsent(entry.getJobName(), entry);
+            lastByJob.put(entry.getJobName(), entry);
+        }
+        Map<String, Integer> first = sum(firstByJob.values(), counts);
+        Map<String, Integer> last = sum(lastByJob.values(), counts);
+
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(last.entrySet());
+        ranked.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        out.println(String.format("%-20s %8s %8s", heading, "todos", "change"));
+        for (Map.Entry<String, Integer> entry : ranked.subList(0, Math.min(config.getHistoryTop(), ranked.size()))) {
+            out.println(String.format("%-20s %8d %+8d",
+                    entry.getKey(),
+                    entry.getValue(),
+                    entry.getValue() - first.getOrDefault(entry.getKey(), 0)));
+        }
+    }
+
+    private Map<String, Integer> sum(
+            Iterable<RunHistory.Entry> entries,
+            Function<RunRecord, Map<String, Integer>> counts) throws IOException {
+        Map<String, Integer> total = new HashMap<>();
+        for (RunHistory.Entry entry : entries) {
+            counts.apply(history.read(entry)).forEach((key, count) -> total.merge(key, count, Integer::sum));
+        }
+        return total;
+    }
+
+    /**
+     * Prints every run, with the commits it scanned.
+     */
+    private void runs(List<RunHistory.Entry> entries, PrintStream out) throws IOException {
+        out.println(String.format("%-20s %-20s %8s %12s %14s %13s  %s",
+                "time", "job", "todos", "without_card", "invalid_status", "resolved_card", "commits"));
+        for (RunHistory.Entry entry : entries) {
+            RunRecord record = history.read(entry);
+            out.println(String.format("%-20s %-20s %8d %12d %14d %13d  %s",
+                    Instant.ofEpochMilli(entry.getTimestamp()).truncatedTo(ChronoUnit.SECONDS),
+                    entry.getJobName(),
+                    entry.getTodos(),
+                    entry.getWithoutCard(),
+                    entry.getInvalidStatus(),
+                    entry.getResolvedCard(),
+                    record.getCommits().values().stream()
+                            .map(commit -> commit.substring(0, Math.min(12, commit.length())))
+                            .collect(Collectors.joining(" "))));
+        }
+    }
+
+    /**
+     * The first day of the `--history-interval` containing the given time, in UTC
+     */
+    private LocalDate period(long timestamp) {
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZoneOffset.UTC).toLocalDate();
+        switch (config.getHistoryInterval()) {
+            case "day":
+                return date;
+            case "week":
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            default:
+                return date.withDayOfMonth(1);
+        }
+    }
+
+    public interface Config {
+        /**
+         * One of {@link #QUERIES}
+         */
+        String getHistoryQuery();
+
+        /**
+         * The first day to include, as e.g. "2024-01-31", or null for the last 90 days
+         */
+        String getHistorySince();
+
+        /**
+         * One of {@link #INTERVALS}
+         */
+        String getHistoryInterval();
+
+        int getHistoryTop();
+
+        /**
+         * The job whose runs to include, or null for every job
+         */
+        String getJobName();
+    }
+}
@@ -0,0 +1,104 @@
+package com.softwire.todos.history;
+
+import com.softwire.todos.errors.TodoCheckerError;
+import com.softwire.todos.errors.TodoCheckerErrors;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A summary of one run, as kept in the {@link RunHistory}: how many TODOs were
+ * checked, against which cards, and how many were in each category of error.
+ */
+public class RunRecord {
+    // In milliseconds since the epoch
+    private long timestamp;
+    // "" if the run had no --job-name
+    private String jobName;
+    // The commit checked out in each checkout scanned, by its directory
+    private Map<String, String> commits = new TreeMap<>();
+    private int todos;
+    private int withoutCard;
+    private int invalidStatus;
+    private int resolvedCard;
+    private Map<String, Integer> todosByProject = new TreeMap<>();
+    private Map<String, Integer> todosByIssue = new TreeMap<>();
+
+    private RunRecord() {
+        // For Gson
+    }
+
+    /**
+     * @param jobName      the run's `--job-name`, or null
+     * @param commits      the commit checked out in each checkout scanned, by its directory
+     * @param todosByIssue the number of TODOs against each card, not including those
+     *                     without a card
+     */
+    public static RunRecord of(
+            long timestamp,
+            String jobName,
+            Map<String, String> commits,
+            Map<String, Integer> todosByIssue,
+            TodoCheckerErrors errors) {
+        RunRecord record = new RunRecord();
+        record.timestamp = timestamp;
+        record.jobName = jobName == null ? "" : jobName;
+        record.commits.putAll(commits);
+        record.todosByIssue.putAll(todosByIssue);
+        for (Map.Entry<String, Integer> entry : todosByIssue.entrySet()) {
+            record.todosByProject.merge(projectKey(entry.getKey()), entry.getValue(), Integer::sum);
+        }
+        record.withoutCard = countTodos(errors.getWithoutCardErrors());
+        record.invalidStatus = countTodos(errors.getWithInvalidStatusErrors());
+        record.resolvedCard = countTodos(errors.getWithResolvedCardErrors());
+        record.todos = record.withoutCard + record.todosByIssue.values().stream().mapToInt(Integer::intValue).sum();
+        return record;
+    }
+
+    private static String projectKey(String issueKey) {
+        int dash = issueKey.lastIndexOf('-');
+        return dash < 0 ? issueKey : issueKey.substring(0, dash);
+    }
+
+    private static int countTodos(List<? extends TodoCheckerError> errors) {
+        return errors.stream().mapToInt(error -> error.getCodeTodos().size()).sum();
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public Map<String, String> getCommits() {
+        return Collections.unmodifiableMap(commits);
+    }
+
+    public int getTodos() {
+        return todos;
+    }
+
+    public int getWithoutCard() {
+        return withoutCard;
+    }
+
+    public int getInvalidStatus() {
+        return invalidStatus;
+    }
+
+    public int getResolvedCard() {
+        return resolvedCard;
+    }
+
+    public Map<String, Integer> getTodosByProject() {
+        return Collections.unmodifiableMap(todosByProject);
+    }
+
+    public Map<String, Integer> getTodosByIssue() {
+        return Collections.unmodifiableMap(todosByIssue);
+    }
+}
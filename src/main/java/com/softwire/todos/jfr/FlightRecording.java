@@ -0,0 +1,89 @@
+package com.softwire.todos.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+
+/**
+ * Support for Java Flight Recorder: a check for whether the JVM supports it
+ * (older Java 8 builds do not), and an optional recording for the whole run which
+ * is kept only if the run is slow or fails.
+ * <p>
+ * The custom events in this package let a recording show the checker's own
+ * operations (git commands, JIRA and Slack calls) next to the JVM's GC and thread
+ * activity. They are emitted whenever a recording is running, whether started by
+ * {@link #startContinuousRecording} or externally, e.g. with `jcmd JFR.start`.
+ */
+public class FlightRecording {
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Recording recording;
+    private final long startTimeMillis = System.currentTimeMillis();
+
+    private FlightRecording(Recording recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Whether the JFR API is present. The event classes in this package must not be
+     * loaded unless it is.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    private static boolean checkAvailable() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return jdk.jfr.FlightRecorder.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts recording with the JDK's "default" (low overhead) settings. The recording
+     * is held in memory and in a temporary file until {@link #finish} is called.
+     */
+    public static FlightRecording startContinuousRecording() throws Exception {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("todo-checker");
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofHours(1));
+        recording.start();
+        return new FlightRecording(recording);
+    }
+
+    /**
+     * Stops the recording and, if the run failed or took longer than the threshold,
+     * writes it to a new file in the given directory.
+     */
+    public void finish(boolean failed, Duration slowRunThreshold, Path dumpDirectory) throws Exception {
+        Duration elapsed = Duration.ofMillis(System.currentTimeMillis() - startTimeMillis);
+        try {
+            recording.stop();
+            boolean slow = elapsed.compareTo(slowRunThreshold) > 0;
+            if (failed || slow) {
+                Files.createDirectories(dumpDirectory);
+                Path file = dumpDirectory.resolve(String.format(
+                        "todo-checker-%s.jfr",
+                        new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(startTimeMillis))));
+                recording.dump(file);
+                log.info("The run {} after {}s, so its flight recording was written to {}",
+                        failed ? "failed" : "was slow",
+                        elapsed.getSeconds(),
+                        file);
+            }
+        } finally {
+            recording.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.softwire.todos.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A `git` (or other) subprocess run by {@link com.softwire.todos.GitCheckout}.
+ * <p>
+ * Only create this when {@link FlightRecording#isAvailable()}.
+ */
+@Name("com.softwire.todos.GitExec")
+@Label("Git Command")
+@Category({"TODO Checker", "Subprocess"})
+@Description("A subprocess run in a checkout")
+public class GitExecEvent extends jdk.jfr.Event {
+    @Label("Command")
+    public String command;
+
+    @Label("Exit Code")
+    public int exitCode;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    public static GitExecEvent begin(String command) {
+        GitExecEvent event = new GitExecEvent();
+        event.command = command;
+        event.begin();
+        return event;
+    }
+
+    public void end(int exitCode, long bytesRead) {
+        this.exitCode = exitCode;
+        this.bytesRead = bytesRead;
+        commit();
+    }
+}
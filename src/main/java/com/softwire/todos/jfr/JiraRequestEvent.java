@@ -0,0 +1,49 @@
+package com.softwire.todos.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call made by {@link com.softwire.todos.jira.JiraClient} to the JIRA REST API.
+ * <p>
+ * Only create this when {@link FlightRecording#isAvailable()}.
+ */
+@Name("com.softwire.todos.JiraRequest")
+@Label("JIRA Request")
+@Category({"TODO Checker", "Remote API"})
+@Description("A call to the JIRA REST API")
+public class JiraRequestEvent extends jdk.jfr.Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Issue Key")
+    public String issueKey;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    @Label("Status Code")
+    @Description("The HTTP status of a failed request, if known, otherwise 0")
+    public int statusCode;
+
+    @Label("Retries")
+    @Description("How many times the request was retried after JIRA limited the rate of requests")
+    public int retries;
+
+    public static JiraRequestEvent begin(String method, String issueKey) {
+        JiraRequestEvent event = new JiraRequestEvent();
+        event.method = method;
+        event.issueKey = issueKey;
+        event.begin();
+        return event;
+    }
+
+    public void end(boolean succeeded, int statusCode, int retries) {
+        this.succeeded = succeeded;
+        this.statusCode = statusCode;
+        this.retries = retries;
+        commit();
+    }
+}
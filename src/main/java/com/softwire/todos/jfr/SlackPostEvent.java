@@ -0,0 +1,48 @@
+package com.softwire.todos.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A call made by {@link com.softwire.todos.slack.SlackClient} to the Slack API.
+ * <p>
+ * Only create this when {@link FlightRecording#isAvailable()}.
+ */
+@Name("com.softwire.todos.SlackPost")
+@Label("Slack Post")
+@Category({"TODO Checker", "Remote API"})
+@Description("A call to the Slack API")
+public class SlackPostEvent extends jdk.jfr.Event {
+    @Label("Method")
+    public String method;
+
+    @Label("Channel")
+    public String channel;
+
+    @Label("Message Length")
+    @Description("The length of the message, in characters")
+    public long messageLength;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+
+    @Label("Error")
+    public String error;
+
+    public static SlackPostEvent begin(String method, String channel, int messageLength) {
+        SlackPostEvent event = new SlackPostEvent();
+        event.method = method;
+        event.channel = channel;
+        event.messageLength = messageLength;
+        event.begin();
+        return event;
+    }
+
+    public void end(boolean succeeded, String error) {
+        this.succeeded = succeeded;
+        this.error = error;
+        commit();
+    }
+}
@@ -0,0 +1,187 @@
+package com.softwire.todos.jira;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A fingerprint of each TODO comment which we know to be on a JIRA card, as of the
+ * end of the last run, so that the {@link JiraCommenter} only needs to touch the
+ * cards whose TODOs have changed.
+ * <p>
+ * Anyone can edit or delete a comment in JIRA, so the snapshot can drift from what
+ * is really there. Every {@code fullVerifyInterval}, each job checks every comment
+ * against JIRA as if there were no snapshot, and starts a new snapshot from what it
+ * finds.
+ * <p>
+ * The snapshot is saved as JSON between runs, with a separate section for each
+ * `--job-name`, since each job has its own comments. This is safe to use from
+ * multiple threads.
+ */
+public class CommentSnapshot {
+    private static final int FORMAT_VERSION = 1;
+    private static final Logger log = LoggerFactory.getLogger(CommentSnapshot.class);
+
+    private final Duration fullVerifyInterval;
+    private final Clock clock;
+    private final Map<String, Job> jobsByName = new ConcurrentHashMap<>();
+
+    CommentSnapshot(Duration fullVerifyInterval, Clock clock) {
+        this.fullVerifyInterval = fullVerifyInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * A snapshot which is never trusted, so every comment is checked against JIRA.
+     */
+    public static CommentSnapshot disabled() {
+        return new CommentSnapshot(Duration.ZERO, Clock.systemUTC());
+    }
+
+    /**
+     * Whether the snapshot is ever trusted, rather than checking every comment against JIRA
+     */
+    public boolean isEnabled() {
+        return !fullVerifyInterval.isZero();
+    }
+
+    /**
+     * Reads the snapshot saved by a previous run, or returns an empty snapshot if there
+     * is none, or it can't be read.
+     */
+    public static CommentSnapshot read(Path path, Duration fullVerifyInterval) {
+        return read(path, fullVerifyInterval, Clock.systemUTC());
+    }
+
+    static CommentSnapshot read(Path path, Duration fullVerifyInterval, Clock clock) {
+        CommentSnapshot snapshot = new CommentSnapshot(fullVerifyInterval, clock);
+        if (!Files.exists(path)) {
+            return snapshot;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            SnapshotFile file = new Gson().fromJson(reader, SnapshotFile.class);
+            if (file == null || file.formatVersion != FORMAT_VERSION) {
+                log.warn("Ignoring the comment snapshot {}, as it was saved by another version", path);
+            } else {
+                for (Map.Entry<String, JobFile> entry : file.jobs.entrySet()) {
+                    Job job = snapshot.forJob(entry.getKey());
+                    job.lastFullVerification = entry.getValue().lastFullVerification;
+                    job.fingerprintsByIssueKey.putAll(entry.getValue().fingerprints);
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            // Every comment will be checked against JIRA, as if this were the first run
+            log.warn("Ignoring the comment snapshot " + path + ", as it could not be read", e);
+        }
+        return snapshot;
+    }
+
+    /**
+     * The comments written by the job with the given `--job-name`, which may be null.
+     */
+    public Job forJob(String jobName) {
+        return jobsByName.computeIfAbsent(jobName == null ? "" : jobName, ignored -> new Job());
+    }
+
+    public void writeTo(Path path) throws IOException {
+        SnapshotFile file = new SnapshotFile();
+        for (Map.Entry<String, Job> entry : jobsByName.entrySet()) {
+            JobFile jobFile = new JobFile();
+            jobFile.lastFullVerification = entry.getValue().lastFullVerification;
+            jobFile.fingerprints.putAll(entry.getValue().fingerprintsByIssueKey);
+            file.jobs.put(entry.getKey(), jobFile);
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new Gson().toJson(file, writer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("Saved the comment snapshot to {}", path);
+    }
+
+    /**
+     * The fingerprint of the given comment text, which is all that is kept of it.
+     */
+    static String fingerprint(String commentText) {
+        return Hashing.sha256().hashString(commentText, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * The comments written by one job.
+     */
+    public class Job {
+        // By the card's current key
+        private final Map<String, String> fingerprintsByIssueKey = new ConcurrentHashMap<>();
+        // In milliseconds since the epoch, or 0 if there has never been a full verification
+        private volatile long lastFullVerification;
+
+        /**
+         * Whether the snapshot is too old to trust, so every comment must be checked
+         * against JIRA.
+         */
+        public boolean isFullVerificationDue() {
+            return clock.millis() - lastFullVerification >= fullVerifyInterval.toMillis();
+        }
+
+        /**
+         * Records that every comment has just been checked against JIRA.
+         */
+        public void markVerified() {
+            lastFullVerification = clock.millis();
+        }
+
+        /**
+         * Whether the card's comment is known to have the given text.
+         */
+        public boolean hasComment(String issueKey, String commentText) {
+            return fingerprint(commentText).equals(fingerprintsByIssueKey.get(issueKey));
+        }
+
+        public void putComment(String issueKey, String commentText) {
+            fingerprintsByIssueKey.put(issueKey, fingerprint(commentText));
+        }
+
+        public void removeComment(String issueKey) {
+            fingerprintsByIssueKey.remove(issueKey);
+        }
+
+        /**
+         * The keys of the cards which are known to have a comment.
+         */
+        public Set<String> getIssueKeys() {
+            return fingerprintsByIssueKey.keySet();
+        }
+    }
+
+    private static class SnapshotFile {
+        private int formatVersion = FORMAT_VERSION;
+        private Map<String, JobFile> jobs = new HashMap<>();
+    }
+
+    private static class JobFile {
+        private long lastFullVerification;
+        private Map<String, String> fingerprints = new HashMap<>();
+    }
+}
@@ -0,0 +1,162 @@
+package com.softwire.todos.jira;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads and writes JIRA issue entity properties, which the REST client library
+ * doesn't support, with plain REST calls.
+ * <p>
+ * See https://developer.atlassian.com/cloud/jira/platform/jira-entity-properties/
+ * <p>
+ * Responses are requested gzipped, as a search for the properties of a thousand
+ * cards can be large. Each response is read in full and its connection left open,
+ * so that the JDK can reuse it for the next request to JIRA.
+ */
+class IssuePropertyClient {
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
+    private final URI serverUri;
+    private final String authorization;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    IssuePropertyClient(
+            URI serverUri,
+            String username,
+            String password,
+            int connectTimeoutSeconds,
+            int readTimeoutSeconds) {
+        this.serverUri = serverUri;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(
+                (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.connectTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(connectTimeoutSeconds);
+        this.readTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(readTimeoutSeconds);
+    }
+
+    void setProperty(String issueKey, String propertyKey, Object value) throws IOException {
+        request("PUT", propertyPath(issueKey, propertyKey), new Gson().toJson(value), false);
+    }
+
+    /**
+     * Deletes the property, if the card has it.
+     */
+    void deleteProperty(String issueKey, String propertyKey) throws IOException {
+        request("DELETE", propertyPath(issueKey, propertyKey), null, true);
+    }
+
+    /**
+     * Finds the cards matching the given JQL, with the value of the given property on
+     * each. No other fields of the cards are fetched.
+     *
+     * @return the value of the property on each card, by the card's key, or a JSON null
+     * if the card doesn't have the property
+     */
+    Map<String, JsonElement> search(String jql, String propertyKey) throws IOException {
+        String path = "rest/api/2/search" +
+                "?jql=" + encode(jql) +
+                "&fields=" + encode("key") +
+                "&properties=" + encode(propertyKey) +
+                "&maxResults=" + MAX_SEARCH_RESULTS;
+        JsonObject result = JsonParser.parseString(request("GET", path, null, false)).getAsJsonObject();
+
+        JsonArray issues = result.getAsJsonArray("issues");
+        if (result.has("total") && result.get("total").getAsInt() > issues.size()) {
+            // As for JiraClient.searchIssuesWithComments, this should be self healing
+            log.warn("Too many results from JIRA query: consider adding pagination");
+        }
+        Map<String, JsonElement> propertiesByIssueKey = new LinkedHashMap<>();
+        for (JsonElement issue : issues) {
+            JsonObject properties = issue.getAsJsonObject().getAsJsonObject("properties");
+            propertiesByIssueKey.put(
+                    issue.getAsJsonObject().get("key").getAsString(),
+                    properties == null || !properties.has(propertyKey)
+                            ? JsonNull.INSTANCE
+                            : properties.get(propertyKey));
+        }
+        return propertiesByIssueKey;
+    }
+
+    private static String propertyPath(String issueKey, String propertyKey) {
+        return "rest/api/2/issue/" + encode(issueKey) + "/properties/" + encode(propertyKey);
+    }
+
+    /**
+     * @param notFoundIsOk whether a 404 Not Found response is expected
+     * @return the response body, or null if it was not found
+     */
+    private String request(String method, String path, String body, boolean notFoundIsOk) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) serverUri.resolve(path).toURL().openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Authorization", authorization);
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int status = connection.getResponseCode();
+        // (The body is read even when it isn't wanted, so that the connection can be reused)
+        if (status >= 400) {
+            String message = readBody(connection, connection.getErrorStream());
+            if (status == HttpURLConnection.HTTP_NOT_FOUND && notFoundIsOk) {
+                return null;
+            }
+            throw new IOException(String.format(
+                    "%s %s failed, with status %d: %s", method, path, status, message));
+        }
+        return readBody(connection, connection.getInputStream());
+    }
+
+    private static String readBody(HttpURLConnection connection, InputStream body) throws IOException {
+        if (body == null) {
+            return "";
+        }
+        if (connection.getContentLengthLong() == 0) {
+            // e.g. 204 No Content, which isn't valid gzip even when labelled as such
+            body.close();
+            return "";
+        }
+        try (InputStream in = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+                ? new GZIPInputStream(body)
+                : body) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
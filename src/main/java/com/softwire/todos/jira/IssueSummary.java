@@ -0,0 +1,62 @@
+package com.softwire.todos.jira;
+
+/**
+ * What a cache remembers about a card when it was last fetched: enough to check the
+ * TODOs against it without fetching it again.
+ *
+ * @see ResolvedIssueCache
+ * @see SharedIssueCache
+ */
+public class IssueSummary {
+    private final String key;
+    private final String resolutionName;
+    private final String statusName;
+    private final long verifiedAt;
+
+    IssueSummary(String key, String resolutionName, String statusName, long verifiedAt) {
+        this.key = key;
+        this.resolutionName = resolutionName;
+        this.statusName = statusName;
+        this.verifiedAt = verifiedAt;
+    }
+
+    /**
+     * The card's current key, which may differ from the key in the TODO if the card
+     * has moved
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The card's resolution, or null if it is unresolved
+     */
+    public String getResolutionName() {
+        return resolutionName;
+    }
+
+    public String getStatusName() {
+        return statusName;
+    }
+
+    /**
+     * When the card was last fetched, in milliseconds since the epoch
+     */
+    public long getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof IssueSummary)) return false;
+        return key.equals(((IssueSummary) o).key);
+    }
+
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    public String toString() {
+        return "com.softwire.todos.jira.IssueSummary(key=" + key + ", resolutionName=" + resolutionName + ")";
+    }
+}
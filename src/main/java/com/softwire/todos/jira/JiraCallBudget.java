@@ -0,0 +1,178 @@
+package com.softwire.todos.jira;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Limits the number of requests one run may make to JIRA, separately for reads
+ * and writes, so that a misconfigured run can't get a shared JIRA account throttled.
+ * <p>
+ * Optionally also limits the rate of requests, so that a budget shared by several
+ * concurrent runs doesn't all get spent at once.
+ * <p>
+ * Also counts the requests made, by method, and records which cards could not be
+ * looked up or updated because the budget had been spent.
+ * <p>
+ * This is safe to use from multiple threads.
+ */
+public class JiraCallBudget {
+    private final Integer maxReads;
+    private final Integer maxWrites;
+    private final RateLimiter rateLimiter;
+    private final AtomicInteger reads = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> readsByMethod = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> writesByMethod = new ConcurrentHashMap<>();
+    // Requests made outside the budget, which are reported but don't count towards its limits
+    private final AtomicInteger unbudgetedReads = new AtomicInteger();
+    private final AtomicInteger unbudgetedWrites = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> unbudgetedReadsByMethod = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> unbudgetedWritesByMethod = new ConcurrentHashMap<>();
+    private final Set<String> skippedLookups = ConcurrentHashMap.newKeySet();
+    private final Set<String> skippedWrites = ConcurrentHashMap.newKeySet();
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * @param maxReads the maximum number of read requests, or null for no limit
+     * @param maxWrites the maximum number of write requests, or null for no limit
+     * @param maxRequestsPerSecond the maximum rate of requests, or null for no limit
+     */
+    public JiraCallBudget(Integer maxReads, Integer maxWrites, Double maxRequestsPerSecond) {
+        this.maxReads = maxReads;
+        this.maxWrites = maxWrites;
+        this.rateLimiter = maxRequestsPerSecond == null ? null : RateLimiter.create(maxRequestsPerSecond);
+    }
+
+    public static JiraCallBudget unlimited() {
+        return new JiraCallBudget(null, null, null);
+    }
+
+    /**
+     * Blocks until the rate limit allows another request to be made.
+     */
+    void awaitPermit() {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+    }
+
+    /**
+     * Takes one read from the budget, if there is one left.
+     */
+    boolean tryAcquireRead(String method) {
+        return tryAcquire(reads, maxReads, readsByMethod, method);
+    }
+
+    /**
+     * Takes one write from the budget, if there is one left.
+     */
+    boolean tryAcquireWrite(String method) {
+        return tryAcquire(writes, maxWrites, writesByMethod, method);
+    }
+
+    /**
+     * Counts a read which is needed regardless of the budget, such as the one-off
+     * fetch of the server info. It doesn't count towards the limit on reads.
+     */
+    void recordUnbudgetedRead(String method) {
+        unbudgetedReads.incrementAndGet();
+        unbudgetedReadsByMethod.computeIfAbsent(method, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    /**
+     * Counts a write which goes with one already taken from the budget, such as
+     * recording the comment just added in an issue property. It doesn't count towards
+     * the limit on writes.
+     */
+    void recordUnbudgetedWrite(String method) {
+        unbudgetedWrites.incrementAndGet();
+        unbudgetedWritesByMethod.computeIfAbsent(method, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static boolean tryAcquire(
+            AtomicInteger used,
+            Integer max,
+            ConcurrentMap<String, AtomicInteger> byMethod,
+            String method) {
+        while (true) {
+            int current = used.get();
+            if (max != null && current >= max) {
+                return false;
+            }
+            if (used.compareAndSet(current, current + 1)) {
+                byMethod.computeIfAbsent(method, k -> new AtomicInteger()).incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    void recordSkippedLookup(String issueKey) {
+        skippedLookups.add(issueKey);
+    }
+
+    void recordSkippedWrite(String issueKey) {
+        skippedWrites.add(issueKey);
+    }
+
+    public boolean wasLookupSkipped(String issueKey) {
+        return skippedLookups.contains(issueKey);
+    }
+
+    /**
+     * Logs the number of requests made, by category, and any cards which were skipped.
+     */
+    public void logSummary() {
+        log.info("JIRA reads: {}",
+                describe(reads, maxReads, readsByMethod, unbudgetedReads, unbudgetedReadsByMethod));
+        log.info("JIRA writes: {}",
+                describe(writes, maxWrites, writesByMethod, unbudgetedWrites, unbudgetedWritesByMethod));
+
+        if (!skippedLookups.isEmpty()) {
+            log.warn("The JIRA read budget of {} was spent, so TODOs on these {} card(s) were not checked: {}",
+                    maxReads,
+                    skippedLookups.size(),
+                    String.join(", ", new TreeSet<>(skippedLookups)));
+        }
+        if (!skippedWrites.isEmpty()) {
+            log.warn("The JIRA write budget of {} was spent, so comments on these {} card(s) were not updated: {}",
+                    maxWrites,
+                    skippedWrites.size(),
+                    String.join(", ", new TreeSet<>(skippedWrites)));
+        }
+    }
+
+    private static String describe(
+            AtomicInteger used,
+            Integer max,
+            Map<String, AtomicInteger> byMethod,
+            AtomicInteger unbudgeted,
+            Map<String, AtomicInteger> unbudgetedByMethod) {
+        String description = String.format("%s of %s (%s)",
+                used.get(),
+                max == null ? "unlimited" : max,
+                describe(byMethod));
+        if (unbudgeted.get() > 0) {
+            description += String.format(", and %s outside the budget (%s)",
+                    unbudgeted.get(),
+                    describe(unbudgetedByMethod));
+        }
+        return description;
+    }
+
+    private static String describe(Map<String, AtomicInteger> byMethod) {
+        String byMethodDescription = new TreeMap<>(byMethod).entrySet().stream()
+                .map(entry -> entry.getKey() + " " + entry.getValue().get())
+                .collect(Collectors.joining(", "));
+        return byMethodDescription.isEmpty() ? "none" : byMethodDescription;
+    }
+}
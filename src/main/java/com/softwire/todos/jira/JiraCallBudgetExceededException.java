@@ -0,0 +1,13 @@
+package com.softwire.todos.jira;
+
+/**
+ * Thrown by {@link JiraClient} instead of making a read request, once the run's
+ * {@link JiraCallBudget} for reads has been spent.
+ */
+public class JiraCallBudgetExceededException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public JiraCallBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -1,22 +1,37 @@
 package com.softwire.todos.jira;
 
 import com.atlassian.jira.rest.client.api.JiraRestClient;
+import com.atlassian.jira.rest.client.api.RestClientException;
 import com.atlassian.jira.rest.client.api.domain.Comment;
 import com.atlassian.jira.rest.client.api.domain.Issue;
 import com.atlassian.jira.rest.client.api.domain.SearchResult;
 import com.atlassian.jira.rest.client.api.domain.ServerInfo;
-import com.atlassian.jira.rest.client.internal.async.AsynchronousJiraRestClientFactory;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonElement;
+import com.softwire.todos.jfr.FlightRecording;
+import com.softwire.todos.jfr.JiraRequestEvent;
+import com.softwire.todos.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -25,30 +40,58 @@ import static com.google.common.base.Preconditions.checkArgument;
  * a) enforces the `config.getWriteToJira()` flag
  * b) unwraps some hidden functions
  * c) caches issues to prevent re-fetching the same data
+ *    (this, and the rest of the class, is safe to use from multiple threads)
+ * d) enforces the run's {@link JiraCallBudget}
+ * e) retries requests which JIRA turns away with "429 Too Many Requests"
+ * <p>
+ * The underlying REST client is only created when the first request is made, so
+ * that runs which find nothing to look up in JIRA don't pay for it.
  */
 public class JiraClient {
 
+    // See TodoCheckerMain's handling of RestClientException
+    private static final Pattern STATUS_CODE_PATT = Pattern.compile("Client response status: (\\d+)");
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int MAX_RETRIES = 3;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 1000;
+
     private final Config config;
-    private final JiraRestClient restClient;
-    private final Map<String, Issue> issuesByKey = new HashMap<>();
+    private final URI serverUri;
+    private final Supplier<JiraRestClient> restClient;
+    private final IssuePropertyClient issuePropertyClient;
+    private final Metrics metrics;
+    private final JiraCallBudget callBudget;
+    private final ConcurrentMap<String, CompletableFuture<Issue>> issuesByKey = new ConcurrentHashMap<>();
     private final Logger log = LoggerFactory.getLogger(getClass());
     private ServerInfo serverInfo;
 
     public JiraClient(Config config) throws URISyntaxException {
+        this(config, new Metrics(), JiraCallBudget.unlimited());
+    }
+
+    public JiraClient(Config config, Metrics metrics, JiraCallBudget callBudget) throws URISyntaxException {
         this.config = config;
-        URI serverUri = new URI(config.getJiraUrl());
+        this.metrics = metrics;
+        this.callBudget = callBudget;
+        serverUri = new URI(config.getJiraUrl());
 
-        restClient = new AsynchronousJiraRestClientFactory()
-                .createWithBasicHttpAuthentication(
-                        serverUri,
-                        config.getJiraUsername(),
-                        config.getJiraPassword());
+        restClient = Suppliers.memoize(() -> JiraHttpTransport.createRestClient(serverUri, config));
+        issuePropertyClient = new IssuePropertyClient(
+                serverUri,
+                config.getJiraUsername(),
+                config.getJiraPassword(),
+                config.getJiraConnectTimeoutSeconds(),
+                config.getJiraReadTimeoutSeconds());
+        metrics.setConnectionLimit("jira", config.getJiraMaxConnections());
     }
 
-    public ServerInfo getServerInfo() {
+    public synchronized ServerInfo getServerInfo() {
         if (serverInfo == null) {
             try {
-                serverInfo = restClient.getMetadataClient().getServerInfo().get();
+                callBudget.recordUnbudgetedRead("getServerInfo");
+                serverInfo = call("getServerInfo", null,
+                        () -> restClient.get().getMetadataClient().getServerInfo().get());
+                log.info("Connected to JIRA, server build number = {}", serverInfo.getBuildNumber());
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -61,57 +104,111 @@ public class JiraClient {
             checkArgument(config.getRestrictToSingleCardId().equals(key));
         }
 
-        try {
-            Issue cached = issuesByKey.get(key);
-            if (cached == null) {
-                log.debug("Fetching card info for {}", key);
-                cached = restClient.getIssueClient().getIssue(key).get();
-                issuesByKey.put(key, cached);
+        // If another thread is already fetching this issue, wait for its result
+        // rather than fetching it again.
+        CompletableFuture<Issue> fetch = new CompletableFuture<>();
+        CompletableFuture<Issue> existing = issuesByKey.putIfAbsent(key, fetch);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwables.propagateIfPossible(e.getCause(), Exception.class);
+                throw e;
             }
-            return cached;
+        }
+
+        try {
+            Issue issue = fetchIssue(key);
+            fetch.complete(issue);
+            return issue;
+        } catch (Exception e) {
+            // Don't cache failures
+            issuesByKey.remove(key, fetch);
+            fetch.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Issue fetchIssue(String key) throws Exception {
+        if (!callBudget.tryAcquireRead("getIssue")) {
+            callBudget.recordSkippedLookup(key);
+            throw new JiraCallBudgetExceededException("Not fetching " + key + ": the JIRA read budget has been spent");
+        }
+
+        try {
+            log.debug("Fetching card info for {}", key);
+            return call("getIssue", key, () -> restClient.get().getIssueClient().getIssue(key).get());
         } catch (Exception e) {
             throw new IOException("Unable to fetch issue " + key, e);
         }
     }
 
-    public void addComment(Issue issue, Comment comment) throws Exception {
+    /**
+     * @return whether the comment was added, which it isn't in dry-run mode, or once
+     * the write budget has been spent
+     */
+    public boolean addComment(Issue issue, Comment comment) throws Exception {
         if (config.getWriteToJira()) {
+            if (!tryAcquireWrite("addComment", issue)) {
+                return false;
+            }
             log.info("Adding comment to {}", issue.getKey());
-            restClient.getIssueClient()
+            call("addComment", issue.getKey(), () -> restClient.get().getIssueClient()
                     .addComment(issue.getCommentsUri(), comment)
-                    .get();
+                    .get());
+            return true;
         } else {
             log.info("Dry-run mode: Would have added comment to {}:\n{}", issue.getKey(), comment.getBody());
+            return false;
         }
     }
 
-    public void updateComment(Issue issue, Comment comment) throws Exception {
+    /**
+     * @return whether the comment was updated, as for {@link #addComment}
+     */
+    public boolean updateComment(Issue issue, Comment comment) throws Exception {
         if (config.getWriteToJira()) {
+            if (!tryAcquireWrite("updateComment", issue)) {
+                return false;
+            }
             log.info("Updating comment on {}", issue.getKey());
 
-            restClient.getIssueClient()
+            call("updateComment", issue.getKey(), () -> restClient.get().getIssueClient()
                     .updateComment(comment)
-                    .get();
+                    .get());
+            return true;
         } else {
             log.info("Dry-run mode: Would have updated comment on {}:\n{}", issue.getKey(), comment.getBody());
+            return false;
         }
     }
 
-    public void deleteComment(Issue issue, Comment comment) throws Exception {
+    /**
+     * @return whether the comment was deleted, as for {@link #addComment}
+     */
+    public boolean deleteComment(Issue issue, Comment comment) throws Exception {
         if (config.getWriteToJira()) {
+            if (!tryAcquireWrite("deleteComment", issue)) {
+                return false;
+            }
             log.info("Deleting comment on {}", issue.getKey());
 
-            restClient.getIssueClient()
+            call("deleteComment", issue.getKey(), () -> restClient.get().getIssueClient()
                     .deleteComment(comment)
-                    .get();
+                    .get());
+            return true;
         } else {
             log.info("Dry-run mode: Would have deleted comment on {}:\n{}", issue.getKey(), comment.getBody());
+            return false;
         }
     }
 
     public Set<Issue> searchIssuesWithComments(String jql) throws Exception {
-        SearchResult searchResult = restClient.getSearchClient()
-                .searchJql(jql, 1000, null, ImmutableSet.of("comment", "status")).get();
+        if (!callBudget.tryAcquireRead("searchJql")) {
+            throw new JiraCallBudgetExceededException("Not searching JIRA: the JIRA read budget has been spent");
+        }
+        SearchResult searchResult = call("searchJql", null, () -> restClient.get().getSearchClient()
+                .searchJql(jql, 1000, null, ImmutableSet.of("comment", "status")).get());
 
         if (!searchResult.isLast()) {
             // If this occurs, it means we can't fetch all matching Issues in one page.
@@ -131,8 +228,163 @@ public class JiraClient {
         return issues;
     }
 
+    /**
+     * Deletes a comment which is known only by its id, so without fetching the card.
+     *
+     * @return whether the comment was deleted, as for {@link #addComment}
+     */
+    public boolean deleteComment(String issueKey, long commentId) throws Exception {
+        URI self = serverUri.resolve("rest/api/2/issue/" + issueKey + "/comment/" + commentId);
+        Comment comment = new Comment(self, "", null, null, null, null, null, commentId);
+        if (config.getWriteToJira()) {
+            if (!tryAcquireWrite("deleteComment", issueKey)) {
+                return false;
+            }
+            log.info("Deleting comment on {}", issueKey);
+
+            call("deleteComment", issueKey, () -> restClient.get().getIssueClient()
+                    .deleteComment(comment)
+                    .get());
+            return true;
+        } else {
+            log.info("Dry-run mode: Would have deleted comment {} on {}", commentId, issueKey);
+            return false;
+        }
+    }
+
+    /**
+     * Sets an entity property on the card, after a comment has been written, so this
+     * doesn't count against the write budget.
+     */
+    public void setIssueProperty(String issueKey, String propertyKey, Object value) throws Exception {
+        if (config.getWriteToJira()) {
+            callBudget.recordUnbudgetedWrite("setIssueProperty");
+            call("setIssueProperty", issueKey, () -> {
+                issuePropertyClient.setProperty(issueKey, propertyKey, value);
+                return null;
+            });
+        } else {
+            log.debug("Dry-run mode: Would have set property {} on {}", propertyKey, issueKey);
+        }
+    }
+
+    /**
+     * Deletes an entity property from the card, after its comment has been deleted.
+     */
+    public void deleteIssueProperty(String issueKey, String propertyKey) throws Exception {
+        if (config.getWriteToJira()) {
+            callBudget.recordUnbudgetedWrite("deleteIssueProperty");
+            call("deleteIssueProperty", issueKey, () -> {
+                issuePropertyClient.deleteProperty(issueKey, propertyKey);
+                return null;
+            });
+        } else {
+            log.debug("Dry-run mode: Would have deleted property {} from {}", propertyKey, issueKey);
+        }
+    }
+
+    /**
+     * Finds the cards matching the JQL, with just the given entity property of each,
+     * by the card's key.
+     */
+    public Map<String, JsonElement> searchIssueProperties(String jql, String propertyKey) throws Exception {
+        if (!callBudget.tryAcquireRead("searchIssueProperties")) {
+            throw new JiraCallBudgetExceededException("Not searching JIRA: the JIRA read budget has been spent");
+        }
+        Map<String, JsonElement> properties = call("searchIssueProperties", null,
+                () -> issuePropertyClient.search(jql, propertyKey));
+
+        Map<String, JsonElement> result = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonElement> entry : properties.entrySet()) {
+            if (config.getRestrictToSingleCardId() == null || entry.getKey().equals(config.getRestrictToSingleCardId())) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
     public String getViewUrl(Issue issue) throws Exception {
-        return new URI(config.getJiraUrl()).resolve("browse/" + issue.getKey()).toString();
+        return getViewUrl(issue.getKey());
+    }
+
+    public String getViewUrl(String issueKey) throws Exception {
+        return new URI(config.getJiraUrl()).resolve("browse/" + issueKey).toString();
+    }
+
+    public JiraCallBudget getCallBudget() {
+        return callBudget;
+    }
+
+    private boolean tryAcquireWrite(String method, Issue issue) {
+        return tryAcquireWrite(method, issue.getKey());
+    }
+
+    private boolean tryAcquireWrite(String method, String issueKey) {
+        if (callBudget.tryAcquireWrite(method)) {
+            return true;
+        }
+        log.warn("Not updating the comment on {}: the JIRA write budget has been spent", issueKey);
+        callBudget.recordSkippedWrite(issueKey);
+        return false;
+    }
+
+    /**
+     * Makes a REST call, recording it in the metrics and as a JFR event, and retrying
+     * it (with an increasing delay) if JIRA is limiting the rate of requests.
+     * <p>
+     * This is done here, rather than left to the REST client library, so that it
+     * doesn't depend on how {@link JiraHttpTransport} creates that client. Each
+     * attempt counts against the call budget.
+     */
+    private <T> T call(String method, String issueKey, Callable<T> call) throws Exception {
+        JiraRequestEvent event = FlightRecording.isAvailable() ? JiraRequestEvent.begin(method, issueKey) : null;
+        boolean succeeded = false;
+        int statusCode = 0;
+        int retries = 0;
+        try {
+            while (true) {
+                callBudget.awaitPermit();
+                try {
+                    T result = metrics.timeCall("jira", method, call);
+                    succeeded = true;
+                    statusCode = 0;
+                    return result;
+                } catch (Exception e) {
+                    statusCode = getStatusCode(e);
+                    if (statusCode != TOO_MANY_REQUESTS || retries == MAX_RETRIES) {
+                        throw e;
+                    }
+                }
+                long delayMillis = FIRST_RETRY_DELAY_MILLIS << retries++;
+                log.info("JIRA is limiting the rate of requests, so retrying {} in {}ms", method, delayMillis);
+                Thread.sleep(delayMillis);
+            }
+        } finally {
+            if (event != null) {
+                event.end(succeeded, statusCode, retries);
+            }
+        }
+    }
+
+    /**
+     * The HTTP status of a failed call, or 0 if it isn't known
+     */
+    private static int getStatusCode(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientException) {
+                Optional<Integer> statusCode = ((RestClientException) cause).getStatusCode();
+                if (statusCode.isPresent()) {
+                    return statusCode.get();
+                }
+            }
+            if (cause instanceof RestClientException && cause.getMessage() != null) {
+                Matcher matcher = STATUS_CODE_PATT.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    return Integer.parseInt(matcher.group(1));
+                }
+            }
+        }
+        return 0;
     }
 
     public interface Config {
@@ -145,5 +397,23 @@ public class JiraClient {
         String getJiraUsername();
 
         String getJiraPassword();
+
+        /**
+         * The most connections to keep open to JIRA at once
+         */
+        int getJiraMaxConnections();
+
+        /**
+         * How long a connection to JIRA may be used for, from when it was opened,
+         * before it is closed and replaced (whether or not it has been idle)
+         */
+        int getJiraConnectionTtlSeconds();
+
+        int getJiraConnectTimeoutSeconds();
+
+        /**
+         * How long to wait for JIRA to send any data in response to a request
+         */
+        int getJiraReadTimeoutSeconds();
     }
 }
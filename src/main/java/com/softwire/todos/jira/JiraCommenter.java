@@ -4,14 +4,25 @@ import com.atlassian.jira.rest.client.api.domain.Comment;
 import com.atlassian.jira.rest.client.api.domain.Issue;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.softwire.todos.CodeTodo;
+import com.softwire.todos.concurrent.TaskExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -19,17 +30,53 @@ import static com.google.common.base.Preconditions.checkArgument;
 /**
  * Code relating to the comment we add to the JIRA card listing the
  * open TODOs on that card.
+ * <p>
+ * The comments are compared with a {@link CommentSnapshot} of the comments written
+ * by earlier runs, so only the cards whose TODOs have changed need to be touched,
+ * until the snapshot is due to be verified against JIRA.
+ * <p>
+ * Optionally, the id and fingerprint of each comment are also kept in an entity
+ * property on its card, so that stale comments can be found with an exact JQL
+ * search on the property, rather than a text search on every comment, and deleted
+ * without fetching their cards.
+ * <p>
+ * Each comment written or deleted is recorded in a {@link ReconciliationJournal}, so
+ * that if the run is interrupted, the next run of the same TODOs can skip those cards.
  */
 public class JiraCommenter {
 
     private final String commentSearchJql;
     private final String commentPreamble;
+    // The key of the entity property describing our comment on each card, or null if
+    // the properties aren't used
+    private final String commentPropertyKey;
+
+    private final int jiraParallelism;
 
     private final JiraClient jiraClient;
+    private final TaskExecutors taskExecutors;
+    private final String restrictToSingleCardId;
+    private final boolean snapshotEnabled;
+    private final CommentSnapshot.Job snapshot;
+    // Whether to check every comment against JIRA in this run, rather than the snapshot
+    private final boolean fullVerification;
+    private final ReconciliationJournal.Job journal;
     private final Logger log = LoggerFactory.getLogger(getClass());
 
-    public JiraCommenter(Config config, JiraClient jiraClient) {
+    public JiraCommenter(
+            Config config,
+            JiraClient jiraClient,
+            TaskExecutors taskExecutors,
+            CommentSnapshot commentSnapshot,
+            ReconciliationJournal reconciliationJournal) {
         this.jiraClient = jiraClient;
+        this.taskExecutors = taskExecutors;
+        this.jiraParallelism = config.getJiraParallelism();
+        this.restrictToSingleCardId = config.getRestrictToSingleCardId();
+        this.snapshotEnabled = commentSnapshot.isEnabled();
+        this.snapshot = commentSnapshot.forJob(config.getJobName());
+        this.fullVerification = snapshot.isFullVerificationDue();
+        this.journal = reconciliationJournal.forJob(config.getJobName());
 
         StringBuilder commentPreambleBuilder = new StringBuilder();
         if (config.getJobName() != null) {
@@ -42,62 +89,315 @@ public class JiraCommenter {
                 .map(jiraProject -> "project = " + jiraProject.getKey())
                 .collect(Collectors.joining(" OR "));
 
-        // See https://confluence.atlassian.com/jirasoftwareserver/search-syntax-for-text-fields-939938747.html
-        // "~" search is substring match, if the phrase is in quotes
-        commentSearchJql = String.format("(%s) AND comment ~ \"\\\"%s\\\"\"", projects, commentPreamble);
+        if (config.getUseIssueProperties()) {
+            commentPropertyKey = "todo-checker" + (config.getJobName() == null
+                    ? ""
+                    : "-" + config.getJobName().replaceAll("[^A-Za-z0-9_-]", "_"));
+            commentSearchJql = String.format(
+                    "(%s) AND issue.property[%s].fingerprint IS NOT EMPTY", projects, commentPropertyKey);
+        } else {
+            commentPropertyKey = null;
+            // See https://confluence.atlassian.com/jirasoftwareserver/search-syntax-for-text-fields-939938747.html
+            // "~" search is substring match, if the phrase is in quotes
+            commentSearchJql = String.format("(%s) AND comment ~ \"\\\"%s\\\"\"", projects, commentPreamble);
+        }
     }
 
     /**
-     * Update all the JIRA card comments about TODOs.
+     * Starts journalling the comments written and deleted, resuming an interrupted
+     * run if it had the same TODOs and settings.
+     *
+     * @param todosByIssueKey all the TODOs whose comments will be updated
      */
-    public void updateJiraComments(Multimap<Issue, CodeTodo> todosByIssue) throws Exception {
-        // 1. For all cards with current TODOs, update or create a comment
-        for (Map.Entry<Issue, Collection<CodeTodo>> entry : todosByIssue.asMap().entrySet()) {
-            Issue issue = entry.getKey();
-            if (issue == null) {
-                continue;
-            }
+    public void beginReconciliation(Multimap<String, CodeTodo> todosByIssueKey) throws IOException {
+        if (!journal.isEnabled()) {
+            // (The comments' text would be built only to be hashed)
+            return;
+        }
+        // The comments' text lists each TODO's file, line and link, so a run is only
+        // resumed if it would write exactly the comments which the journal records
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(commentSearchJql, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(commentPropertyKey), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(restrictToSingleCardId), StandardCharsets.UTF_8).putByte((byte) 0);
+        for (String issueKey : new TreeSet<>(todosByIssueKey.keySet())) {
+            hasher.putString(issueKey, StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(createCommentText(todosByIssueKey.get(issueKey)), StandardCharsets.UTF_8)
+                    .putByte((byte) 0);
+        }
+        journal.begin(hasher.hash().toString());
+    }
 
-            String commentText = createCommentText(entry.getValue());
-            Comment existingComment = findTodoComment(issue);
-
-            if (existingComment == null) {
-                jiraClient.addComment(
-                        issue,
-                        Comment.valueOf(commentText));
-            } else if (!existingComment.getBody().equals(commentText)) {
-                jiraClient.updateComment(
-                        issue,
-                        new Comment(
-                                existingComment.getSelf(),
-                                commentText,
-                                null,
-                                null,
-                                null,
-                                null,
-                                null,
-                                null));
-            } else {
-                log.debug("No change needed to comment on {}", issue.getKey());
-            }
+    /**
+     * Deletes the journal, once every comment has been updated.
+     */
+    public void finishReconciliation() throws IOException {
+        journal.finish();
+    }
+
+    /**
+     * For any cards with a previous TODOs comment that no longer have any TODOs,
+     * delete the comment.
+     *
+     * @param issuesWithTodos the cards which do have TODOs
+     * @param unfetchedIssueKeys the keys of other cards which have TODOs, but which
+     *                           weren't fetched
+     */
+    public void removeStaleComments(Set<Issue> issuesWithTodos, Set<String> unfetchedIssueKeys) throws Exception {
+        Set<String> issueKeysWithTodos = issuesWithTodos.stream()
+                .filter(Objects::nonNull)
+                .map(Issue::getKey)
+                .collect(Collectors.toSet());
+        if (!fullVerification) {
+            removeStaleCommentsInSnapshot(issueKeysWithTodos, unfetchedIssueKeys);
+            return;
         }
 
-        // 2. For any cards with a previous TODOs comment that no longer has
-        // any todos, delete it:
-        Set<Issue> issuesWithTodoComments =
-                jiraClient.searchIssuesWithComments(commentSearchJql);
+        if (commentPropertyKey != null) {
+            removeStaleCommentsByProperty(issueKeysWithTodos, unfetchedIssueKeys);
+            return;
+        }
 
+        Set<Issue> issuesWithTodoComments;
+        try {
+            issuesWithTodoComments = jiraClient.searchIssuesWithComments(commentSearchJql);
+        } catch (JiraCallBudgetExceededException e) {
+            log.warn("Not removing comments from cards which no longer have TODOs: {}", e.getMessage());
+            return;
+        }
+
+        List<Callable<Void>> deletions = new ArrayList<>();
         for (Issue issue : issuesWithTodoComments) {
 
             // (Issue.equals works correctly here, see BasicIssue#equals)
-            if (!todosByIssue.containsKey(issue)) {
+            // Cards which we didn't look up may still have TODOs, so their comment must stay.
+            if (!issuesWithTodos.contains(issue)
+                    && !unfetchedIssueKeys.contains(issue.getKey())
+                    && !jiraClient.getCallBudget().wasLookupSkipped(issue.getKey())) {
 
                 Comment todoComment = findTodoComment(issue);
                 if (todoComment != null) {
-                    jiraClient.deleteComment(issue, todoComment);
+                    deletions.add(() -> {
+                        deleteComment(issue, todoComment);
+                        return null;
+                    });
                 }
             }
         }
+        taskExecutors.runAll("jira", jiraParallelism, deletions);
+        markVerified(
+                issuesWithTodoComments.stream().map(Issue::getKey).collect(Collectors.toSet()),
+                issueKeysWithTodos);
+    }
+
+    /**
+     * As for the full search in {@link #removeStaleComments}, but searching for the
+     * comments' entity properties.
+     */
+    private void removeStaleCommentsByProperty(
+            Set<String> issueKeysWithTodos,
+            Set<String> unfetchedIssueKeys) throws Exception {
+        Map<String, JsonElement> propertiesByIssueKey;
+        try {
+            propertiesByIssueKey = jiraClient.searchIssueProperties(commentSearchJql, commentPropertyKey);
+        } catch (JiraCallBudgetExceededException e) {
+            log.warn("Not removing comments from cards which no longer have TODOs: {}", e.getMessage());
+            return;
+        }
+
+        List<Callable<Void>> deletions = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : propertiesByIssueKey.entrySet()) {
+            String issueKey = entry.getKey();
+            if (!issueKeysWithTodos.contains(issueKey)
+                    && !unfetchedIssueKeys.contains(issueKey)
+                    && !jiraClient.getCallBudget().wasLookupSkipped(issueKey)) {
+                CommentProperty property = new Gson().fromJson(entry.getValue(), CommentProperty.class);
+                if (property != null && property.commentId != null) {
+                    deletions.add(() -> {
+                        if (jiraClient.deleteComment(issueKey, property.commentId)) {
+                            commentDeleted(issueKey);
+                        }
+                        return null;
+                    });
+                } else {
+                    // The comment was added without finding out its id
+                    deletions.add(() -> {
+                        Issue issue = jiraClient.getIssue(issueKey);
+                        Comment todoComment = findTodoComment(issue);
+                        if (todoComment == null) {
+                            jiraClient.deleteIssueProperty(issueKey, commentPropertyKey);
+                            snapshot.removeComment(issueKey);
+                        } else {
+                            deleteComment(issue, todoComment);
+                        }
+                        return null;
+                    });
+                }
+            }
+        }
+        taskExecutors.runAll("jira", jiraParallelism, deletions);
+        markVerified(propertiesByIssueKey.keySet(), issueKeysWithTodos);
+    }
+
+    /**
+     * Brings the snapshot into line with a full search of the cards with comments.
+     */
+    private void markVerified(Set<String> issueKeysWithTodoComments, Set<String> issueKeysWithTodos) {
+        if (restrictToSingleCardId != null) {
+            // Only the one card was searched for
+            return;
+        }
+
+        // Any other cards in the snapshot no longer have a comment. (The comments on
+        // cards with TODOs are recorded by updateJiraComment, which may still be running.)
+        for (String issueKey : snapshot.getIssueKeys()) {
+            if (!issueKeysWithTodoComments.contains(issueKey) && !issueKeysWithTodos.contains(issueKey)) {
+                snapshot.removeComment(issueKey);
+            }
+        }
+        snapshot.markVerified();
+    }
+
+    /**
+     * Deletes the comments on the cards which had TODOs at the end of the last run,
+     * but have none now, without searching JIRA.
+     */
+    private void removeStaleCommentsInSnapshot(
+            Set<String> issueKeysWithTodos,
+            Set<String> unfetchedIssueKeys) throws Exception {
+        List<Callable<Void>> deletions = new ArrayList<>();
+        for (String issueKey : snapshot.getIssueKeys()) {
+            if (!issueKeysWithTodos.contains(issueKey)
+                    && !unfetchedIssueKeys.contains(issueKey)
+                    && !jiraClient.getCallBudget().wasLookupSkipped(issueKey)
+                    && (restrictToSingleCardId == null || restrictToSingleCardId.equals(issueKey))) {
+                if (journal.isCommentDeleted(issueKey)) {
+                    snapshot.removeComment(issueKey);
+                    continue;
+                }
+                deletions.add(() -> {
+                    Issue issue;
+                    try {
+                        issue = jiraClient.getIssue(issueKey);
+                    } catch (JiraCallBudgetExceededException e) {
+                        log.warn("Not removing the comment from {}, which no longer has TODOs: {}",
+                                issueKey, e.getMessage());
+                        return null;
+                    } catch (IOException e) {
+                        // e.g. the card has been deleted. The next full verification will
+                        // find any comment which remains.
+                        log.warn("Not removing the comment from " + issueKey + ", as it could not be fetched", e);
+                        return null;
+                    }
+                    Comment todoComment = findTodoComment(issue);
+                    if (todoComment == null) {
+                        commentDeleted(issueKey);
+                    } else {
+                        deleteComment(issue, todoComment);
+                    }
+                    return null;
+                });
+            }
+        }
+        taskExecutors.runAll("jira", jiraParallelism, deletions);
+    }
+
+    private void deleteComment(Issue issue, Comment todoComment) throws Exception {
+        if (jiraClient.deleteComment(issue, todoComment)) {
+            commentDeleted(issue.getKey());
+        }
+    }
+
+    private void commentDeleted(String issueKey) throws Exception {
+        if (commentPropertyKey != null) {
+            jiraClient.deleteIssueProperty(issueKey, commentPropertyKey);
+        }
+        snapshot.removeComment(issueKey);
+        journal.commentDeleted(issueKey);
+    }
+
+    /**
+     * Create or update the comment listing the TODOs on a card which hasn't been
+     * fetched, e.g. as it was in a cache. The card is only fetched if the snapshot
+     * shows that its comment needs to change.
+     * <p>
+     * Without a snapshot, the comment is left as it is until the card is next fetched.
+     */
+    public void updateJiraComment(String issueKey, Collection<CodeTodo> codeTodos) throws Exception {
+        if (!snapshotEnabled) {
+            log.debug("Not updating the comment on {}, as it wasn't fetched", issueKey);
+            return;
+        }
+        String commentText = createCommentText(codeTodos);
+        if (!fullVerification && snapshot.hasComment(issueKey, commentText)) {
+            log.debug("No change to comment on {} since the last run", issueKey);
+            return;
+        }
+        if (journal.isCommentWritten(issueKey, CommentSnapshot.fingerprint(commentText))) {
+            log.debug("Comment on {} was updated by the interrupted run", issueKey);
+            snapshot.putComment(issueKey, commentText);
+            return;
+        }
+        Issue issue;
+        try {
+            issue = jiraClient.getIssue(issueKey);
+        } catch (JiraCallBudgetExceededException e) {
+            log.warn("Not updating the comment on {}: {}", issueKey, e.getMessage());
+            return;
+        }
+        updateJiraComment(issue, codeTodos);
+    }
+
+    /**
+     * Create or update the comment listing the TODOs on the given card.
+     */
+    public void updateJiraComment(Issue issue, Collection<CodeTodo> codeTodos) throws Exception {
+        String commentText = createCommentText(codeTodos);
+        boolean inSnapshot = snapshot.hasComment(issue.getKey(), commentText);
+        if (!fullVerification && inSnapshot) {
+            log.debug("No change to comment on {} since the last run", issue.getKey());
+            return;
+        }
+        if (journal.isCommentWritten(issue.getKey(), CommentSnapshot.fingerprint(commentText))) {
+            log.debug("Comment on {} was updated by the interrupted run", issue.getKey());
+            snapshot.putComment(issue.getKey(), commentText);
+            return;
+        }
+        Comment existingComment = findTodoComment(issue);
+
+        boolean written = false;
+        boolean unchanged = false;
+        if (existingComment == null) {
+            written = jiraClient.addComment(
+                    issue,
+                    Comment.valueOf(commentText));
+        } else if (!existingComment.getBody().equals(commentText)) {
+            written = jiraClient.updateComment(
+                    issue,
+                    new Comment(
+                            existingComment.getSelf(),
+                            commentText,
+                            null,
+                            null,
+                            null,
+                            null,
+                            null,
+                            null));
+        } else {
+            log.debug("No change needed to comment on {}", issue.getKey());
+            unchanged = true;
+        }
+        if (written || unchanged) {
+            // (A comment which hasn't changed since the last run already has its property)
+            if (commentPropertyKey != null && (written || !inSnapshot)) {
+                CommentProperty property = new CommentProperty();
+                property.commentId = existingComment == null ? null : existingComment.getId();
+                property.fingerprint = CommentSnapshot.fingerprint(commentText);
+                jiraClient.setIssueProperty(issue.getKey(), commentPropertyKey, property);
+            }
+            snapshot.putComment(issue.getKey(), commentText);
+            journal.commentWritten(issue.getKey(), CommentSnapshot.fingerprint(commentText));
+        }
     }
 
     private String createCommentText(Collection<CodeTodo> value) {
@@ -160,9 +460,30 @@ public class JiraCommenter {
                 .orNull();
     }
 
+    /**
+     * The value of the entity property describing our comment on a card
+     */
+    private static class CommentProperty {
+        // Null if the comment was added without finding out its id
+        private Long commentId;
+        private String fingerprint;
+    }
+
     public interface Config {
         List<JiraProject> getJiraProjects();
 
         String getJobName();
+
+        String getRestrictToSingleCardId();
+
+        /**
+         * Whether to describe each comment in an entity property on its card
+         */
+        boolean getUseIssueProperties();
+
+        /**
+         * The number of comments to write at once
+         */
+        int getJiraParallelism();
     }
 }
@@ -0,0 +1,120 @@
+package com.softwire.todos.jira;
+
+import com.atlassian.event.api.EventPublisher;
+import com.atlassian.httpclient.api.HttpClient;
+import com.atlassian.httpclient.api.factory.HttpClientOptions;
+import com.atlassian.httpclient.apache.httpcomponents.DefaultHttpClientFactory;
+import com.atlassian.jira.rest.client.api.JiraRestClient;
+import com.atlassian.jira.rest.client.auth.BasicHttpAuthenticationHandler;
+import com.atlassian.jira.rest.client.internal.async.AsynchronousJiraRestClient;
+import com.atlassian.jira.rest.client.internal.async.AtlassianHttpClientDecorator;
+import com.atlassian.sal.api.ApplicationProperties;
+import com.atlassian.sal.api.executor.ThreadLocalContextManager;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the {@link JiraRestClient}, on a connection pool sized and timed by the
+ * {@link JiraClient.Config}.
+ * <p>
+ * This does what `AsynchronousJiraRestClientFactory.createWithBasicHttpAuthentication`
+ * does, except that the library always uses the default {@link HttpClientOptions}, i.e.
+ * at most 20 connections, which many `--jira-parallelism` threads soon queue behind.
+ */
+class JiraHttpTransport {
+
+    private JiraHttpTransport() {
+    }
+
+    static JiraRestClient createRestClient(URI serverUri, JiraClient.Config config) {
+        HttpClientOptions options = new HttpClientOptions();
+        // Every request goes to the one JIRA server, so its route may use the whole pool
+        options.setMaxTotalConnections(config.getJiraMaxConnections());
+        options.setMaxConnectionsPerHost(config.getJiraMaxConnections());
+        // (This caps each connection's lifetime; it doesn't close connections for being idle)
+        options.setConnectionPoolTimeToLive(config.getJiraConnectionTtlSeconds(), TimeUnit.SECONDS);
+        options.setConnectionTimeout(config.getJiraConnectTimeoutSeconds(), TimeUnit.SECONDS);
+        options.setSocketTimeout(config.getJiraReadTimeoutSeconds(), TimeUnit.SECONDS);
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        DefaultHttpClientFactory factory = new DefaultHttpClientFactory(
+                new EventPublisher() {
+                    @Override
+                    public void publish(Object event) {
+                    }
+
+                    @Override
+                    public void register(Object listener) {
+                    }
+
+                    @Override
+                    public void unregister(Object listener) {
+                    }
+
+                    @Override
+                    public void unregisterAll() {
+                    }
+                },
+                applicationProperties(serverUri),
+                new ThreadLocalContextManager<Object>() {
+                    @Override
+                    public Object getThreadLocalContext() {
+                        return null;
+                    }
+
+                    @Override
+                    public void setThreadLocalContext(Object context) {
+                    }
+
+                    @Override
+                    public void clearThreadLocalContext() {
+                    }
+                });
+        HttpClient httpClient = factory.create(options);
+
+        return new AsynchronousJiraRestClient(serverUri, new AtlassianHttpClientDecorator(
+                httpClient,
+                new BasicHttpAuthenticationHandler(config.getJiraUsername(), config.getJiraPassword())) {
+            @Override
+            public void destroy() throws Exception {
+                factory.dispose(httpClient);
+            }
+        });
+    }
+
+    /**
+     * The HTTP client only asks its host application for its name and version, for the
+     * User-Agent, and for its base URL. The interface has gained methods between
+     * versions of the library, so it's answered by a proxy rather than implemented.
+     */
+    private static ApplicationProperties applicationProperties(URI serverUri) {
+        return (ApplicationProperties) Proxy.newProxyInstance(
+                JiraHttpTransport.class.getClassLoader(),
+                new Class<?>[]{ApplicationProperties.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    if (method.getReturnType() != String.class) {
+                        return null;
+                    }
+                    switch (method.getName()) {
+                        case "getBaseUrl":
+                            return serverUri.toString();
+                        case "getDisplayName":
+                            return "todo-checker";
+                        case "toString":
+                            return "ApplicationProperties(" + serverUri + ")";
+                        default:
+                            return "1";
+                    }
+                });
+    }
+}
@@ -1,6 +1,9 @@
 package com.softwire.todos.jira;
 
-import java.util.regex.Pattern;
+import com.google.re2j.Pattern;
+import com.softwire.todos.regex.UserRegex;
+
+import java.time.Duration;
 
 public class JiraProject {
     private final String key;
@@ -11,6 +14,25 @@ public class JiraProject {
         this.regex = regex;
     }
 
+    /**
+     * Parses a project as passed to `--jira-project-key`: either just the key, or
+     * "KEY=REGEX" where the regex matches the key as written in TODOs.
+     *
+     * @throws IllegalArgumentException if the regex can't be used
+     */
+    public static JiraProject parse(String value) {
+        JiraProject project;
+        if (value.contains("=")) {
+            String[] splitParam = value.split("=", 2);
+            project = new JiraProject(splitParam[0], splitParam[1]);
+        } else {
+            project = new JiraProject(value, value);
+        }
+        // Check the regex now, rather than once the scan is done
+        project.getIssueIdRegex(Duration.ZERO);
+        return project;
+    }
+
     public String getKey() {
         return key;
     }
@@ -19,9 +41,17 @@ public class JiraProject {
         return regex;
     }
 
-    public Pattern getIssueIdPattern() {
-        return Pattern.compile(
-            "\\b(" + getRegex() + ")[-_:](?<id>[0-9]+)",
-            Pattern.CASE_INSENSITIVE);
+    /**
+     * Matches a card key in this project, as written in a TODO, with the card's number
+     * in the "id" group.
+     *
+     * @param timeout how long to spend on each line before giving up on it
+     */
+    public UserRegex getIssueIdRegex(Duration timeout) {
+        return UserRegex.compile(
+            "regex for JIRA project " + key,
+            "\\b(" + getRegex() + ")[-_:](?P<id>[0-9]+)",
+            Pattern.CASE_INSENSITIVE,
+            timeout);
     }
 }
@@ -38,11 +38,10 @@ public class JiraProjectOptionHandler extends org.kohsuke.args4j.spi.OptionHandl
             throw new CmdLineException(owner, Messages.MAP_HAS_NO_KEY);
         }
 
-        if (rawParameter.contains("=")) {
-            String[] splitParam = rawParameter.split("=", 2);
-            parsedParams.add(new JiraProject(splitParam[0], splitParam[1]));
-        } else {
-            parsedParams.add(new JiraProject(rawParameter, rawParameter));
+        try {
+            parsedParams.add(JiraProject.parse(rawParameter));
+        } catch (IllegalArgumentException e) {
+            throw new CmdLineException(owner, e.getMessage(), e);
         }
 
         return 1;
@@ -0,0 +1,256 @@
+package com.softwire.todos.jira;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A journal of the comments which the {@link JiraCommenter} has written and deleted
+ * so far in this run, so that if the run dies part way through, e.g. as JIRA went
+ * down or the build agent was recycled, the next run can carry on from where it got
+ * to rather than starting again.
+ * <p>
+ * Each `--job-name` has its own journal file in the journal's directory, which is
+ * appended to as each card is done, and deleted once every card is done. A journal is
+ * only resumed by a run which is reconciling the same TODOs, with the same links, and
+ * the same settings. Any other run starts a new journal.
+ * <p>
+ * Each line is flushed as it is written, so the journal survives the process being
+ * killed, though not necessarily the machine crashing. This is safe to use from
+ * multiple threads, but not by two runs of the same job at once.
+ */
+public class ReconciliationJournal {
+    private static final int FORMAT_VERSION = 1;
+    private static final Logger log = LoggerFactory.getLogger(ReconciliationJournal.class);
+
+    // Null if the journal is disabled
+    private final Path dir;
+
+    ReconciliationJournal(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * A journal which records nothing, so an interrupted run is started again.
+     */
+    public static ReconciliationJournal disabled() {
+        return new ReconciliationJournal(null);
+    }
+
+    public static ReconciliationJournal open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        return new ReconciliationJournal(dir);
+    }
+
+    /**
+     * The journal of the job with the given `--job-name`, which may be null.
+     */
+    public Job forJob(String jobName) {
+        return new Job(dir == null
+                ? null
+                : dir.resolve(jobName == null
+                        ? "reconcile.jsonl"
+                        : "reconcile-" + jobName.replaceAll("[^A-Za-z0-9_-]", "_") + ".jsonl"));
+    }
+
+    /**
+     * The journal of one job.
+     */
+    public static class Job {
+        // Null if the journal is disabled
+        private final Path path;
+        private final Map<String, String> writtenFingerprintsByIssueKey = new ConcurrentHashMap<>();
+        private final Set<String> deletedIssueKeys = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger skipped = new AtomicInteger();
+        // Open between begin and finish (guarded by this)
+        private BufferedWriter writer;
+
+        Job(Path path) {
+            this.path = path;
+        }
+
+        boolean isEnabled() {
+            return path != null;
+        }
+
+        /**
+         * Starts journalling a run. If the journal was left by an interrupted run with
+         * the same key, its cards are taken as done; otherwise it is discarded.
+         *
+         * @param runKey identifies the TODOs being reconciled and the settings used
+         */
+        public synchronized void begin(String runKey) throws IOException {
+            if (path == null) {
+                return;
+            }
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            writtenFingerprintsByIssueKey.clear();
+            deletedIssueKeys.clear();
+            skipped.set(0);
+
+            List<Entry> entries = read(runKey);
+            for (Entry entry : entries) {
+                if (entry.deleted) {
+                    writtenFingerprintsByIssueKey.remove(entry.issueKey);
+                    deletedIssueKeys.add(entry.issueKey);
+                } else {
+                    deletedIssueKeys.remove(entry.issueKey);
+                    writtenFingerprintsByIssueKey.put(entry.issueKey, entry.fingerprint);
+                }
+            }
+            if (!entries.isEmpty()) {
+                log.info("Resuming the JIRA comment updates of an interrupted run, from {}: {} cards are done",
+                        path, writtenFingerprintsByIssueKey.size() + deletedIssueKeys.size());
+            }
+
+            // Rewritten from what was read, in case the last line was only partly written
+            Header header = new Header();
+            header.runKey = runKey;
+            Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                try (BufferedWriter tempWriter = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                    writeLine(tempWriter, header);
+                    for (Entry entry : entries) {
+                        writeLine(tempWriter, entry);
+                    }
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+
+        /**
+         * @return the entries of the journal, if it is of a run with the given key
+         */
+        private List<Entry> read(String runKey) throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            if (!Files.exists(path)) {
+                return entries;
+            }
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            try {
+                Header header = lines.isEmpty() ? null : new Gson().fromJson(lines.get(0), Header.class);
+                if (header == null || header.formatVersion != FORMAT_VERSION || !runKey.equals(header.runKey)) {
+                    log.info("Discarding the journal in {}, which is of a run with other TODOs or settings", path);
+                    return entries;
+                }
+            } catch (JsonParseException e) {
+                log.warn("Discarding the journal in " + path + ", which is corrupt", e);
+                return entries;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                try {
+                    Entry entry = new Gson().fromJson(line, Entry.class);
+                    if (entry != null && entry.issueKey != null) {
+                        entries.add(entry);
+                    }
+                } catch (JsonParseException e) {
+                    // Only the last line can be partly written, if the run was killed
+                    break;
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * Whether the card's comment was given this text earlier in the run, or in
+         * the interrupted run this one resumes.
+         */
+        boolean isCommentWritten(String issueKey, String fingerprint) {
+            if (fingerprint.equals(writtenFingerprintsByIssueKey.get(issueKey))) {
+                skipped.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Whether the card's comment was deleted earlier in the run, or in the
+         * interrupted run this one resumes.
+         */
+        boolean isCommentDeleted(String issueKey) {
+            if (deletedIssueKeys.contains(issueKey)) {
+                skipped.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void commentWritten(String issueKey, String fingerprint) throws IOException {
+            writtenFingerprintsByIssueKey.put(issueKey, fingerprint);
+            deletedIssueKeys.remove(issueKey);
+            Entry entry = new Entry();
+            entry.issueKey = issueKey;
+            entry.fingerprint = fingerprint;
+            append(entry);
+        }
+
+        synchronized void commentDeleted(String issueKey) throws IOException {
+            writtenFingerprintsByIssueKey.remove(issueKey);
+            deletedIssueKeys.add(issueKey);
+            Entry entry = new Entry();
+            entry.issueKey = issueKey;
+            entry.deleted = true;
+            append(entry);
+        }
+
+        private void append(Entry entry) throws IOException {
+            if (writer != null) {
+                writeLine(writer, entry);
+                writer.flush();
+            }
+        }
+
+        /**
+         * Deletes the journal, now that every card is done.
+         */
+        public synchronized void finish() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            writer.close();
+            writer = null;
+            Files.deleteIfExists(path);
+            if (skipped.get() > 0) {
+                log.info("Skipped {} JIRA comment updates done by an interrupted run", skipped.get());
+            }
+        }
+
+        private static void writeLine(BufferedWriter writer, Object value) throws IOException {
+            writer.write(new Gson().toJson(value));
+            writer.write('\n');
+        }
+    }
+
+    private static class Header {
+        private int formatVersion = FORMAT_VERSION;
+        private String runKey;
+    }
+
+    private static class Entry {
+        private String issueKey;
+        // Of the comment written, or null if it was deleted
+        private String fingerprint;
+        private boolean deleted;
+    }
+}
@@ -0,0 +1,164 @@
+package com.softwire.todos.jira;
+
+import com.atlassian.jira.rest.client.api.domain.Issue;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers which cards were resolved when they were last fetched, so that TODOs
+ * against cards which have been closed for a long time don't need the card to be
+ * fetched again on every run.
+ * <p>
+ * A card is only trusted for {@code reverifyInterval} after it was last fetched, and
+ * is only remembered once it has been left alone for that long, since a card which
+ * was resolved recently is the most likely to be reopened.
+ * <p>
+ * The cache is saved as JSON between runs. This is safe to use from multiple threads.
+ */
+public class ResolvedIssueCache {
+    private static final int FORMAT_VERSION = 1;
+    private static final Logger log = LoggerFactory.getLogger(ResolvedIssueCache.class);
+
+    private final Duration reverifyInterval;
+    private final Clock clock;
+    // By the key used in the TODO
+    private final ConcurrentMap<String, IssueSummary> issuesByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+
+    ResolvedIssueCache(Duration reverifyInterval, Clock clock) {
+        this.reverifyInterval = reverifyInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * A cache which never remembers anything, so every card is fetched.
+     */
+    public static ResolvedIssueCache disabled() {
+        return new ResolvedIssueCache(Duration.ZERO, Clock.systemUTC());
+    }
+
+    /**
+     * Reads the cache saved by a previous run, or returns an empty cache if there is
+     * none, or it can't be read.
+     */
+    public static ResolvedIssueCache read(Path path, Duration reverifyInterval) {
+        return read(path, reverifyInterval, Clock.systemUTC());
+    }
+
+    static ResolvedIssueCache read(Path path, Duration reverifyInterval, Clock clock) {
+        ResolvedIssueCache cache = new ResolvedIssueCache(reverifyInterval, clock);
+        if (!Files.exists(path)) {
+            return cache;
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            CacheFile file = new Gson().fromJson(reader, CacheFile.class);
+            if (file == null || file.formatVersion != FORMAT_VERSION) {
+                log.warn("Ignoring the resolved card cache {}, as it was saved by another version", path);
+            } else {
+                cache.issuesByKey.putAll(file.issues);
+            }
+        } catch (IOException | JsonParseException e) {
+            // It's only a cache, so every card will be fetched
+            log.warn("Ignoring the resolved card cache " + path + ", as it could not be read", e);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the card with the given key, if it was resolved when it was last fetched
+     * and that was recent enough to trust, or null if it must be fetched
+     */
+    public IssueSummary lookup(String key) {
+        IssueSummary issue = issuesByKey.get(key);
+        if (issue == null || isDue(issue.getVerifiedAt())) {
+            return null;
+        }
+        hits.incrementAndGet();
+        return issue;
+    }
+
+    /**
+     * Records the state of a card which has just been fetched.
+     *
+     * @param key the key used in the TODO
+     */
+    public void record(String key, Issue issue) {
+        record(
+                key,
+                issue.getKey(),
+                issue.getResolution() == null ? null : issue.getResolution().getName(),
+                issue.getStatus().getName(),
+                issue.getUpdateDate() == null ? null : issue.getUpdateDate().getMillis());
+    }
+
+    /**
+     * @param resolutionName the card's resolution, or null if it is unresolved
+     * @param updatedAt when the card was last changed, in milliseconds since the epoch,
+     *                  or null if that isn't known
+     */
+    void record(String key, String issueKey, String resolutionName, String statusName, Long updatedAt) {
+        if (reverifyInterval.isZero()) {
+            return;
+        }
+        if (resolutionName == null || (updatedAt != null && !isDue(updatedAt))) {
+            // Open, or only changed recently
+            issuesByKey.remove(key);
+            return;
+        }
+        issuesByKey.put(key, new IssueSummary(issueKey, resolutionName, statusName, clock.millis()));
+    }
+
+    /**
+     * The number of lookups which were answered from the cache, so the card wasn't fetched
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    public void writeTo(Path path) throws IOException {
+        CacheFile file = new CacheFile();
+        file.issues.putAll(issuesByKey);
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new Gson().toJson(file, writer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.info("Saved {} resolved cards to {}", file.issues.size(), path);
+    }
+
+    /**
+     * Whether something which happened at the given time is longer ago than the
+     * re-verification interval.
+     */
+    private boolean isDue(long millis) {
+        return clock.millis() - millis >= reverifyInterval.toMillis();
+    }
+
+    private static class CacheFile {
+        private int formatVersion = FORMAT_VERSION;
+        private Map<String, IssueSummary> issues = new HashMap<>();
+    }
+}
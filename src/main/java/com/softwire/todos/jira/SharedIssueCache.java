@@ -0,0 +1,390 @@
+package com.softwire.todos.jira;
+
+import com.atlassian.jira.rest.client.api.domain.Issue;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares the cards fetched by each run with other runs on the same machine, e.g.
+ * several jobs checking different repositories against the same JIRA project at
+ * the same time, so that each card is fetched once rather than once per job.
+ * <p>
+ * The cache is a log file, which each process appends to and reads from while
+ * holding an exclusive lock on a separate lock file. Each process keeps its own
+ * copy of the log's contents, and only reads what has been appended since it last
+ * looked.
+ * <p>
+ * Before a process fetches a card, it appends a claim to the log, so that any other
+ * process which wants the same card waits for the result rather than fetching it
+ * too. A claim which hasn't been answered within {@code maxAge} is ignored, in case
+ * the process which made it has died.
+ * <p>
+ * Cards are only shared for {@code maxAge} after they were fetched. This is safe to
+ * use from multiple threads.
+ */
+public class SharedIssueCache {
+    private static final int FORMAT_VERSION = 1;
+    // Once the log has this many records, it is rewritten with just the current cards
+    private static final int MAX_RECORDS = 10000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    // How long to wait for a card which another process is fetching, before fetching
+    // it too. (Longer than a JIRA call should take, including its retries)
+    private static final Duration MAX_WAIT = Duration.ofSeconds(30);
+    private static final int MAX_HEADER_LENGTH = 1024;
+    // Returned while another process is fetching a card
+    private static final IssueSummary CLAIMED_ELSEWHERE = new IssueSummary(null, null, null, 0);
+    private static final Logger log = LoggerFactory.getLogger(SharedIssueCache.class);
+
+    // Null if the cache is disabled
+    private final Path path;
+    private final Path lockPath;
+    private final Duration maxAge;
+    private final Duration maxWait;
+    private final Clock clock;
+    // Identifies this process's claims
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    private final AtomicInteger hits = new AtomicInteger();
+
+    // This process's copy of the log, up to `offset` bytes into the log with the given
+    // generation. (Guarded by the class, see withLog)
+    private String generation;
+    private long offset;
+    private int records;
+    private final Map<String, IssueSummary> issuesByKey = new HashMap<>();
+    private final Map<String, Claim> claimsByKey = new HashMap<>();
+
+    SharedIssueCache(Path path, Duration maxAge, Duration maxWait, Clock clock) {
+        this.path = path;
+        this.lockPath = path == null ? null : Paths.get(path + ".lock");
+        this.maxAge = maxAge;
+        this.maxWait = maxWait;
+        this.clock = clock;
+    }
+
+    /**
+     * A cache which shares nothing, so every card is fetched.
+     */
+    public static SharedIssueCache disabled() {
+        return new SharedIssueCache(null, Duration.ZERO, Duration.ZERO, Clock.systemUTC());
+    }
+
+    public static SharedIssueCache open(Path path, Duration maxAge) {
+        return new SharedIssueCache(path, maxAge, MAX_WAIT, Clock.systemUTC());
+    }
+
+    /**
+     * Looks for the card in the cache. If it isn't there, claims it, so that other
+     * processes will wait for this one to {@link #record} it (or {@link #release} the
+     * claim), rather than fetching it too.
+     * <p>
+     * If another process has claimed the card, this waits for it to be fetched, by
+     * re-reading the log every 100ms. Each look takes the lock,
+     * so it holds up other threads and processes using the cache for a moment, and the
+     * calling thread is tied up throughout. So this only waits for so long (30s) before
+     * giving up and returning null, for the card to be fetched here too.
+     *
+     * @param key the key used in the TODO
+     * @return the card, or null if it must be fetched
+     */
+    public IssueSummary lookupOrClaim(String key) throws IOException, InterruptedException {
+        if (path == null) {
+            return null;
+        }
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        while (true) {
+            IssueSummary issue = withLog(channel -> {
+                IssueSummary cached = issuesByKey.get(key);
+                Claim claim = claimsByKey.get(key);
+                if (cached != null && !isExpired(cached.getVerifiedAt())) {
+                    return cached;
+                } else if (claim != null && !claim.owner.equals(owner) && !isExpired(claim.claimedAt)) {
+                    return CLAIMED_ELSEWHERE;
+                }
+                Record record = new Record(key);
+                record.claim = new Claim(owner, clock.millis());
+                append(channel, record);
+                return null;
+            });
+
+            if (issue != CLAIMED_ELSEWHERE) {
+                if (issue != null) {
+                    hits.incrementAndGet();
+                }
+                return issue;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                log.warn("Gave up waiting for another process to fetch {}, so fetching it here", key);
+                return null;
+            }
+            log.debug("Waiting for another process to fetch {}", key);
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * Shares a card which has just been fetched, answering this process's claim on it.
+     *
+     * @param key the key used in the TODO
+     */
+    public void record(String key, Issue issue) throws IOException {
+        record(
+                key,
+                issue.getKey(),
+                issue.getResolution() == null ? null : issue.getResolution().getName(),
+                issue.getStatus().getName());
+    }
+
+    void record(String key, String issueKey, String resolutionName, String statusName) throws IOException {
+        if (path == null) {
+            return;
+        }
+        Record record = new Record(key);
+        record.issue = new IssueSummary(issueKey, resolutionName, statusName, clock.millis());
+        appendLocked(record);
+    }
+
+    /**
+     * Gives up this process's claim on a card which could not be fetched, so that
+     * other processes don't wait for it.
+     */
+    public void release(String key) throws IOException {
+        if (path == null) {
+            return;
+        }
+        Record record = new Record(key);
+        record.release = owner;
+        appendLocked(record);
+    }
+
+    /**
+     * The number of lookups which were answered by another process's fetch
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    private void appendLocked(Record record) throws IOException {
+        withLog(channel -> {
+            append(channel, record);
+            if (records >= MAX_RECORDS) {
+                compact();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action with this process's copy of the log brought up to date, while
+     * holding the lock.
+     */
+    private <T> T withLog(LogAction<T> action) throws IOException {
+        // File locks are held by the whole JVM, and taking one which overlaps another
+        // throws, so threads must also take turns, whichever cache they are using
+        synchronized (SharedIssueCache.class) {
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try (FileChannel channel = openLog()) {
+                    catchUp(channel);
+                    return action.run(channel);
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Brings this process's copy of the log up to date. (Called with the lock held.)
+     */
+    private void catchUp(FileChannel channel) throws IOException {
+        if (channel.size() == 0) {
+            reset(null);
+            Header header = new Header();
+            header.generation = UUID.randomUUID().toString();
+            writeLine(channel, new Gson().toJson(header));
+            generation = header.generation;
+            offset = channel.size();
+            return;
+        }
+
+        long size = channel.size();
+        String headerLine = readHeaderLine(channel);
+        Header header;
+        try {
+            header = new Gson().fromJson(headerLine, Header.class);
+        } catch (JsonParseException e) {
+            header = null;
+        }
+        if (header == null || header.formatVersion != FORMAT_VERSION || header.generation == null) {
+            log.warn("Replacing the shared card cache {}, as it was written by another version", path);
+            channel.truncate(0);
+            catchUp(channel);
+            return;
+        }
+
+        if (!header.generation.equals(generation) || size < offset) {
+            // The log has been rewritten since this process last read it
+            reset(header.generation);
+            offset = headerLine.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+        byte[] bytes = read(channel, offset, size - offset);
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                try {
+                    apply(new Gson().fromJson(line, Record.class));
+                } catch (JsonParseException e) {
+                    log.warn("Ignoring a corrupt line in the shared card cache {}: {}", path, line);
+                }
+                lineStart = i + 1;
+            }
+        }
+        // (Any incomplete last line will be read once it has been finished)
+        offset += lineStart;
+    }
+
+    private void reset(String generation) {
+        this.generation = generation;
+        offset = 0;
+        records = 0;
+        issuesByKey.clear();
+        claimsByKey.clear();
+    }
+
+    private void append(FileChannel channel, Record record) throws IOException {
+        writeLine(channel, new Gson().toJson(record));
+        offset = channel.size();
+        apply(record);
+    }
+
+    private void apply(Record record) {
+        records++;
+        if (record.issue != null) {
+            issuesByKey.put(record.key, record.issue);
+            claimsByKey.remove(record.key);
+        } else if (record.claim != null) {
+            claimsByKey.put(record.key, record.claim);
+        } else if (record.release != null) {
+            Claim claim = claimsByKey.get(record.key);
+            if (claim != null && claim.owner.equals(record.release)) {
+                claimsByKey.remove(record.key);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with just the cards which are still current, so that it
+     * doesn't grow forever. (Called with the lock held.)
+     */
+    private void compact() throws IOException {
+        Header header = new Header();
+        header.generation = UUID.randomUUID().toString();
+        StringBuilder text = new StringBuilder(new Gson().toJson(header)).append('\n');
+        for (Map.Entry<String, IssueSummary> entry : issuesByKey.entrySet()) {
+            if (!isExpired(entry.getValue().getVerifiedAt())) {
+                Record record = new Record(entry.getKey());
+                record.issue = entry.getValue();
+                text.append(new Gson().toJson(record)).append('\n');
+            }
+        }
+
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        // Read the new log from the start on the next call
+        reset(null);
+    }
+
+    private boolean isExpired(long millis) {
+        return clock.millis() - millis >= maxAge.toMillis();
+    }
+
+    private static String readHeaderLine(FileChannel channel) throws IOException {
+        byte[] start = read(channel, 0, Math.min(channel.size(), MAX_HEADER_LENGTH));
+        int end = 0;
+        while (end < start.length && start[end] != '\n') {
+            end++;
+        }
+        return new String(start, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] read(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+            // Keep reading
+        }
+        return buffer.array();
+    }
+
+    private static void writeLine(FileChannel channel, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private interface LogAction<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    private static class Header {
+        private int formatVersion = FORMAT_VERSION;
+        private String generation;
+    }
+
+    /**
+     * One line of the log, which has exactly one of `issue`, `claim` or `release`
+     */
+    private static class Record {
+        // The key used in the TODO
+        private final String key;
+        private IssueSummary issue;
+        private Claim claim;
+        // The owner of the claim given up
+        private String release;
+
+        Record(String key) {
+            this.key = key;
+        }
+    }
+
+    private static class Claim {
+        private final String owner;
+        private final long claimedAt;
+
+        Claim(String owner, long claimedAt) {
+            this.owner = owner;
+            this.claimedAt = claimedAt;
+        }
+    }
+}
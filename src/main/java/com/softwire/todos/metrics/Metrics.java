@@ -0,0 +1,345 @@
+package com.softwire.todos.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and call counts for a single run, which can be written out at the end
+ * of the run in the Prometheus text format (for the node exporter's "textfile"
+ * collector) or as JSON.
+ * <p>
+ * This is safe to use from multiple threads.
+ */
+public class Metrics {
+    static final String PHASE_DURATION = "todo_checker_phase_duration_seconds";
+    static final String CLIENT_CALLS = "todo_checker_client_calls_total";
+    static final String CLIENT_CALL_DURATION = "todo_checker_client_call_duration_seconds";
+    static final String CLIENT_PEAK_IN_FLIGHT = "todo_checker_client_peak_in_flight_calls";
+    static final String CLIENT_CONNECTION_LIMIT = "todo_checker_client_connection_limit";
+    static final String CLIENT_IN_FLIGHT_AT_LIMIT = "todo_checker_client_in_flight_at_limit_seconds";
+
+    // Upper bounds, in seconds, of the client call latency histogram buckets
+    private static final double[] LATENCY_BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30};
+
+    private final long startTimeMillis = System.currentTimeMillis();
+    private final ConcurrentMap<Map<String, String>, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Map<String, String>, Histogram> clientCalls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Map<String, String>, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the given task as part of a phase of the run. Time spent in the same phase is
+     * summed, so this may be used repeatedly around e.g. each JIRA lookup.
+     */
+    public <T> T time(String phase, Callable<T> task) throws Exception {
+        return time(ImmutableMap.of("phase", phase), task);
+    }
+
+    public <T> T time(String phase, String detail, Callable<T> task) throws Exception {
+        return time(ImmutableMap.of("phase", phase, "detail", detail), task);
+    }
+
+    private <T> T time(Map<String, String> labels, Callable<T> task) throws Exception {
+        LongAdder total = phaseNanos.computeIfAbsent(labels, k -> new LongAdder());
+        long start = System.nanoTime();
+        try {
+            return task.call();
+        } finally {
+            total.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the given call to a remote service, recording its latency and whether it succeeded.
+     */
+    public <T> T timeCall(String client, String method, Callable<T> call) throws Exception {
+        InFlight calls = inFlight(client);
+        calls.start();
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } finally {
+            calls.end();
+            recordCall(client, method, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the size of the client's connection pool, so that the time spent with at
+     * least that many calls in flight, when further calls would wait for a connection,
+     * can be recorded. (The pool itself isn't inspected.)
+     */
+    public void setConnectionLimit(String client, int limit) {
+        inFlight(client).setLimit(limit);
+    }
+
+    private InFlight inFlight(String client) {
+        return inFlight.computeIfAbsent(ImmutableMap.of("client", client), k -> new InFlight());
+    }
+
+    public void recordCall(String client, String method, String outcome, long durationNanos) {
+        Map<String, String> labels = ImmutableMap.of("client", client, "method", method, "outcome", outcome);
+        clientCalls.computeIfAbsent(labels, k -> new Histogram()).observe(durationNanos);
+    }
+
+    /**
+     * Writes the metrics to the given file: as JSON if it ends with ".json", or in
+     * the Prometheus text format otherwise.
+     * <p>
+     * The file is replaced atomically, so that a collector never sees a partial file.
+     */
+    public void writeTo(Path path) throws IOException {
+        String content = path.toString().endsWith(".json") ? toJson() : toPrometheusText();
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+
+        out.append("# HELP todo_checker_run_start_time_seconds When the run started\n");
+        out.append("# TYPE todo_checker_run_start_time_seconds gauge\n");
+        out.append("todo_checker_run_start_time_seconds ").append(startTimeMillis / 1000).append('\n');
+
+        out.append("# HELP " + PHASE_DURATION + " Time spent in each phase of the run\n");
+        out.append("# TYPE " + PHASE_DURATION + " gauge\n");
+        for (Map.Entry<Map<String, String>, LongAdder> entry : sorted(phaseNanos).entrySet()) {
+            appendSample(out, PHASE_DURATION, entry.getKey(), seconds(entry.getValue().sum()));
+        }
+
+        out.append("# HELP " + CLIENT_CALLS + " Calls made to JIRA and Slack\n");
+        out.append("# TYPE " + CLIENT_CALLS + " counter\n");
+        for (Map.Entry<Map<String, String>, Histogram> entry : sorted(clientCalls).entrySet()) {
+            appendSample(out, CLIENT_CALLS, entry.getKey(), Long.toString(entry.getValue().count.sum()));
+        }
+
+        out.append("# HELP " + CLIENT_CALL_DURATION + " Latency of calls made to JIRA and Slack\n");
+        out.append("# TYPE " + CLIENT_CALL_DURATION + " histogram\n");
+        for (Map.Entry<Map<String, String>, Histogram> entry : sorted(clientCalls).entrySet()) {
+            Histogram histogram = entry.getValue();
+            for (int i = 0; i <= LATENCY_BUCKETS.length; i++) {
+                Map<String, String> labels = new LinkedHashMap<>(entry.getKey());
+                labels.put("le", i < LATENCY_BUCKETS.length ? Double.toString(LATENCY_BUCKETS[i]) : "+Inf");
+                appendSample(out, CLIENT_CALL_DURATION + "_bucket", labels,
+                        Long.toString(histogram.cumulativeCount(i)));
+            }
+            appendSample(out, CLIENT_CALL_DURATION + "_sum", entry.getKey(), seconds(histogram.sumNanos.sum()));
+            appendSample(out, CLIENT_CALL_DURATION + "_count", entry.getKey(), Long.toString(histogram.count.sum()));
+        }
+
+        out.append("# HELP " + CLIENT_PEAK_IN_FLIGHT + " The most calls made to JIRA and Slack at once\n");
+        out.append("# TYPE " + CLIENT_PEAK_IN_FLIGHT + " gauge\n");
+        for (Map.Entry<Map<String, String>, InFlight> entry : sorted(inFlight).entrySet()) {
+            appendSample(out, CLIENT_PEAK_IN_FLIGHT, entry.getKey(), Integer.toString(entry.getValue().getPeak()));
+        }
+
+        out.append("# HELP " + CLIENT_CONNECTION_LIMIT + " The size of each client's connection pool\n");
+        out.append("# TYPE " + CLIENT_CONNECTION_LIMIT + " gauge\n");
+        for (Map.Entry<Map<String, String>, InFlight> entry : sorted(inFlight).entrySet()) {
+            if (entry.getValue().getLimit() > 0) {
+                appendSample(out, CLIENT_CONNECTION_LIMIT, entry.getKey(),
+                        Integer.toString(entry.getValue().getLimit()));
+            }
+        }
+
+        out.append("# HELP " + CLIENT_IN_FLIGHT_AT_LIMIT + " Time spent with at least as many calls in flight " +
+                "as the connection limit, counted from the calls made rather than read from the pool\n");
+        out.append("# TYPE " + CLIENT_IN_FLIGHT_AT_LIMIT + " gauge\n");
+        for (Map.Entry<Map<String, String>, InFlight> entry : sorted(inFlight).entrySet()) {
+            if (entry.getValue().getLimit() > 0) {
+                appendSample(out, CLIENT_IN_FLIGHT_AT_LIMIT, entry.getKey(),
+                        seconds(entry.getValue().getAtLimitNanos()));
+            }
+        }
+
+        return out.toString();
+    }
+
+    String toJson() {
+        JsonObject root = new JsonObject();
+        root.addProperty("runStartTimeMillis", startTimeMillis);
+
+        JsonArray phases = new JsonArray();
+        for (Map.Entry<Map<String, String>, LongAdder> entry : sorted(phaseNanos).entrySet()) {
+            JsonObject phase = labelsToJson(entry.getKey());
+            phase.addProperty("seconds", entry.getValue().sum() / 1e9);
+            phases.add(phase);
+        }
+        root.add("phases", phases);
+
+        JsonArray calls = new JsonArray();
+        for (Map.Entry<Map<String, String>, Histogram> entry : sorted(clientCalls).entrySet()) {
+            Histogram histogram = entry.getValue();
+            JsonObject call = labelsToJson(entry.getKey());
+            call.addProperty("count", histogram.count.sum());
+            call.addProperty("sumSeconds", histogram.sumNanos.sum() / 1e9);
+            JsonObject buckets = new JsonObject();
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                buckets.addProperty(Double.toString(LATENCY_BUCKETS[i]), histogram.cumulativeCount(i));
+            }
+            buckets.addProperty("+Inf", histogram.cumulativeCount(LATENCY_BUCKETS.length));
+            call.add("buckets", buckets);
+            calls.add(call);
+        }
+        root.add("clientCalls", calls);
+
+        JsonArray pools = new JsonArray();
+        for (Map.Entry<Map<String, String>, InFlight> entry : sorted(inFlight).entrySet()) {
+            JsonObject pool = labelsToJson(entry.getKey());
+            pool.addProperty("peakInFlightCalls", entry.getValue().getPeak());
+            if (entry.getValue().getLimit() > 0) {
+                pool.addProperty("connectionLimit", entry.getValue().getLimit());
+                pool.addProperty("inFlightAtLimitSeconds", entry.getValue().getAtLimitNanos() / 1e9);
+            }
+            pools.add(pool);
+        }
+        root.add("clientConnections", pools);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    private static JsonObject labelsToJson(Map<String, String> labels) {
+        JsonObject object = new JsonObject();
+        labels.forEach(object::addProperty);
+        return object;
+    }
+
+    private static <V> Map<Map<String, String>, V> sorted(Map<Map<String, String>, V> series) {
+        Map<Map<String, String>, V> result = new TreeMap<>((a, b) -> a.toString().compareTo(b.toString()));
+        result.putAll(series);
+        return result;
+    }
+
+    private static void appendSample(StringBuilder out, String name, Map<String, String> labels, String value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, String> label : labels.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                out.append(label.getKey()).append("=\"")
+                        .append(label.getValue()
+                                .replace("\\", "\\\\")
+                                .replace("\"", "\\\"")
+                                .replace("\n", "\\n"))
+                        .append('"');
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+
+    private static class Histogram {
+        private final LongAdder[] bucketCounts = new LongAdder[LATENCY_BUCKETS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < bucketCounts.length; i++) {
+                bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        void observe(long nanos) {
+            double seconds = nanos / 1e9;
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            bucketCounts[bucket].increment();
+            count.increment();
+            sumNanos.add(nanos);
+        }
+
+        long cumulativeCount(int bucket) {
+            long total = 0;
+            for (int i = 0; i <= bucket; i++) {
+                total += bucketCounts[i].sum();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * The calls being made to one client, and how long as many were in flight as it
+     * has connections.
+     * <p>
+     * This is only counted from the calls made, so it is the time during which the
+     * pool could have had no free connection, not what the pool reported.
+     */
+    private static class InFlight {
+        private int current;
+        private int peak;
+        // 0 if the pool's size isn't known
+        private int limit;
+        private long atLimitSince;
+        private long atLimitNanos;
+
+        synchronized void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void start() {
+            current++;
+            peak = Math.max(peak, current);
+            if (current == limit) {
+                atLimitSince = System.nanoTime();
+            }
+        }
+
+        synchronized void end() {
+            if (current == limit) {
+                atLimitNanos += System.nanoTime() - atLimitSince;
+            }
+            current--;
+        }
+
+        synchronized int getPeak() {
+            return peak;
+        }
+
+        synchronized int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Including any time since the calls in flight last reached the limit
+         */
+        synchronized long getAtLimitNanos() {
+            return current >= limit && limit > 0
+                    ? atLimitNanos + System.nanoTime() - atLimitSince
+                    : atLimitNanos;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.softwire.todos.orchestrator;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.PathExclusions;
+import com.softwire.todos.TodoCheckerApp;
+import com.softwire.todos.TodoCheckerConfig;
+import com.softwire.todos.TodoCheckerReturnCode;
+import com.softwire.todos.TodoCheckerServices;
+import com.softwire.todos.TodoFinder;
+import com.softwire.todos.errors.TodoCheckerErrors;
+import com.softwire.todos.errors.WithoutCardError;
+import com.softwire.todos.jira.JiraClient;
+import com.softwire.todos.jira.JiraCommenter;
+import com.softwire.todos.reporter.FileReporter;
+import com.softwire.todos.reporter.Reporter;
+import com.softwire.todos.reporter.SlackReporter;
+import com.softwire.todos.slack.SlackClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+/**
+ * Checks every repository in a {@link RepositoryManifest} in this one JVM, on a pool
+ * of worker threads.
+ * <p>
+ * Alternatively, the manifest may be split between several worker processes, each
+ * of which scans its share with {@link #scanShard}, followed by a single
+ * {@link #mergeShards} which checks all of their results against JIRA.
+ * <p>
+ * All of the repositories share one {@link JiraClient}, so each JIRA card is only
+ * fetched once however many repositories reference it, and the JIRA request
+ * budget and rate limit apply to the run as a whole.
+ */
+public class Orchestrator {
+    private final TodoCheckerConfig config;
+    private final RepositoryManifest manifest;
+    private final TodoCheckerServices services;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    public Orchestrator(
+            TodoCheckerConfig config,
+            RepositoryManifest manifest,
+            TodoCheckerServices services) {
+        this.config = config;
+        this.manifest = manifest;
+        this.services = services;
+    }
+
+    public TodoCheckerReturnCode run() throws Exception {
+        log.info("Checking {} repositories with {} worker(s)",
+                manifest.getRepositories().size(),
+                config.parallelism);
+
+        return checkAll((repositoryConfig, reporter) -> todoCheckerApp(
+                repositoryConfig,
+                reporter,
+                singletonList(todoFinder(repositoryConfig)))
+                .run());
+    }
+
+    /**
+     * Scans this worker's share of the repositories, without connecting to JIRA, and
+     * saves the TODOs found to a file in the given directory.
+     * <p>
+     * Once every shard has been scanned, {@link #mergeShards} checks the results.
+     */
+    public void scanShard(int shardIndex, int shardCount, Path shardDir) throws Exception {
+        checkArgument(shardIndex >= 0 && shardIndex < shardCount,
+                "--shard-index must be between 0 and %s", shardCount - 1);
+        List<RepositoryManifest.Repository> repositories = manifest.getRepositoriesInShard(shardIndex, shardCount);
+        log.info("Scanning {} of {} repositories, as shard {} of {}, with {} worker(s)",
+                repositories.size(),
+                manifest.getRepositories().size(),
+                shardIndex,
+                shardCount,
+                config.parallelism);
+
+        List<ShardFile.RepositoryScan> scans = inParallel(repositories, repository -> {
+            RepositoryConfig repositoryConfig = new RepositoryConfig(repository, config);
+            return withThreadName(repositoryConfig.getJobName(), () -> {
+                try {
+                    TodoFinder todoFinder = todoFinder(repositoryConfig);
+                    List<CodeTodo> todos = services.getMetrics().time(
+                            "scan",
+                            () -> todoFinder.findAllTodosInSource(PathExclusions.fromConfig(repositoryConfig)));
+                    log.info("{} code TODOs found", todos.size());
+                    return ShardFile.RepositoryScan.of(repositoryConfig.getJobName(), todoFinder.getGitCheckout(), todos);
+                } catch (Exception e) {
+                    // Recorded in the shard, so that the merge can report it and still check the others
+                    log.error("Unable to scan " + repositoryConfig.getSrc(), e);
+                    return ShardFile.RepositoryScan.failed(repositoryConfig.getJobName(), e);
+                }
+            });
+        });
+
+        new ShardFile(shardIndex, shardCount, scans).writeTo(shardDir);
+        log.info("Saved the results of shard {} to {}", shardIndex, shardDir.resolve(ShardFile.fileName(shardIndex, shardCount)));
+    }
+
+    /**
+     * Checks the TODOs found by every {@link #scanShard} worker against JIRA, updating
+     * the comments and reporting errors for the whole manifest at once.
+     */
+    public TodoCheckerReturnCode mergeShards(Path shardDir) throws Exception {
+        Map<String, ShardFile.RepositoryScan> scansByJobName = ShardFile.readAll(shardDir, manifest);
+        log.info("Checking the scans of {} repositories from {}", scansByJobName.size(), shardDir);
+
+        return checkAll((repositoryConfig, reporter) -> todoCheckerApp(
+                repositoryConfig,
+                reporter,
+                emptyList())
+                .check(scansByJobName.get(repositoryConfig.getJobName()).toCodeTodos()));
+    }
+
+    private TodoCheckerReturnCode checkAll(RepositoryCheck check) throws Exception {
+        List<RepositoryResult> results = inParallel(manifest.getRepositories(), repository -> {
+            RepositoryConfig repositoryConfig = new RepositoryConfig(repository, config);
+            return withThreadName(repositoryConfig.getJobName(), () -> {
+                try {
+                    ErrorCapturingReporter errorCapturingReporter = new ErrorCapturingReporter();
+                    check.check(repositoryConfig, errorCapturingReporter);
+                    return new RepositoryResult(repositoryConfig.getJobName(), errorCapturingReporter.errors, null);
+                } catch (Exception e) {
+                    log.error("Unable to check " + repositoryConfig.getSrc(), e);
+                    return new RepositoryResult(repositoryConfig.getJobName(), null, e);
+                }
+            });
+        });
+
+        String summary = summarise(results);
+        log.info("Summary:\n{}", summary);
+        if (config.summaryFile != null) {
+            Files.write(Paths.get(config.summaryFile), summary.getBytes(StandardCharsets.UTF_8));
+        }
+
+        if (results.stream().anyMatch(result -> result.exception != null)) {
+            return TodoCheckerReturnCode.ERROR;
+        } else if (results.stream().anyMatch(result -> !result.errors.isSuccess())) {
+            return TodoCheckerReturnCode.FOUND_INAPPROPRIATE_TODOS;
+        } else {
+            return TodoCheckerReturnCode.SUCCESS;
+        }
+    }
+
+    /**
+     * Runs the task for each repository, up to --parallelism at once, returning the
+     * results in the same order as the repositories.
+     */
+    private <T> List<T> inParallel(
+            List<RepositoryManifest.Repository> repositories,
+            Function<RepositoryManifest.Repository, T> task) throws Exception {
+        List<Callable<T>> tasks = repositories.stream()
+                .map(repository -> (Callable<T>) () -> task.apply(repository))
+                .collect(Collectors.toList());
+        return services.getTaskExecutors().runAll("repository", config.parallelism, tasks);
+    }
+
+    /**
+     * Names the thread after the job while running the task, so that the log shows
+     * which repository each line is about.
+     */
+    private static <T> T withThreadName(String name, Supplier<T> task) {
+        Thread thread = Thread.currentThread();
+        String originalThreadName = thread.getName();
+        thread.setName(name);
+        try {
+            return task.get();
+        } finally {
+            thread.setName(originalThreadName);
+        }
+    }
+
+    private TodoFinder todoFinder(RepositoryConfig repositoryConfig) {
+        File srcDirFile = new File(repositoryConfig.getSrc());
+        checkArgument(srcDirFile.isDirectory(), "Invalid \"src\" in manifest: " + repositoryConfig.getSrc());
+        return new TodoFinder(
+                new GitCheckout(srcDirFile, repositoryConfig),
+                services.getGitBlamer(),
+                services.getWorkingTreeScanner());
+    }
+
+    private TodoCheckerApp todoCheckerApp(
+            RepositoryConfig repositoryConfig,
+            ErrorCapturingReporter errorCapturingReporter,
+            List<TodoFinder> todoFinders) {
+        ArrayList<Reporter> reporters = new ArrayList<>();
+        reporters.add(errorCapturingReporter);
+        if (repositoryConfig.getReportFile() != null) {
+            reporters.add(new FileReporter(Paths.get(repositoryConfig.getReportFile()), services.getJiraClient()));
+        }
+        if (repositoryConfig.getSlackChannel() != null) {
+            reporters.add(new SlackReporter(
+                    new SlackClient(repositoryConfig, services.getMetrics()),
+                    services.getJiraClient(),
+                    services.getSlackReportState(),
+                    repositoryConfig.getJobName()));
+        }
+
+        return new TodoCheckerApp(
+                repositoryConfig,
+                reporters,
+                new JiraCommenter(
+                        repositoryConfig,
+                        services.getJiraClient(),
+                        services.getTaskExecutors(),
+                        services.getCommentSnapshot(),
+                        services.getReconciliationJournal()),
+                todoFinders,
+                services);
+    }
+
+    private static String summarise(List<RepositoryResult> results) {
+        StringBuilder summary = new StringBuilder();
+        int withoutCard = 0;
+        int resolvedCards = 0;
+        int invalidStatusCards = 0;
+        int failed = 0;
+
+        for (RepositoryResult result : results) {
+            summary.append(result.jobName).append(": ");
+            if (result.exception != null) {
+                failed++;
+                summary.append("failed: ").append(result.exception);
+            } else if (result.errors.isSuccess()) {
+                summary.append("OK");
+            } else {
+                int repositoryWithoutCard = result.errors.getWithoutCardErrors().stream()
+                        .mapToInt((WithoutCardError error) -> error.getCodeTodos().size())
+                        .sum();
+                withoutCard += repositoryWithoutCard;
+                resolvedCards += result.errors.getWithResolvedCardErrors().size();
+                invalidStatusCards += result.errors.getWithInvalidStatusErrors().size();
+                summary.append(describe(
+                        repositoryWithoutCard,
+                        result.errors.getWithResolvedCardErrors().size(),
+                        result.errors.getWithInvalidStatusErrors().size()));
+            }
+            summary.append('\n');
+        }
+
+        summary.append(String.format("Total: %s repositories, %s failed to run, %s\n",
+                results.size(),
+                failed,
+                describe(withoutCard, resolvedCards, invalidStatusCards)));
+        return summary.toString();
+    }
+
+    private static String describe(int withoutCard, int resolvedCards, int invalidStatusCards) {
+        return String.format(
+                "%s TODOs without a JIRA card, %s resolved cards with TODOs, %s cards with TODOs in an invalid status",
+                withoutCard,
+                resolvedCards,
+                invalidStatusCards);
+    }
+
+    private static class RepositoryResult {
+        private final String jobName;
+        private final TodoCheckerErrors errors;
+        private final Exception exception;
+
+        RepositoryResult(String jobName, TodoCheckerErrors errors, Exception exception) {
+            this.jobName = jobName;
+            this.errors = errors;
+            this.exception = exception;
+        }
+    }
+
+    private interface RepositoryCheck {
+        void check(RepositoryConfig repositoryConfig, ErrorCapturingReporter reporter) throws Exception;
+    }
+
+    /**
+     * Keeps the errors found in one repository, for the summary.
+     */
+    private static class ErrorCapturingReporter implements Reporter {
+        private TodoCheckerErrors errors;
+
+        @Override
+        public void report(TodoCheckerErrors errors) {
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.softwire.todos.orchestrator;
+
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.TodoCheckerApp;
+import com.softwire.todos.TodoCheckerConfig;
+import com.softwire.todos.jira.JiraCommenter;
+import com.softwire.todos.jira.JiraProject;
+import com.softwire.todos.slack.SlackClient;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The settings for one repository in a {@link RepositoryManifest}, falling back to
+ * the command-line settings for anything the manifest doesn't specify.
+ */
+class RepositoryConfig implements TodoCheckerApp.Config, JiraCommenter.Config, GitCheckout.Config, SlackClient.Config {
+    private final RepositoryManifest.Repository repository;
+    private final TodoCheckerConfig defaults;
+
+    RepositoryConfig(RepositoryManifest.Repository repository, TodoCheckerConfig defaults) {
+        this.repository = repository;
+        this.defaults = defaults;
+    }
+
+    String getSrc() {
+        return repository.getSrc();
+    }
+
+    String getReportFile() {
+        return repository.getReportFile();
+    }
+
+    @Override
+    public String getJobName() {
+        return repository.getJobName();
+    }
+
+    @Override
+    public List<JiraProject> getJiraProjects() {
+        return repository.getJiraProjectKeys() == null
+                ? defaults.getJiraProjects()
+                : parseJiraProjects(repository.getJiraProjectKeys());
+    }
+
+    @Override
+    public List<JiraProject> getIgnoredJiraProjects() {
+        return repository.getIgnoreJiraProjectKeys() == null
+                ? defaults.getIgnoredJiraProjects()
+                : parseJiraProjects(repository.getIgnoreJiraProjectKeys());
+    }
+
+    private static List<JiraProject> parseJiraProjects(List<String> keys) {
+        return keys.stream().map(JiraProject::parse).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> getInvalidCardStatuses() {
+        return repository.getInvalidCardStatuses() == null
+                ? defaults.getInvalidCardStatuses()
+                : repository.getInvalidCardStatuses();
+    }
+
+    @Override
+    public int getParallelism() {
+        // Each repository is a single checkout
+        return 1;
+    }
+
+    @Override
+    public int getJiraParallelism() {
+        return defaults.getJiraParallelism();
+    }
+
+    @Override
+    public String getExcludePathRegex() {
+        return repository.getExcludePathRegex() == null
+                ? defaults.getExcludePathRegex()
+                : repository.getExcludePathRegex();
+    }
+
+    @Override
+    public List<String> getExcludePaths() {
+        return repository.getExcludePaths() == null
+                ? defaults.getExcludePaths()
+                : repository.getExcludePaths();
+    }
+
+    @Override
+    public int getRegexTimeoutMillis() {
+        return defaults.getRegexTimeoutMillis();
+    }
+
+    @Override
+    public String getGithubUrl() {
+        // The command-line link settings apply to a single repository, so aren't inherited
+        return repository.getGithubUrl();
+    }
+
+    @Override
+    public String getGitblitUrl() {
+        return repository.getGitblitUrl();
+    }
+
+    @Override
+    public String getGitBranchName() {
+        return repository.getBranch();
+    }
+
+    @Override
+    public String getSlackChannel() {
+        return repository.getSlackChannel();
+    }
+
+    @Override
+    public String getSlackToken() {
+        return defaults.getSlackToken();
+    }
+
+    @Override
+    public String getRestrictToSingleCardId() {
+        return defaults.getRestrictToSingleCardId();
+    }
+
+    @Override
+    public boolean getUseIssueProperties() {
+        return defaults.getUseIssueProperties();
+    }
+
+    @Override
+    public boolean getWriteToJira() {
+        return defaults.getWriteToJira();
+    }
+}
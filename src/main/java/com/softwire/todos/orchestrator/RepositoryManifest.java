@@ -0,0 +1,144 @@
+package com.softwire.todos.orchestrator;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A list of repositories to check in a single run, read from a JSON file like:
+ * <pre>
+ * {
+ *   "repositories": [
+ *     {
+ *       "src": "../project-a",
+ *       "jobName": "ProjectA",
+ *       "jiraProjectKeys": ["AAA", "COMPANY-DEPT-FOO=FOO"],
+ *       "githubUrl": "https://github.com/example/project-a",
+ *       "reportFile": "reports/project-a.txt"
+ *     }
+ *   ]
+ * }
+ * </pre>
+ * Each entry takes the same settings as the corresponding command-line arguments.
+ * Any which are omitted fall back to the value given on the command line.
+ */
+public class RepositoryManifest {
+    private List<Repository> repositories = new ArrayList<>();
+
+    public static RepositoryManifest read(Path path) throws IOException {
+        RepositoryManifest manifest;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            manifest = new Gson().fromJson(reader, RepositoryManifest.class);
+        }
+        checkArgument(manifest != null && !manifest.repositories.isEmpty(),
+                "The manifest %s lists no repositories", path);
+
+        Set<String> jobNames = new HashSet<>();
+        for (Repository repository : manifest.repositories) {
+            checkArgument(repository.src != null, "Every repository in %s must have a \"src\"", path);
+            // Jobs with the same name would remove each other's JIRA comments
+            checkArgument(repository.jobName != null && jobNames.add(repository.jobName),
+                    "Every repository in %s must have a unique \"jobName\"", path);
+        }
+        return manifest;
+    }
+
+    public List<Repository> getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * The repositories which the given shard should scan, when the manifest is split
+     * between {@code shardCount} workers.
+     * <p>
+     * Repositories are assigned by a consistent hash of their job name, so the
+     * assignment doesn't depend on the order of the manifest, and adding a shard
+     * only moves repositories onto the new shard.
+     */
+    public List<Repository> getRepositoriesInShard(int shardIndex, int shardCount) {
+        return repositories.stream()
+                .filter(repository -> shardOf(repository.getJobName(), shardCount) == shardIndex)
+                .collect(Collectors.toList());
+    }
+
+    static int shardOf(String jobName, int shardCount) {
+        return Hashing.consistentHash(
+                Hashing.murmur3_128().hashString(jobName, StandardCharsets.UTF_8),
+                shardCount);
+    }
+
+    public static class Repository {
+        private String src;
+        private String jobName;
+        private List<String> jiraProjectKeys;
+        private List<String> ignoreJiraProjectKeys;
+        private String githubUrl;
+        private String gitblitUrl;
+        private String branch;
+        private String excludePathRegex;
+        private List<String> excludePaths;
+        private List<String> invalidCardStatuses;
+        private String reportFile;
+        private String slackChannel;
+
+        public String getSrc() {
+            return src;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public List<String> getJiraProjectKeys() {
+            return jiraProjectKeys;
+        }
+
+        public List<String> getIgnoreJiraProjectKeys() {
+            return ignoreJiraProjectKeys;
+        }
+
+        public String getGithubUrl() {
+            return githubUrl;
+        }
+
+        public String getGitblitUrl() {
+            return gitblitUrl;
+        }
+
+        public String getBranch() {
+            return branch;
+        }
+
+        public String getExcludePathRegex() {
+            return excludePathRegex;
+        }
+
+        public List<String> getExcludePaths() {
+            return excludePaths;
+        }
+
+        public List<String> getInvalidCardStatuses() {
+            return invalidCardStatuses;
+        }
+
+        public String getReportFile() {
+            return reportFile;
+        }
+
+        public String getSlackChannel() {
+            return slackChannel;
+        }
+    }
+}
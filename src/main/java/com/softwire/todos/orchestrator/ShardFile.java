@@ -0,0 +1,199 @@
+package com.softwire.todos.orchestrator;
+
+import com.google.gson.Gson;
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.blame.Blame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The TODOs found by one worker of a sharded run, saved as JSON so that a single
+ * merge step can check them against JIRA for the whole manifest at once.
+ */
+class ShardFile {
+    private static final int FORMAT_VERSION = 1;
+
+    private int formatVersion = FORMAT_VERSION;
+    private int shardIndex;
+    private int shardCount;
+    private List<RepositoryScan> repositories = new ArrayList<>();
+
+    ShardFile(int shardIndex, int shardCount, List<RepositoryScan> repositories) {
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.repositories = repositories;
+    }
+
+    static String fileName(int shardIndex, int shardCount) {
+        return String.format("shard-%s-of-%s.json", shardIndex, shardCount);
+    }
+
+    /**
+     * Writes this shard to its file in the given directory. The file is replaced
+     * atomically, so that a merge never sees a partly written shard.
+     */
+    void writeTo(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path path = dir.resolve(fileName(shardIndex, shardCount));
+        Path temp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new Gson().toJson(this, writer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static ShardFile read(Path path) throws IOException {
+        ShardFile shard;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            shard = new Gson().fromJson(reader, ShardFile.class);
+        }
+        checkArgument(shard != null && shard.formatVersion == FORMAT_VERSION,
+                "%s is not a shard file which this version can read", path);
+        return shard;
+    }
+
+    /**
+     * Reads every shard in the given directory, and checks that together they cover
+     * each repository in the manifest exactly once.
+     * <p>
+     * A merge of an incomplete set of shards would remove the JIRA comments for every
+     * TODO in the missing repositories, so that is refused.
+     *
+     * @return the scan of each repository, by job name
+     */
+    static Map<String, RepositoryScan> readAll(Path dir, RepositoryManifest manifest) throws IOException {
+        Map<Integer, ShardFile> shardsByIndex = new TreeMap<>();
+        Integer shardCount = null;
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(dir, "shard-*-of-*.json")) {
+            for (Path path : paths) {
+                ShardFile shard = read(path);
+                checkArgument(shardCount == null || shardCount == shard.shardCount,
+                        "The shard files in %s are from runs with different shard counts. " +
+                                "Please empty the directory before each sharded run.", dir);
+                shardCount = shard.shardCount;
+                shardsByIndex.put(shard.shardIndex, shard);
+            }
+        }
+        checkArgument(shardCount != null, "There are no shard files in %s", dir);
+        for (int i = 0; i < shardCount; i++) {
+            checkArgument(shardsByIndex.containsKey(i),
+                    "The results of shard %s of %s are missing from %s", i, shardCount, dir);
+        }
+
+        Map<String, RepositoryScan> scansByJobName = new HashMap<>();
+        for (ShardFile shard : shardsByIndex.values()) {
+            for (RepositoryScan scan : shard.repositories) {
+                checkArgument(RepositoryManifest.shardOf(scan.jobName, shardCount) == shard.shardIndex,
+                        "Shard %s scanned \"%s\", which belongs to another shard. " +
+                                "Were the workers all given the same manifest?", shard.shardIndex, scan.jobName);
+                scansByJobName.put(scan.jobName, scan);
+            }
+        }
+        for (RepositoryManifest.Repository repository : manifest.getRepositories()) {
+            checkArgument(scansByJobName.containsKey(repository.getJobName()),
+                    "No shard in %s has scanned \"%s\". Were the workers all given the same manifest?",
+                    dir, repository.getJobName());
+        }
+        checkArgument(scansByJobName.size() == manifest.getRepositories().size(),
+                "The shards in %s scanned repositories which are not in the manifest", dir);
+        return scansByJobName;
+    }
+
+    /**
+     * The TODOs found in one repository, or the reason it could not be scanned.
+     */
+    static class RepositoryScan {
+        private String jobName;
+        private String baseDir;
+        // The link settings are only determined if there are TODOs to link to
+        private String linkType;
+        private String linkBaseUrl;
+        private String linkBranch;
+        private List<ScannedTodo> todos = new ArrayList<>();
+        private String error;
+
+        static RepositoryScan of(String jobName, GitCheckout gitCheckout, List<CodeTodo> codeTodos) {
+            RepositoryScan scan = new RepositoryScan();
+            scan.jobName = jobName;
+            scan.baseDir = gitCheckout.getBaseDir().getPath();
+            if (!codeTodos.isEmpty()) {
+                SourceControlLinkFormatter linkFormatter = gitCheckout.getSourceControlLinkFormatter();
+                scan.linkType = linkFormatter.getType();
+                scan.linkBaseUrl = linkFormatter.getBaseUrl();
+                scan.linkBranch = linkFormatter.getGitBranchName();
+            }
+            for (CodeTodo codeTodo : codeTodos) {
+                scan.todos.add(new ScannedTodo(
+                        codeTodo.getPosixPath(), codeTodo.getLineNumber(), codeTodo.getLine(), codeTodo.getBlame()));
+            }
+            return scan;
+        }
+
+        static RepositoryScan failed(String jobName, Exception e) {
+            RepositoryScan scan = new RepositoryScan();
+            scan.jobName = jobName;
+            scan.error = e.toString();
+            return scan;
+        }
+
+        String getJobName() {
+            return jobName;
+        }
+
+        /**
+         * @throws IOException if the worker was unable to scan this repository
+         */
+        List<CodeTodo> toCodeTodos() throws IOException {
+            if (error != null) {
+                throw new IOException("The shard worker was unable to scan this repository: " + error);
+            }
+            List<CodeTodo> codeTodos = new ArrayList<>();
+            if (todos.isEmpty()) {
+                return codeTodos;
+            }
+            GitCheckout gitCheckout = new GitCheckout(
+                    new File(baseDir),
+                    SourceControlLinkFormatter.create(linkType, linkBaseUrl, linkBranch));
+            for (ScannedTodo todo : todos) {
+                codeTodos.add(new CodeTodo(new File(todo.path), todo.line, todo.text, gitCheckout, todo.blame));
+            }
+            return codeTodos;
+        }
+    }
+
+    static class ScannedTodo {
+        private final String path;
+        private final int line;
+        private final String text;
+        // Only present with --blame
+        private final Blame blame;
+
+        ScannedTodo(String path, int line, String text, Blame blame) {
+            this.path = path;
+            this.line = line;
+            this.text = text;
+            this.blame = blame;
+        }
+    }
+}
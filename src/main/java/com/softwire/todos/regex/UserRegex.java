@@ -0,0 +1,309 @@
+package com.softwire.todos.regex;
+
+import com.google.common.math.LongMath;
+import com.google.re2j.Matcher;
+import com.google.re2j.Pattern;
+import com.google.re2j.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * A regex supplied by a user, e.g. `--exclude-path-regex`, which is run against every
+ * TODO found, so must not be allowed to hang the run.
+ * <p>
+ * The regex is compiled with RE2/J, which matches in time linear in the length of the
+ * text, unlike `java.util.regex`, which backtracks, and can take exponential time on
+ * a long line. In exchange, backreferences and lookaround are not supported. Named
+ * groups may be written either as {@code (?<name>...)}, as in `java.util.regex`, or as
+ * {@code (?P<name>...)}, as in RE2, which is all RE2/J accepts.
+ * <p>
+ * Linear time can still be too slow if the regex is huge, which nested repetition
+ * counts can make it, so such regexes are rejected up front, and each match is given
+ * up if it takes longer than {@code timeout}.
+ * <p>
+ * See https://github.com/google/re2/wiki/Syntax
+ */
+public class UserRegex {
+    // Roughly the number of steps RE2/J takes for each character matched
+    static final long MAX_SIZE = 10000;
+    private static final int MAX_REPORTED_LENGTH = 200;
+    private static final Logger log = LoggerFactory.getLogger(UserRegex.class);
+
+    private final String description;
+    private final Pattern pattern;
+    private final Duration timeout;
+
+    private UserRegex(String description, Pattern pattern, Duration timeout) {
+        this.description = description;
+        this.pattern = pattern;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param description where the regex came from, e.g. the option name, for any errors
+     * @param flags       RE2/J {@link Pattern} flags
+     * @throws IllegalArgumentException if the regex is invalid, unsupported, or too big
+     */
+    public static UserRegex compile(String description, String regex, int flags, Duration timeout) {
+        regex = toRe2NamedGroups(regex);
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex, flags);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid %s: %s (backreferences and lookaround are not supported)",
+                    description, e.getMessage()), e);
+        }
+        long size = estimateSize(regex);
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid %s: the regex is too complex to match quickly, as it expands to about %d steps " +
+                    "(at most %d are allowed). Reduce any repetition counts, e.g. {1000}, especially nested ones.",
+                    description, size, MAX_SIZE));
+        }
+        return new UserRegex(description, pattern, timeout);
+    }
+
+    /**
+     * Rewrites any named groups written as {@code (?<name>...)} as {@code (?P<name>...)}.
+     * (Lookbehind, i.e. {@code (?<=...)} and {@code (?<!...)}, is left alone, to be
+     * rejected by RE2/J.)
+     */
+    static String toRe2NamedGroups(String regex) {
+        StringBuilder result = new StringBuilder(regex.length());
+        int i = 0;
+        while (i < regex.length()) {
+            int next;
+            if (regex.charAt(i) == '\\') {
+                next = skipEscape(regex, i);
+            } else if (regex.charAt(i) == '[') {
+                next = skipCharacterClass(regex, i);
+            } else if (regex.startsWith("(?<", i)
+                    && !regex.startsWith("(?<=", i)
+                    && !regex.startsWith("(?<!", i)) {
+                result.append("(?P<");
+                i += "(?<".length();
+                continue;
+            } else {
+                next = i + 1;
+            }
+            next = Math.min(next, regex.length());
+            result.append(regex, i, next);
+            i = next;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Finds the first match in the given text.
+     *
+     * @param location where the text came from, to report it if it takes too long to
+     *                 match, or null if the text says itself
+     * @return a matcher positioned at the match, or null if there is none, or it could
+     * not be found within the timeout
+     */
+    public Matcher find(String text, String location) {
+        Matcher matcher = pattern.matcher(new DeadlineCharSequence(text, System.nanoTime() + timeout.toNanos()));
+        try {
+            return matcher.find() ? matcher : null;
+        } catch (DeadlineExceededException e) {
+            log.warn("Gave up matching {} after {}ms, so treating this line as not matching: {}{}",
+                    description,
+                    timeout.toMillis(),
+                    location == null ? "" : location + ": ",
+                    text.length() > MAX_REPORTED_LENGTH ? text.substring(0, MAX_REPORTED_LENGTH) + "..." : text);
+            return null;
+        }
+    }
+
+    /**
+     * Estimates the size of the compiled regex, which is roughly the work done for each
+     * character of the text, by multiplying out any repetition counts.
+     * <p>
+     * This assumes the regex is valid.
+     */
+    static long estimateSize(String regex) {
+        // The size of each enclosing group so far, and of the last thing in it, which any
+        // repetition count applies to
+        long[] totals = new long[regex.length() + 1];
+        long[] lasts = new long[regex.length() + 1];
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            long atom = 1;
+            switch (c) {
+                case '\\':
+                    i = skipEscape(regex, i);
+                    break;
+                case '[':
+                    i = skipCharacterClass(regex, i);
+                    break;
+                case '(':
+                    int contentsStart = groupContentsStart(regex, i);
+                    if (contentsStart < 0) {
+                        // Only sets flags, e.g. "(?i)"
+                        i = regex.indexOf(')', i) + 1;
+                    } else {
+                        depth++;
+                        totals[depth] = 0;
+                        lasts[depth] = 0;
+                        i = contentsStart;
+                    }
+                    continue;
+                case ')':
+                    atom = LongMath.saturatedAdd(totals[depth], 1);
+                    depth--;
+                    i++;
+                    break;
+                case '|':
+                    totals[depth] = LongMath.saturatedAdd(totals[depth], 1);
+                    lasts[depth] = 0;
+                    i++;
+                    continue;
+                case '*':
+                case '+':
+                case '?':
+                    totals[depth] = LongMath.saturatedAdd(totals[depth], 1);
+                    i++;
+                    continue;
+                case '{':
+                    int end = regex.indexOf('}', i);
+                    String[] bounds = end < 0 ? null : regex.substring(i + 1, end).split(",", -1);
+                    if (bounds != null && bounds.length <= 2 && bounds[0].matches("[0-9]+")
+                            && (bounds.length == 1 || bounds[1].matches("[0-9]*"))) {
+                        long count = bounds.length == 1
+                                ? Long.parseLong(bounds[0])
+                                : bounds[1].isEmpty() ? Long.parseLong(bounds[0]) + 1 : Long.parseLong(bounds[1]);
+                        long repeated = LongMath.saturatedMultiply(lasts[depth], Math.max(count, 1));
+                        totals[depth] = LongMath.saturatedAdd(totals[depth] - lasts[depth], repeated);
+                        lasts[depth] = repeated;
+                        i = end + 1;
+                        continue;
+                    }
+                    // Otherwise a literal "{"
+                    i++;
+                    break;
+                default:
+                    i++;
+                    break;
+            }
+            totals[depth] = LongMath.saturatedAdd(totals[depth], atom);
+            lasts[depth] = atom;
+        }
+        return totals[0];
+    }
+
+    /**
+     * @return the index of the contents of the group starting at {@code start}, or -1 if
+     * it has no contents, as it only sets flags
+     */
+    private static int groupContentsStart(String regex, int start) {
+        if (!regex.startsWith("(?", start)) {
+            return start + 1;
+        } else if (regex.startsWith("(?P<", start)) {
+            return regex.indexOf('>', start) + 1;
+        }
+        int i = start + 2;
+        while (regex.charAt(i) != ':' && regex.charAt(i) != ')') {
+            i++;
+        }
+        return regex.charAt(i) == ':' ? i + 1 : -1;
+    }
+
+    /**
+     * @return the index after the escape sequence starting at {@code start}
+     */
+    private static int skipEscape(String regex, int start) {
+        int i = start + 1;
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        if (c == 'Q') {
+            int end = regex.indexOf("\\E", i);
+            return end < 0 ? regex.length() : end + 2;
+        } else if ((c == 'p' || c == 'P' || c == 'x') && regex.startsWith("{", i + 1)) {
+            int end = regex.indexOf('}', i);
+            return end < 0 ? regex.length() : end + 1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * @return the index after the character class starting at {@code start}
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (regex.startsWith("^", i)) {
+            i++;
+        }
+        if (regex.startsWith("]", i)) {
+            // A literal "]"
+            i++;
+        }
+        while (i < regex.length() && regex.charAt(i) != ']') {
+            if (regex.charAt(i) == '\\') {
+                i = skipEscape(regex, i);
+            } else if (regex.startsWith("[:", i)) {
+                int end = regex.indexOf(":]", i);
+                i = end < 0 ? i + 1 : end + 2;
+            } else {
+                i++;
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * The text being matched, which stops the match once the deadline has passed.
+     * (RE2/J reads the text one character at a time as it goes.)
+     */
+    private static class DeadlineCharSequence implements CharSequence {
+        // The clock is only checked every so often, as it is slower than the match itself
+        private static final int CHECK_INTERVAL_MASK = 0x3ff;
+
+        private final String text;
+        private final long deadlineNanos;
+        private int reads;
+
+        DeadlineCharSequence(String text, long deadlineNanos) {
+            this.text = text;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if ((++reads & CHECK_INTERVAL_MASK) == 0 && System.nanoTime() - deadlineNanos > 0) {
+                throw new DeadlineExceededException();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static class DeadlineExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException() {
+            // Thrown often enough on a bad regex that the stack trace isn't worth filling in
+            super(null, null, false, false);
+        }
+    }
+}
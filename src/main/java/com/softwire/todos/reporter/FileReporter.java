@@ -1,6 +1,7 @@
 package com.softwire.todos.reporter;
 
 import com.softwire.todos.CodeTodo;
+import com.softwire.todos.blame.Blame;
 import com.softwire.todos.errors.TodoCheckerErrors;
 import com.softwire.todos.errors.WithInvalidStatusError;
 import com.softwire.todos.errors.WithResolvedCardError;
@@ -32,7 +33,7 @@ public class FileReporter implements Reporter {
             report.append(String.format(
                     "TODOs on a resolved '%s' JIRA card found %s\n",
                     error.getResolutionName(),
-                    jiraClient.getViewUrl(error.getIssue())
+                    jiraClient.getViewUrl(error.getIssueKey())
             ));
             appendCodeTodoDetails(error.getCodeTodos(), report);
         }
@@ -41,7 +42,7 @@ public class FileReporter implements Reporter {
             report.append(String.format(
                     "TODOs on a JIRA card with status '%s': %s\n",
                     error.getStatusName(),
-                    jiraClient.getViewUrl(error.getIssue())
+                    jiraClient.getViewUrl(error.getIssueKey())
             ));
             appendCodeTodoDetails(error.getCodeTodos(), report);
         }
@@ -55,12 +56,14 @@ public class FileReporter implements Reporter {
     }
 
     private void appendCodeTodoDetails(Collection<CodeTodo> error, StringBuilder report) {
-        for (CodeTodo codeTodo : error) {
+        // With --blame, the stalest TODOs are listed first
+        for (CodeTodo codeTodo : Blame.oldestFirst().sortedCopy(error)) {
             report.append(String.format(
-                    "  %s:%s %s\n",
+                    "  %s:%s %s%s\n",
                     codeTodo.getFile(),
                     codeTodo.getLineNumber(),
-                    codeTodo.getLine()
+                    codeTodo.getLine(),
+                    codeTodo.getBlame() == null ? "" : "  (added by " + codeTodo.getBlame().describe() + ")"
             ));
         }
     }
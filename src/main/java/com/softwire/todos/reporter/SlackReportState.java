@@ -0,0 +1,188 @@
+package com.softwire.todos.reporter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The Slack messages of the last report to each channel, kept between runs so that
+ * the {@link SlackReporter} can edit them in place rather than post them again.
+ * <p>
+ * The state is a JSON file, with the last report for each channel and `--job-name`.
+ * Jobs may share the file: it is read and replaced while holding an exclusive lock on
+ * a separate lock file. This is safe to use from multiple threads.
+ */
+public class SlackReportState {
+    private static final int FORMAT_VERSION = 1;
+    private static final Logger log = LoggerFactory.getLogger(SlackReportState.class);
+
+    // Null if the state is disabled
+    private final Path path;
+    private final Path lockPath;
+
+    SlackReportState(Path path) {
+        this.path = path;
+        this.lockPath = path == null ? null : Paths.get(path + ".lock");
+    }
+
+    /**
+     * A state which keeps nothing, so every report is posted afresh.
+     */
+    public static SlackReportState disabled() {
+        return new SlackReportState(null);
+    }
+
+    public static SlackReportState open(Path path) {
+        return new SlackReportState(path);
+    }
+
+    /**
+     * @return the last report made by the given job to the given channel, or null if
+     * there isn't one
+     */
+    Report get(String channel, String jobName) throws IOException {
+        if (path == null) {
+            return null;
+        }
+        return withState(state -> state.reports.get(key(channel, jobName)));
+    }
+
+    void put(String channel, String jobName, Report report) throws IOException {
+        if (path == null) {
+            return;
+        }
+        withState(state -> {
+            state.reports.put(key(channel, jobName), report);
+            write(state);
+            return null;
+        });
+    }
+
+    private static String key(String channel, String jobName) {
+        return channel + " " + (jobName == null ? "" : jobName);
+    }
+
+    private <T> T withState(StateAction<T> action) throws IOException {
+        // File locks are held by the whole JVM, and taking one which overlaps another
+        // throws, so threads must also take turns
+        synchronized (SlackReportState.class) {
+            try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    return action.run(read());
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private StateFile read() throws IOException {
+        if (!Files.exists(path)) {
+            return new StateFile();
+        }
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            StateFile state = new Gson().fromJson(reader, StateFile.class);
+            if (state == null || state.formatVersion != FORMAT_VERSION || state.reports == null) {
+                log.warn("Ignoring the Slack report state in {}, which was written by another version", path);
+                return new StateFile();
+            }
+            return state;
+        } catch (JsonParseException e) {
+            log.warn("Ignoring the Slack report state in " + path + ", which is corrupt", e);
+            return new StateFile();
+        }
+    }
+
+    private void write(StateFile state) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                new Gson().toJson(state, writer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private interface StateAction<T> {
+        T run(StateFile state) throws IOException;
+    }
+
+    private static class StateFile {
+        private int formatVersion = FORMAT_VERSION;
+        // By channel and job name
+        private Map<String, Report> reports = new TreeMap<>();
+    }
+
+    /**
+     * The messages of one report, by what each was about, e.g. a card's key, in the
+     * order they were posted.
+     */
+    static class Report {
+        private Map<String, Message> messages = new LinkedHashMap<>();
+
+        Map<String, Message> getMessages() {
+            return messages;
+        }
+    }
+
+    static class Message {
+        // The channel's id, as returned by Slack, rather than its name
+        private String channel;
+        private String ts;
+        // Of the text last posted, to tell whether it needs updating
+        private String fingerprint;
+        // The TODOs in the message, as the path and text of each, without line numbers
+        private List<String> todos;
+        // What to change the message to once its TODOs are fixed
+        private String fixedText;
+
+        Message(String channel, String ts, String fingerprint, List<String> todos, String fixedText) {
+            this.channel = channel;
+            this.ts = ts;
+            this.fingerprint = fingerprint;
+            this.todos = todos;
+            this.fixedText = fixedText;
+        }
+
+        String getChannel() {
+            return channel;
+        }
+
+        String getTs() {
+            return ts;
+        }
+
+        String getFingerprint() {
+            return fingerprint;
+        }
+
+        List<String> getTodos() {
+            return todos;
+        }
+
+        String getFixedText() {
+            return fixedText;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.softwire.todos.reporter;
 
+import com.google.common.hash.Hashing;
 import com.softwire.todos.CodeTodo;
+import com.softwire.todos.blame.Blame;
 import com.softwire.todos.errors.TodoCheckerErrors;
 import com.softwire.todos.errors.WithInvalidStatusError;
 import com.softwire.todos.errors.WithResolvedCardError;
@@ -8,96 +10,249 @@ import com.softwire.todos.errors.WithoutCardError;
 import com.softwire.todos.jira.JiraClient;
 import com.softwire.todos.slack.SlackClient;
 import com.softwire.todos.slack.SlackClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
 
 public class SlackReporter implements Reporter {
     public static final int MAX_MESSAGES_POSTED = 6;
+    private static final Logger log = LoggerFactory.getLogger(SlackReporter.class);
     private final SlackClient slackClient;
     private final JiraClient jiraClient;
+    private final SlackReportState reportState;
+    private final String jobName;
 
-    public SlackReporter(SlackClient slackClient, JiraClient jiraClient) {
+    /**
+     * @param jobName the `--job-name`, or null, which with the channel identifies the
+     *                last report in the {@link SlackReportState}
+     */
+    public SlackReporter(
+            SlackClient slackClient,
+            JiraClient jiraClient,
+            SlackReportState reportState,
+            String jobName) {
         this.slackClient = slackClient;
         this.jiraClient = jiraClient;
+        this.reportState = reportState;
+        this.jobName = jobName;
     }
 
     /**
      * Generate a Slack message per JIRA card, so that it's easier for people to reply on each thread with cards which
      * they want to claim.
+     * <p>
+     * With a {@link SlackReportState}, the messages of the last report are edited in place instead, if they still
+     * cover every error: only messages whose text has changed are edited, and those for cards which have been fixed
+     * say so. A new report is only posted when there is something new to act on, i.e. a card or TODO which wasn't in
+     * the last report, or when the errors have all been fixed.
      */
     public void report(TodoCheckerErrors errors) throws Exception {
+        List<Draft> drafts = draft(errors);
+        SlackReportState.Report last = reportState.get(slackClient.getChannel(), jobName);
+
+        SlackReportState.Report report = null;
+        if (last != null && !hasNews(last, drafts)) {
+            try {
+                report = editInPlace(last, drafts);
+            } catch (SlackClientException e) {
+                // e.g. the messages have been deleted
+                log.warn("Unable to edit the last report in Slack, so posting it again", e);
+            }
+        }
+        if (report == null) {
+            report = post(drafts);
+        }
+        reportState.put(slackClient.getChannel(), jobName, report);
+    }
+
+    private List<Draft> draft(TodoCheckerErrors errors) throws Exception {
+        List<Draft> drafts = new ArrayList<>();
         if (errors.isSuccess()) {
-            slackClient.postMessage(
+            drafts.add(new Draft(
+                    "success",
                     ":white_check_mark: TODO Checker successful: " +
-                    "no TODOs without JIRA cards or TODOs on closed cards."
-            );
-            return ;
+                            "no TODOs without JIRA cards or TODOs on closed cards.",
+                    new ArrayList<>(),
+                    null));
+            return drafts;
         }
 
-        int messagesPosted = 0;
         for (WithResolvedCardError error : errors.getWithResolvedCardErrors()) {
-            if (tooManyMessages(messagesPosted)) {
-                return;
+            if (tooManyMessages(drafts)) {
+                return drafts;
             }
-            messagesPosted += 1;
-
-            reportError(error.getCodeTodos(), String.format(
+            drafts.add(cardDraft("resolved", error.getIssueKey(), error.getCodeTodos(), String.format(
                     ":x: JIRA card <%s|%s> with resolution '%s' has outstanding TODOs:\n",
-                    jiraClient.getViewUrl(error.getIssue()),
-                    error.getIssue().getKey(),
+                    jiraClient.getViewUrl(error.getIssueKey()),
+                    error.getIssueKey(),
                     error.getResolutionName()
-            ));
+            )));
         }
 
         for (WithInvalidStatusError error : errors.getWithInvalidStatusErrors()) {
-            if (tooManyMessages(messagesPosted)) {
-                return;
+            if (tooManyMessages(drafts)) {
+                return drafts;
             }
-            messagesPosted += 1;
-
-            reportError(error.getCodeTodos(), String.format(
+            drafts.add(cardDraft("invalid-status", error.getIssueKey(), error.getCodeTodos(), String.format(
                     ":x: JIRA card <%s|%s> with status '%s' has outstanding TODOs:\n",
-                    jiraClient.getViewUrl(error.getIssue()),
-                    error.getIssue().getKey(),
+                    jiraClient.getViewUrl(error.getIssueKey()),
+                    error.getIssueKey(),
                     error.getStatusName()
-            ));
+            )));
         }
 
         for (WithoutCardError error: errors.getWithoutCardErrors()) {
-            if (tooManyMessages(messagesPosted)) {
-                return;
+            if (tooManyMessages(drafts)) {
+                return drafts;
             }
-            messagesPosted += 1;
-
-            reportError(error.getCodeTodos(), ":x: TODOs without a JIRA card found:\n");
+            drafts.add(new Draft(
+                    "without-card",
+                    formatError(error.getCodeTodos(), ":x: TODOs without a JIRA card found:\n"),
+                    todoIds(error.getCodeTodos()),
+                    ":white_check_mark: The TODOs without a JIRA card found here have been fixed."));
         }
+        return drafts;
+    }
+
+    private Draft cardDraft(String kind, String issueKey, Collection<CodeTodo> codeTodos, String headline)
+            throws Exception {
+        return new Draft(
+                kind + " " + issueKey,
+                formatError(codeTodos, headline),
+                todoIds(codeTodos),
+                String.format(":white_check_mark: JIRA card <%s|%s> no longer has outstanding TODOs.",
+                        jiraClient.getViewUrl(issueKey),
+                        issueKey));
     }
 
-    private boolean tooManyMessages(int messagesPosted) throws SlackClientException {
-        if (messagesPosted >= MAX_MESSAGES_POSTED) {
-            slackClient.postMessage(
+    /**
+     * Adds a message saying that there are further errors, once there are as many as should be posted
+     */
+    private static boolean tooManyMessages(List<Draft> drafts) {
+        if (drafts.size() >= MAX_MESSAGES_POSTED) {
+            drafts.add(new Draft(
+                    "too-many",
                     ":x: Further JIRA cards found with invalid TODOs found, but will not be posted to Slack to " +
-                            "avoid an excessive number of messages");
+                            "avoid an excessive number of messages",
+                    new ArrayList<>(),
+                    null));
             return true;
         }
         return false;
     }
 
-    private void reportError(Collection<CodeTodo> codeTodos, String headline) throws Exception {
+    private String formatError(Collection<CodeTodo> codeTodos, String headline) throws Exception {
         StringBuilder report = new StringBuilder();
         report.append(headline);
 
-        for (CodeTodo codeTodo : codeTodos) {
+        // With --blame, the stalest TODOs are listed first, with who to ask about them
+        for (CodeTodo codeTodo : Blame.oldestFirst().sortedCopy(codeTodos)) {
             String filename = codeTodo.getFile().getPath().replace('\\', '/');
             report.append(String.format(
-                    "-  <%s|%s#%s> %s\n",
+                    "-  <%s|%s#%s> %s%s\n",
                     codeTodo.getContainingGitCheckout().getSourceControlLinkFormatter().build(filename, codeTodo.getLineNumber()),
                     codeTodo.getPosixPath(),
                     codeTodo.getLineNumber(),
-                    codeTodo.getLine()
+                    codeTodo.getLine(),
+                    codeTodo.getBlame() == null ? "" : " _(added by " + codeTodo.getBlame().describe() + ")_"
             ));
         }
 
-        slackClient.postMessage(report.toString());
+        return report.toString();
+    }
+
+    /**
+     * Identifies each TODO by its file and text, so that it is still recognised when
+     * lines above it are added or removed
+     */
+    private static List<String> todoIds(Collection<CodeTodo> codeTodos) {
+        return codeTodos.stream()
+                .map(codeTodo -> codeTodo.getPosixPath() + ": " + codeTodo.getLine().trim())
+                .collect(toList());
+    }
+
+    /**
+     * Whether the report has a card or TODO which the last report didn't, or is the
+     * first success after errors, which people should be told about.
+     */
+    private static boolean hasNews(SlackReportState.Report last, List<Draft> drafts) {
+        for (Draft draft : drafts) {
+            SlackReportState.Message message = last.getMessages().get(draft.key);
+            if (message == null || !message.getTodos().containsAll(draft.todos)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SlackReportState.Report editInPlace(SlackReportState.Report last, List<Draft> drafts)
+            throws SlackClientException {
+        SlackReportState.Report report = new SlackReportState.Report();
+        for (Draft draft : drafts) {
+            SlackReportState.Message message = last.getMessages().get(draft.key);
+            if (!message.getFingerprint().equals(draft.fingerprint())) {
+                slackClient.updateMessage(posted(message), draft.text);
+            }
+            report.getMessages().put(draft.key, new SlackReportState.Message(
+                    message.getChannel(),
+                    message.getTs(),
+                    draft.fingerprint(),
+                    draft.todos,
+                    draft.fixedText));
+        }
+        // (Once a message says its TODOs are fixed, it is forgotten)
+        for (Map.Entry<String, SlackReportState.Message> entry : last.getMessages().entrySet()) {
+            if (!report.getMessages().containsKey(entry.getKey()) && entry.getValue().getFixedText() != null) {
+                slackClient.updateMessage(posted(entry.getValue()), entry.getValue().getFixedText());
+            }
+        }
+        return report;
+    }
+
+    private SlackReportState.Report post(List<Draft> drafts) throws SlackClientException {
+        SlackReportState.Report report = new SlackReportState.Report();
+        for (Draft draft : drafts) {
+            SlackClient.PostedMessage posted = slackClient.postMessage(draft.text);
+            report.getMessages().put(draft.key, new SlackReportState.Message(
+                    posted.getChannel(),
+                    posted.getTs(),
+                    draft.fingerprint(),
+                    draft.todos,
+                    draft.fixedText));
+        }
+        return report;
+    }
+
+    private static SlackClient.PostedMessage posted(SlackReportState.Message message) {
+        return new SlackClient.PostedMessage(message.getChannel(), message.getTs());
+    }
+
+    /**
+     * A message to post, and what it's about, e.g. a card's key
+     */
+    private static class Draft {
+        private final String key;
+        private final String text;
+        private final List<String> todos;
+        // What to change the message to once its TODOs are fixed, or null
+        private final String fixedText;
+
+        Draft(String key, String text, List<String> todos, String fixedText) {
+            this.key = key;
+            this.text = text;
+            this.todos = todos;
+            this.fixedText = fixedText;
+        }
+
+        String fingerprint() {
+            return Hashing.sha256().hashString(text, StandardCharsets.UTF_8).toString();
+        }
     }
 }
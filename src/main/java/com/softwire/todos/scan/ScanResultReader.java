@@ -0,0 +1,155 @@
+package com.softwire.todos.scan;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.blame.Blame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Reads a file written by {@link ScanResultWriter}.
+ * <p>
+ * The file is memory-mapped rather than read into memory, and the TODOs are only
+ * decoded as they are iterated over, so a large scan can be processed a TODO at a time.
+ */
+public class ScanResultReader implements Iterable<CodeTodo> {
+    private final List<GitCheckout> checkouts = new ArrayList<>();
+    private final List<File> paths = new ArrayList<>();
+    private final List<Blame> commits = new ArrayList<>();
+    private final int todoCount;
+    // Positioned at the first TODO
+    private final ByteBuffer todos;
+
+    ScanResultReader(ByteBuffer buffer) throws IOException {
+        try {
+            byte[] magic = new byte[ScanResultWriter.MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, ScanResultWriter.MAGIC)) {
+                throw new IOException("This is not a scan result file");
+            }
+            int version = readVarint(buffer);
+            if (version != ScanResultWriter.FORMAT_VERSION) {
+                throw new IOException(String.format(
+                        "This scan result file is version %s, but only version %s can be read. " +
+                                "Please scan again with this version of the tool.",
+                        version,
+                        ScanResultWriter.FORMAT_VERSION));
+            }
+
+            int checkoutCount = readVarint(buffer);
+            for (int i = 0; i < checkoutCount; i++) {
+                File baseDir = new File(readString(buffer));
+                checkouts.add(new GitCheckout(baseDir, SourceControlLinkFormatter.create(
+                        readString(buffer),
+                        readString(buffer),
+                        readString(buffer))));
+            }
+
+            int pathCount = readVarint(buffer);
+            for (int i = 0; i < pathCount; i++) {
+                paths.add(new File(readString(buffer)));
+            }
+
+            int commitCount = readVarint(buffer);
+            for (int i = 0; i < commitCount; i++) {
+                commits.add(new Blame(readString(buffer), readString(buffer), readString(buffer), readVarlong(buffer)));
+            }
+
+            todoCount = readVarint(buffer);
+            todos = buffer.slice();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The scan result file is truncated", e);
+        }
+    }
+
+    public static ScanResultReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            checkArgument(channel.size() <= Integer.MAX_VALUE, "%s is too large to be a scan result file", path);
+            // The mapping stays valid after the channel is closed
+            return new ScanResultReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new IOException("Unable to read " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    public int size() {
+        return todoCount;
+    }
+
+    @Override
+    public Iterator<CodeTodo> iterator() {
+        ByteBuffer buffer = todos.duplicate();
+        return new Iterator<CodeTodo>() {
+            private int remaining = todoCount;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public CodeTodo next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                GitCheckout checkout = checkouts.get(readVarint(buffer));
+                File path = paths.get(readVarint(buffer));
+                int lineNumber = readVarint(buffer);
+                String line = readString(buffer);
+                int commitIndex = readVarint(buffer);
+                Blame blame = commitIndex == 0 ? null : commits.get(commitIndex - 1);
+                return new CodeTodo(path, lineNumber, line, checkout, blame);
+            }
+        };
+    }
+
+    public List<CodeTodo> readAll() {
+        List<CodeTodo> result = new ArrayList<>(todoCount);
+        for (CodeTodo todo : this) {
+            result.add(todo);
+        }
+        return result;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        long result = readVarlong(buffer);
+        if (result > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Malformed varint in scan result file");
+        }
+        return (int) result;
+    }
+
+    private static long readVarlong(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in scan result file");
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[readVarint(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
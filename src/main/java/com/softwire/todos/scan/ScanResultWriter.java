@@ -0,0 +1,120 @@
+package com.softwire.todos.scan;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.blame.Blame;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves the TODOs found by a scan in a compact binary file, so that they can be
+ * checked against JIRA later, or on another machine, by a {@link ScanResultReader}.
+ * <p>
+ * The file is laid out as:
+ * <pre>
+ * magic      "TODOSCAN"
+ * version    varint
+ * checkouts  varint count, then for each: base dir, link type, link base URL, link branch
+ * paths      varint count, then each path
+ * commits    varint count, then for each: commit id, author name, author email,
+ *            varint author time
+ * todos      varint count, then for each: varint checkout index, varint path index,
+ *            varint line number, line text, varint commit index + 1 (or 0 if not blamed)
+ * </pre>
+ * where each varint is an unsigned LEB128 integer, and each string is a varint
+ * length followed by that many bytes of UTF-8. Each checkout, path and commit is
+ * only written once, however many TODOs refer to it.
+ */
+public class ScanResultWriter {
+    static final byte[] MAGIC = "TODOSCAN".getBytes(StandardCharsets.US_ASCII);
+    static final int FORMAT_VERSION = 2;
+
+    /**
+     * Writes the TODOs to the given file. The file is replaced atomically, so that a
+     * reader never sees a partly written file.
+     */
+    public static void write(Path path, List<CodeTodo> todos) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                write(out, todos);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static void write(OutputStream out, List<CodeTodo> todos) throws IOException {
+        // (GitCheckout has identity equality, so each checkout object is listed once)
+        Map<GitCheckout, Integer> checkoutIndexes = new LinkedHashMap<>();
+        Map<String, Integer> pathIndexes = new LinkedHashMap<>();
+        Map<Blame, Integer> commitIndexes = new LinkedHashMap<>();
+        for (CodeTodo todo : todos) {
+            checkoutIndexes.putIfAbsent(todo.getContainingGitCheckout(), checkoutIndexes.size());
+            pathIndexes.putIfAbsent(todo.getPosixPath(), pathIndexes.size());
+            if (todo.getBlame() != null) {
+                commitIndexes.putIfAbsent(todo.getBlame(), commitIndexes.size());
+            }
+        }
+
+        out.write(MAGIC);
+        writeVarint(out, FORMAT_VERSION);
+
+        writeVarint(out, checkoutIndexes.size());
+        for (GitCheckout checkout : checkoutIndexes.keySet()) {
+            SourceControlLinkFormatter linkFormatter = checkout.getSourceControlLinkFormatter();
+            writeString(out, checkout.getBaseDir().getPath());
+            writeString(out, linkFormatter.getType());
+            writeString(out, linkFormatter.getBaseUrl());
+            writeString(out, linkFormatter.getGitBranchName());
+        }
+
+        writeVarint(out, pathIndexes.size());
+        for (String path : pathIndexes.keySet()) {
+            writeString(out, path);
+        }
+
+        writeVarint(out, commitIndexes.size());
+        for (Blame blame : commitIndexes.keySet()) {
+            writeString(out, blame.getCommitId());
+            writeString(out, blame.getAuthorName());
+            writeString(out, blame.getAuthorEmail());
+            writeVarint(out, blame.getAuthorTime());
+        }
+
+        writeVarint(out, todos.size());
+        for (CodeTodo todo : todos) {
+            writeVarint(out, checkoutIndexes.get(todo.getContainingGitCheckout()));
+            writeVarint(out, pathIndexes.get(todo.getPosixPath()));
+            writeVarint(out, todo.getLineNumber());
+            writeString(out, todo.getLine());
+            writeVarint(out, todo.getBlame() == null ? 0 : commitIndexes.get(todo.getBlame()) + 1);
+        }
+    }
+
+    private static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+}
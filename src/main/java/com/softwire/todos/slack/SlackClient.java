@@ -1,10 +1,21 @@
 package com.softwire.todos.slack;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.slack.api.Slack;
 import com.slack.api.methods.MethodsClient;
+import com.slack.api.methods.SlackApiTextResponse;
 import com.slack.api.methods.request.chat.ChatPostMessageRequest;
+import com.slack.api.methods.request.chat.ChatUpdateRequest;
 import com.slack.api.methods.response.chat.ChatPostMessageResponse;
+import com.slack.api.model.block.LayoutBlock;
 import com.slack.api.model.block.SectionBlock;
 import com.slack.api.model.block.composition.MarkdownTextObject;
+import com.softwire.todos.jfr.FlightRecording;
+import com.softwire.todos.jfr.SlackPostEvent;
+import com.softwire.todos.metrics.Metrics;
+
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import static java.util.Arrays.asList;
 
@@ -16,30 +27,96 @@ public class SlackClient {
             "\nThis message was too long for the Slack API and has been truncated.";
 
     private final Config config;
-    private final MethodsClient methodsClient;
+    private final Metrics metrics;
+    private final Supplier<MethodsClient> methodsClient;
 
-    public SlackClient(Config config) {
+    public SlackClient(Config config, Metrics metrics) {
         this.config = config;
-        methodsClient = Slack.getInstance().methods(config.getSlackToken());
+        this.metrics = metrics;
+        // Created on first use, as most runs with nothing to report only post once, at the end
+        methodsClient = Suppliers.memoize(() -> Slack.getInstance().methods(config.getSlackToken()));
+    }
+
+    public String getChannel() {
+        return config.getSlackChannel();
     }
 
-    public void postMessage(String message) throws SlackClientException {
+    /**
+     * @return where the message was posted, so that it can be updated later
+     */
+    public PostedMessage postMessage(String message) throws SlackClientException {
         message = truncateLongMessage(message);
 
         ChatPostMessageRequest request = ChatPostMessageRequest.builder()
                 .channel(config.getSlackChannel())
-                .blocks(asList(SectionBlock.builder().text(MarkdownTextObject.builder().text(message).build()).build()))
+                .blocks(blocks(message))
                 .build();
 
-        ChatPostMessageResponse response;
+        ChatPostMessageResponse response = call(
+                "chat.postMessage",
+                "Unable to post message to slack",
+                config.getSlackChannel(),
+                message,
+                () -> methodsClient.get().chatPostMessage(request));
+        return new PostedMessage(response.getChannel(), response.getTs());
+    }
+
+    /**
+     * Replaces the text of a message posted earlier, e.g. by a previous run.
+     */
+    public void updateMessage(PostedMessage posted, String message) throws SlackClientException {
+        message = truncateLongMessage(message);
+
+        ChatUpdateRequest request = ChatUpdateRequest.builder()
+                .channel(posted.getChannel())
+                .ts(posted.getTs())
+                .blocks(blocks(message))
+                .build();
+
+        call(
+                "chat.update",
+                "Unable to update message in slack",
+                posted.getChannel(),
+                message,
+                () -> methodsClient.get().chatUpdate(request));
+    }
+
+    /**
+     * Makes a call to the Slack API, recording it in the metrics and as a JFR event.
+     */
+    private <T extends SlackApiTextResponse> T call(
+            String method,
+            String failureMessage,
+            String channel,
+            String message,
+            Callable<T> call) throws SlackClientException {
+        T response;
+        long start = System.nanoTime();
+        SlackPostEvent event = FlightRecording.isAvailable()
+                ? SlackPostEvent.begin(method, channel, message.length())
+                : null;
         try {
-            response = methodsClient.chatPostMessage(request);
+            response = call.call();
         } catch (Exception e) {
-            throw new SlackClientException("Unable to post message to slack", e);
+            metrics.recordCall("slack", method, "error", System.nanoTime() - start);
+            if (event != null) {
+                event.end(false, e.toString());
+            }
+            throw new SlackClientException(failureMessage, e);
+        }
+        metrics.recordCall("slack", method, response.isOk() ? "success" : "error",
+                System.nanoTime() - start);
+        if (event != null) {
+            event.end(response.isOk(), response.getError());
         }
         if (!response.isOk()) {
-            throw new SlackClientException("Unable to post message to slack: " + response.getError());
+            throw new SlackClientException(failureMessage + ": " + response.getError());
         }
+        return response;
+    }
+
+    private static List<LayoutBlock> blocks(String message) {
+        return asList(SectionBlock.builder().text(MarkdownTextObject.builder().text(message).build()).build());
     }
 
     private static String truncateLongMessage(String message) {
@@ -49,6 +126,28 @@ public class SlackClient {
         return message;
     }
 
+    /**
+     * Identifies a message which has been posted: its channel's id, and its timestamp
+     * in the channel.
+     */
+    public static class PostedMessage {
+        private final String channel;
+        private final String ts;
+
+        public PostedMessage(String channel, String ts) {
+            this.channel = channel;
+            this.ts = ts;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public String getTs() {
+            return ts;
+        }
+    }
+
     public interface Config {
         String getSlackToken();
         String getSlackChannel();
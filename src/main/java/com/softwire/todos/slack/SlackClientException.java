@@ -2,6 +2,7 @@ package com.softwire.todos.slack;
 
 public class SlackClientException extends Exception {
     public SlackClientException(String message) {
+        super(message);
     }
 
     public SlackClientException(String message, Throwable cause) {
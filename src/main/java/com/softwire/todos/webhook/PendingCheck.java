@@ -0,0 +1,53 @@
+package com.softwire.todos.webhook;
+
+import com.softwire.todos.TodoFinder;
+
+/**
+ * A request to check the commits pushed to one branch of one checkout.
+ * <p>
+ * Several pushes to the same branch are coalesced into a single check of the
+ * range from the earliest "before" to the latest "after".
+ */
+class PendingCheck {
+    private final TodoFinder todoFinder;
+    private final String branchName;
+    private final String before;
+    private final String after;
+
+    PendingCheck(TodoFinder todoFinder, String branchName, String before, String after) {
+        this.todoFinder = todoFinder;
+        this.branchName = branchName;
+        this.before = before;
+        this.after = after;
+    }
+
+    TodoFinder getTodoFinder() {
+        return todoFinder;
+    }
+
+    String getBranchName() {
+        return branchName;
+    }
+
+    String getBefore() {
+        return before;
+    }
+
+    String getAfter() {
+        return after;
+    }
+
+    String getCoalescingKey() {
+        return todoFinder.getGitCheckout().getBaseDir().getAbsolutePath() + "@" + branchName;
+    }
+
+    PendingCheck coalesceWith(PendingCheck later) {
+        return new PendingCheck(todoFinder, branchName, before, later.after);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s..%s in %s",
+                branchName, before, after, todoFinder.getGitCheckout().getBaseDir());
+    }
+}
@@ -0,0 +1,109 @@
+package com.softwire.todos.webhook;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Arrays.asList;
+
+/**
+ * The parts of a GitHub or GitLab "push" webhook payload which we need.
+ * <p>
+ * The two formats agree on "ref", "before" and "after", but name the repository
+ * URLs differently, so we collect all of them.
+ * See https://docs.github.com/en/webhooks/webhook-events-and-payloads#push
+ * and https://docs.gitlab.com/ee/user/project/integrations/webhook_events.html#push-events
+ */
+public class PushEvent {
+    private static final String BRANCH_REF_PREFIX = "refs/heads/";
+    private static final String NULL_SHA = "0000000000000000000000000000000000000000";
+
+    private final Set<String> repositoryUrls;
+    private final String ref;
+    private final String before;
+    private final String after;
+
+    public PushEvent(Set<String> repositoryUrls, String ref, String before, String after) {
+        this.repositoryUrls = repositoryUrls;
+        this.ref = ref;
+        this.before = before;
+        this.after = after;
+    }
+
+    public static PushEvent parse(String json) {
+        JsonObject payload = JsonParser.parseString(json).getAsJsonObject();
+
+        Set<String> urls = new LinkedHashSet<>();
+        // GitHub puts these under "repository", GitLab under "project" (and also,
+        // deprecated, under "repository")
+        for (String container : asList("repository", "project")) {
+            JsonElement element = payload.get(container);
+            if (element != null && element.isJsonObject()) {
+                for (String field : asList(
+                        "clone_url", "ssh_url", "git_url", "html_url", "url",
+                        "git_http_url", "git_ssh_url", "web_url", "homepage")) {
+                    String url = getString(element.getAsJsonObject(), field);
+                    if (url != null) {
+                        urls.add(url);
+                    }
+                }
+            }
+        }
+
+        String ref = getString(payload, "ref");
+        String before = getString(payload, "before");
+        String after = getString(payload, "after");
+        checkArgument(ref != null && before != null && after != null,
+                "Push payload must have \"ref\", \"before\" and \"after\"");
+        checkArgument(!urls.isEmpty(), "Push payload has no repository URLs");
+
+        return new PushEvent(urls, ref, before, after);
+    }
+
+    private static String getString(JsonObject object, String field) {
+        JsonElement element = object.get(field);
+        if (element == null || !element.isJsonPrimitive()) {
+            return null;
+        }
+        return element.getAsString();
+    }
+
+    public Set<String> getRepositoryUrls() {
+        return repositoryUrls;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    /**
+     * The branch name pushed to, or null if this was a push to a tag or other ref
+     */
+    public String getBranchName() {
+        return ref.startsWith(BRANCH_REF_PREFIX) ? ref.substring(BRANCH_REF_PREFIX.length()) : null;
+    }
+
+    public String getBefore() {
+        return before;
+    }
+
+    public String getAfter() {
+        return after;
+    }
+
+    public boolean isBranchDeletion() {
+        return isNullSha(after);
+    }
+
+    /**
+     * Whether this is the all-zeros SHA which the webhooks use for "no commit",
+     * for example as "before" when a branch is created.
+     */
+    public static boolean isNullSha(String sha) {
+        return NULL_SHA.equals(sha);
+    }
+}
@@ -0,0 +1,62 @@
+package com.softwire.todos.webhook;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A bounded queue of {@link PendingCheck}s, which merges a push into any check
+ * already waiting for the same branch rather than queueing it separately.
+ * <p>
+ * A check which has already been taken by a worker is not merged into, so a push
+ * arriving while its branch is being checked will cause one further check.
+ */
+class PushQueue {
+    enum OfferResult {
+        QUEUED,
+        COALESCED,
+        REJECTED
+    }
+
+    private final int capacity;
+    private final Map<String, PendingCheck> pending = new LinkedHashMap<>();
+
+    PushQueue(int capacity) {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    synchronized OfferResult offer(PendingCheck check) {
+        String key = check.getCoalescingKey();
+        PendingCheck existing = pending.get(key);
+        if (existing != null) {
+            pending.put(key, existing.coalesceWith(check));
+            return OfferResult.COALESCED;
+        }
+        if (pending.size() >= capacity) {
+            return OfferResult.REJECTED;
+        }
+        pending.put(key, check);
+        notifyAll();
+        return OfferResult.QUEUED;
+    }
+
+    /**
+     * Removes and returns the oldest pending check, waiting for one if necessary.
+     */
+    synchronized PendingCheck take() throws InterruptedException {
+        while (pending.isEmpty()) {
+            wait();
+        }
+        Iterator<PendingCheck> iterator = pending.values().iterator();
+        PendingCheck next = iterator.next();
+        iterator.remove();
+        return next;
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,314 @@
+package com.softwire.todos.webhook;
+
+import com.google.common.io.ByteStreams;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.TodoCheckerApp;
+import com.softwire.todos.TodoFinder;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An HTTP endpoint which accepts GitHub or GitLab "push" webhooks and runs an
+ * incremental check of the files changed by each push.
+ * <p>
+ * Checks are run one at a time, by a single worker thread, from a bounded
+ * {@link PushQueue}. When the queue is full, pushes are rejected with a
+ * "503 Service Unavailable" so that the sender will retry later.
+ */
+public class WebhookServer {
+    static final String PUSH_PATH = "/push";
+
+    // Beyond this many changed files, it is cheaper to let git grep the whole tree
+    // than to grep each batch of paths in turn, see TodoFinder#findTodosInRevision.
+    private static final int MAX_PATHS_PER_CHECK = 1000;
+    private static final int RETRY_AFTER_SECONDS = 30;
+
+    private final Config config;
+    private final TodoCheckerApp app;
+    private final PushQueue queue;
+    private final Map<String, TodoFinder> todoFindersByRepositoryUrl = new HashMap<>();
+    private final Map<TodoFinder, String> branchNamesByTodoFinder = new HashMap<>();
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private HttpServer server;
+
+    public WebhookServer(Config config, TodoCheckerApp app) throws Exception {
+        this.config = config;
+        this.app = app;
+        this.queue = new PushQueue(config.getWebhookQueueCapacity());
+
+        for (TodoFinder todoFinder : app.getTodoFinders()) {
+            String originUrl = todoFinder.getGitCheckout().getOriginUrl();
+            todoFindersByRepositoryUrl.put(normaliseRepositoryUrl(originUrl), todoFinder);
+            branchNamesByTodoFinder.put(todoFinder, determineBranchName(todoFinder.getGitCheckout()));
+        }
+    }
+
+    /**
+     * The branch whose pushes are checked, failing at startup if the checkout isn't on
+     * one, e.g. as its HEAD is detached, rather than on every push.
+     */
+    private static String determineBranchName(GitCheckout gitCheckout) {
+        String branchName;
+        try {
+            branchName = gitCheckout.determineGitBranchName();
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                    "Unable to find the branch checked out in " + gitCheckout.getBaseDir(), e);
+        }
+        if (branchName == null) {
+            throw new IllegalStateException(
+                    "Unable to find the branch checked out in " + gitCheckout.getBaseDir());
+        }
+        return branchName;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(config.getWebhookPort()), 0);
+        server.createContext(PUSH_PATH, exchange -> {
+            try {
+                handle(exchange);
+            } catch (Exception e) {
+                log.error("Unexpected error handling webhook", e);
+                if (exchange.getResponseCode() == -1) {
+                    respond(exchange, 500, "Internal error");
+                } else {
+                    // The response was already under way, so can't be changed
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+
+        Thread worker = new Thread(this::runChecks, "webhook-worker");
+        worker.setDaemon(true);
+        worker.start();
+
+        log.info("Listening for push webhooks on port {}{}", server.getAddress().getPort(), PUSH_PATH);
+    }
+
+    public void stop() {
+        server.stop(5);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "Only POST is supported");
+            return;
+        }
+
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = ByteStreams.toByteArray(in);
+        }
+
+        if (!isAuthorised(config.getWebhookSecret(), exchange.getRequestHeaders(), body)) {
+            respond(exchange, 401, "Invalid webhook secret");
+            return;
+        }
+
+        if (!isPushEvent(exchange)) {
+            respond(exchange, 200, "Ignored: not a push event");
+            return;
+        }
+
+        PushEvent event;
+        try {
+            event = PushEvent.parse(new String(body, StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            respond(exchange, 400, "Unable to parse push payload: " + e.getMessage());
+            return;
+        }
+
+        TodoFinder todoFinder = findTodoFinder(event);
+        if (todoFinder == null) {
+            respond(exchange, 404, "No checkout configured for " + event.getRepositoryUrls());
+            return;
+        }
+        String branchName = branchNamesByTodoFinder.get(todoFinder);
+        if (!branchName.equals(event.getBranchName())) {
+            respond(exchange, 200, "Ignored: push to " + event.getRef() + ", but only " + branchName + " is checked");
+            return;
+        }
+        if (event.isBranchDeletion()) {
+            respond(exchange, 200, "Ignored: branch deletion");
+            return;
+        }
+
+        PendingCheck check = new PendingCheck(todoFinder, branchName, event.getBefore(), event.getAfter());
+        switch (queue.offer(check)) {
+            case QUEUED:
+                log.info("Queued check of {}", check);
+                respond(exchange, 202, "Queued");
+                break;
+            case COALESCED:
+                log.info("Coalesced push into pending check of {}", check.getCoalescingKey());
+                respond(exchange, 202, "Coalesced with a pending check");
+                break;
+            case REJECTED:
+                log.warn("Rejected push to {}: queue is full", check.getCoalescingKey());
+                exchange.getResponseHeaders().add("Retry-After", Integer.toString(RETRY_AFTER_SECONDS));
+                respond(exchange, 503, "Too many pending checks, retry later");
+                break;
+        }
+    }
+
+    private void runChecks() {
+        while (true) {
+            PendingCheck check;
+            try {
+                check = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                runCheck(check);
+            } catch (Exception e) {
+                log.error("Check of " + check + " failed", e);
+            }
+        }
+    }
+
+    private void runCheck(PendingCheck check) throws Exception {
+        log.info("Checking {} ({} more pending)", check, queue.size());
+        TodoFinder todoFinder = check.getTodoFinder();
+        todoFinder.getGitCheckout().fetchBranch(check.getBranchName());
+
+        List<String> paths;
+        if (PushEvent.isNullSha(check.getBefore())) {
+            // A new branch: there is no previous commit to compare against
+            paths = new ArrayList<>();
+        } else {
+            paths = todoFinder.getGitCheckout().changedPaths(check.getBefore(), check.getAfter());
+            if (paths.isEmpty()) {
+                log.info("No files added or modified by {}", check);
+                return;
+            }
+        }
+        if (paths.size() > MAX_PATHS_PER_CHECK) {
+            paths = new ArrayList<>();
+        }
+
+        // An empty list of paths means the whole tree is scanned
+        boolean success = app.runIncremental(todoFinder, check.getAfter(), paths);
+        log.info("Check of {} {}", check, success ? "passed" : "found inappropriate TODOs");
+    }
+
+    private TodoFinder findTodoFinder(PushEvent event) {
+        for (String url : event.getRepositoryUrls()) {
+            TodoFinder todoFinder = todoFindersByRepositoryUrl.get(normaliseRepositoryUrl(url));
+            if (todoFinder != null) {
+                return todoFinder;
+            }
+        }
+        return null;
+    }
+
+    private boolean isPushEvent(HttpExchange exchange) {
+        String githubEvent = exchange.getRequestHeaders().getFirst("X-GitHub-Event");
+        if (githubEvent != null) {
+            return "push".equals(githubEvent);
+        }
+        String gitlabEvent = exchange.getRequestHeaders().getFirst("X-Gitlab-Event");
+        if (gitlabEvent != null) {
+            return "Push Hook".equals(gitlabEvent);
+        }
+        // Unknown sender: assume that it's a push and let the parser decide
+        return true;
+    }
+
+    /**
+     * If a secret is configured, checks GitHub's HMAC signature or GitLab's token.
+     */
+    static boolean isAuthorised(String secret, Headers headers, byte[] body) {
+        if (secret == null) {
+            return true;
+        }
+        byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+
+        String gitlabToken = headers.getFirst("X-Gitlab-Token");
+        if (gitlabToken != null) {
+            return MessageDigest.isEqual(secretBytes, gitlabToken.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String githubSignature = headers.getFirst("X-Hub-Signature-256");
+        if (githubSignature != null) {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(secretBytes, "HmacSHA256"));
+                StringBuilder expected = new StringBuilder("sha256=");
+                for (byte b : mac.doFinal(body)) {
+                    expected.append(String.format("%02x", b));
+                }
+                return MessageDigest.isEqual(
+                        expected.toString().getBytes(StandardCharsets.UTF_8),
+                        githubSignature.getBytes(StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reduces the various forms of a repository URL to "host/path", so that e.g.
+     * "git@github.com:softwire/todo-checker.git" and
+     * "https://github.com/Softwire/todo-checker" compare equal.
+     */
+    static String normaliseRepositoryUrl(String url) {
+        String result = url.trim().toLowerCase(Locale.ROOT);
+        int schemeEnd = result.indexOf("://");
+        if (schemeEnd >= 0) {
+            result = result.substring(schemeEnd + 3);
+        } else {
+            // scp-like syntax: "user@host:path"
+            result = result.replaceFirst(":", "/");
+        }
+        int userInfoEnd = result.indexOf('@');
+        if (userInfoEnd >= 0 && userInfoEnd < result.indexOf('/')) {
+            result = result.substring(userInfoEnd + 1);
+        }
+        result = result.replaceFirst("^([^/:]+):\\d+/", "$1/");
+        while (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        if (result.endsWith(".git")) {
+            result = result.substring(0, result.length() - ".git".length());
+        }
+        return result;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        exchange.close();
+    }
+
+    public interface Config {
+        Integer getWebhookPort();
+
+        int getWebhookQueueCapacity();
+
+        String getWebhookSecret();
+    }
+}
@@ -0,0 +1,139 @@
+package com.softwire.todos.worktree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The `.gitignore` patterns which apply within one directory: those from the
+ * directory's own `.gitignore`, and from each of its parents up to the root of the
+ * scan. As in git, the last pattern which matches a path decides whether it is
+ * ignored, and a "!" pattern re-includes a path which an earlier pattern ignored.
+ * <p>
+ * See https://git-scm.com/docs/gitignore#_pattern_format
+ */
+class IgnoreRules {
+    static final IgnoreRules NONE = new IgnoreRules(Collections.emptyList());
+
+    private final List<Rule> rules;
+
+    private IgnoreRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * These rules, followed by the patterns from the `.gitignore` in the given directory.
+     *
+     * @param dirPath the directory, relative to the root of the scan, with a trailing
+     *                "/", or "" for the root itself
+     */
+    IgnoreRules withPatterns(String dirPath, List<String> lines) {
+        List<Rule> combined = new ArrayList<>(rules);
+        for (String line : lines) {
+            Rule rule = Rule.parse(dirPath, line);
+            if (rule != null) {
+                combined.add(rule);
+            }
+        }
+        return combined.size() == rules.size() ? this : new IgnoreRules(combined);
+    }
+
+    /**
+     * @param path relative to the root of the scan, with "/" separators
+     */
+    boolean isIgnored(String path, boolean isDirectory) {
+        boolean ignored = false;
+        for (Rule rule : rules) {
+            if (rule.matches(path, isDirectory)) {
+                ignored = !rule.negated;
+            }
+        }
+        return ignored;
+    }
+
+    private static class Rule {
+        private final String baseDir;
+        private final Pattern pattern;
+        // A pattern with a "/" (other than a trailing one) is matched against the path
+        // relative to the .gitignore, otherwise against the file name alone
+        private final boolean anchored;
+        private final boolean directoryOnly;
+        private final boolean negated;
+
+        private Rule(String baseDir, Pattern pattern, boolean anchored, boolean directoryOnly, boolean negated) {
+            this.baseDir = baseDir;
+            this.pattern = pattern;
+            this.anchored = anchored;
+            this.directoryOnly = directoryOnly;
+            this.negated = negated;
+        }
+
+        static Rule parse(String baseDir, String line) {
+            String glob = line.replaceAll("(?<!\\\\)\\s+$", "");
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                return null;
+            }
+            boolean negated = glob.startsWith("!");
+            if (negated) {
+                glob = glob.substring(1);
+            }
+            boolean directoryOnly = glob.endsWith("/");
+            if (directoryOnly) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            boolean anchored = glob.contains("/");
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.isEmpty()) {
+                return null;
+            }
+            return new Rule(baseDir, Pattern.compile(globToRegex(glob)), anchored, directoryOnly, negated);
+        }
+
+        boolean matches(String path, boolean isDirectory) {
+            if ((directoryOnly && !isDirectory) || !path.startsWith(baseDir)) {
+                return false;
+            }
+            String relativePath = path.substring(baseDir.length());
+            String subject = anchored
+                    ? relativePath
+                    : relativePath.substring(relativePath.lastIndexOf('/') + 1);
+            return pattern.matcher(subject).matches();
+        }
+
+        private static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (glob.startsWith("**/", i)) {
+                    // Any number of leading directories, including none
+                    regex.append("(?:.*/)?");
+                    i += 2;
+                } else if (glob.startsWith("**", i)) {
+                    regex.append(".*");
+                    i += 1;
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                    int end = glob.indexOf(']', i + 1);
+                    String characterClass = glob.substring(i + 1, end);
+                    if (characterClass.startsWith("!")) {
+                        characterClass = "^" + characterClass.substring(1);
+                    }
+                    regex.append('[').append(characterClass.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = end;
+                } else if (c == '\\' && i + 1 < glob.length()) {
+                    i += 1;
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
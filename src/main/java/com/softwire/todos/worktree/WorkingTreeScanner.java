@@ -0,0 +1,278 @@
+package com.softwire.todos.worktree;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the TODOs in the files on disk, rather than in the files git knows about,
+ * so that untracked files, build outputs and directories which aren't in git at all
+ * can be checked.
+ * <p>
+ * Each directory is listed by its own fork-join task, so the tree is walked in
+ * parallel. Files and directories matched by a `.gitignore`, or by the exclusions
+ * passed in, are skipped, as are binary files. Each file is searched as bytes, for "todo" as a whole word in any
+ * case, which is what `git grep -iIw todo` matches.
+ */
+public class WorkingTreeScanner {
+    private static final String GITIGNORE = ".gitignore";
+    // Like git, a file is taken to be binary if there is a NUL byte in its first 8000 bytes
+    private static final int BINARY_CHECK_LENGTH = 8000;
+    // Mapping a small file into memory costs more than reading it
+    private static final int MIN_MAPPED_SIZE = 16 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ForkJoinPool pool;
+    private final boolean skipNestedCheckouts;
+
+    public WorkingTreeScanner(int parallelism) {
+        this(parallelism, false);
+    }
+
+    /**
+     * @param skipNestedCheckouts whether to skip directories which are git checkouts in
+     *                            their own right, e.g. submodules which are scanned
+     *                            separately
+     */
+    public WorkingTreeScanner(int parallelism, boolean skipNestedCheckouts) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.skipNestedCheckouts = skipNestedCheckouts;
+    }
+
+    /**
+     * @param exclusions patterns in the `.gitignore` format, relative to the root, for
+     *                   paths which must not be scanned whatever the `.gitignore` files say
+     * @return the lines containing TODOs, ordered by path and then line number, like
+     * the output of `git grep`
+     */
+    public List<CodeTodo> scan(GitCheckout gitCheckout, List<String> exclusions) throws IOException {
+        Path root = gitCheckout.getBaseDir().toPath();
+        IgnoreRules exclusionRules = IgnoreRules.NONE.withPatterns("", exclusions);
+        List<CodeTodo> todos;
+        try {
+            todos = pool.invoke(new DirectoryTask(gitCheckout, exclusionRules, root, "", IgnoreRules.NONE));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        todos.sort(Comparator.comparing(CodeTodo::getPosixPath).thenComparing(CodeTodo::getLineNumber));
+        return todos;
+    }
+
+    private class DirectoryTask extends RecursiveTask<List<CodeTodo>> {
+        private static final long serialVersionUID = 1L;
+
+        private final GitCheckout gitCheckout;
+        // Checked separately, so that a "!" pattern in a .gitignore can't re-include a path
+        private final IgnoreRules exclusionRules;
+        private final Path dir;
+        // Relative to the root of the scan, with a trailing "/" unless this is the root
+        private final String dirPath;
+        private final IgnoreRules parentRules;
+
+        DirectoryTask(
+                GitCheckout gitCheckout,
+                IgnoreRules exclusionRules,
+                Path dir,
+                String dirPath,
+                IgnoreRules parentRules) {
+            this.gitCheckout = gitCheckout;
+            this.exclusionRules = exclusionRules;
+            this.dir = dir;
+            this.dirPath = dirPath;
+            this.parentRules = parentRules;
+        }
+
+        @Override
+        protected List<CodeTodo> compute() {
+            try {
+                IgnoreRules rules = parentRules;
+                Path gitignore = dir.resolve(GITIGNORE);
+                if (Files.isRegularFile(gitignore)) {
+                    rules = rules.withPatterns(dirPath, Files.readAllLines(gitignore, StandardCharsets.UTF_8));
+                }
+
+                List<DirectoryTask> subdirectories = new ArrayList<>();
+                List<Path> files = new ArrayList<>();
+                for (Entry entry : list(dir)) {
+                    String name = entry.path.getFileName().toString();
+                    String path = dirPath + name;
+                    boolean isDirectory = entry.attributes.isDirectory();
+                    if (name.equals(".git")
+                            || exclusionRules.isIgnored(path, isDirectory)
+                            || rules.isIgnored(path, isDirectory)) {
+                        continue;
+                    }
+                    if (isDirectory && skipNestedCheckouts && Files.exists(entry.path.resolve(".git"))) {
+                        log.debug("Not scanning {}, as it is a separate checkout", path);
+                    } else if (isDirectory) {
+                        subdirectories.add(new DirectoryTask(gitCheckout, exclusionRules, entry.path, path + "/", rules));
+                    } else if (entry.attributes.isRegularFile()) {
+                        files.add(entry.path);
+                    }
+                    // (Symbolic links are not followed, as git doesn't follow them either)
+                }
+
+                ForkJoinTask.invokeAll(subdirectories);
+                List<CodeTodo> todos = new ArrayList<>();
+                for (Path file : files) {
+                    todos.addAll(scanFile(gitCheckout, file, dirPath + file.getFileName()));
+                }
+                for (DirectoryTask subdirectory : subdirectories) {
+                    todos.addAll(subdirectory.join());
+                }
+                return todos;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to scan " + dir, e);
+            }
+        }
+    }
+
+    /**
+     * The entries in the directory, with their attributes as read while listing it.
+     */
+    private List<Entry> list(Path dir) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                // (At the maximum depth, directories are visited as files)
+                entries.add(new Entry(file, attributes));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Unable to read {}, so it will not be scanned: {}", file, e.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    private List<CodeTodo> scanFile(GitCheckout gitCheckout, Path file, String path) throws IOException {
+        ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return Collections.emptyList();
+            } else if (size > Integer.MAX_VALUE) {
+                log.warn("{} is too large to scan", file);
+                return Collections.emptyList();
+            } else if (size < MIN_MAPPED_SIZE) {
+                contents = ByteBuffer.allocate((int) size);
+                while (contents.hasRemaining() && channel.read(contents) >= 0) {
+                    // Keep reading
+                }
+                // (Cast so that this still runs on Java 8, where flip() returns a Buffer)
+                ((Buffer) contents).flip();
+            } else {
+                // The mapping stays valid after the channel is closed
+                contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        if (isBinary(contents)) {
+            return Collections.emptyList();
+        }
+        List<CodeTodo> todos = new ArrayList<>();
+        findTodoLines(contents, (lineNumber, line) ->
+                todos.add(new CodeTodo(new File(path), lineNumber, line, gitCheckout)));
+        return todos;
+    }
+
+    private static boolean isBinary(ByteBuffer contents) {
+        int end = Math.min(contents.limit(), BINARY_CHECK_LENGTH);
+        for (int i = 0; i < end; i++) {
+            if (contents.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds each line containing "todo" as a whole word, in any case, in a single pass
+     * over the bytes. The text of each line is decoded as UTF-8, without its "\n" or
+     * "\r\n", as the lines of `git grep` output are read.
+     */
+    static void findTodoLines(ByteBuffer contents, LineConsumer consumer) {
+        int limit = contents.limit();
+        int lineNumber = 1;
+        int lineStart = 0;
+        int i = 0;
+        while (i < limit) {
+            byte b = contents.get(i);
+            if (b == '\n') {
+                lineNumber++;
+                lineStart = i + 1;
+            } else if ((b | 0x20) == 't'
+                    && i + 4 <= limit
+                    && (contents.get(i + 1) | 0x20) == 'o'
+                    && (contents.get(i + 2) | 0x20) == 'd'
+                    && (contents.get(i + 3) | 0x20) == 'o'
+                    && (i == 0 || !isWordByte(contents.get(i - 1)))
+                    && (i + 4 == limit || !isWordByte(contents.get(i + 4)))) {
+                int lineEnd = i + 4;
+                while (lineEnd < limit && contents.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int textEnd = lineEnd > lineStart && contents.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                byte[] line = new byte[textEnd - lineStart];
+                for (int j = 0; j < line.length; j++) {
+                    line[j] = contents.get(lineStart + j);
+                }
+                consumer.accept(lineNumber, new String(line, StandardCharsets.UTF_8));
+                // Continue from the "\n", which starts the next line
+                i = lineEnd;
+                continue;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Whether the byte is part of a word, as `grep -w` sees it: an ASCII letter or
+     * digit, or "_".
+     */
+    private static boolean isWordByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+    }
+
+    interface LineConsumer {
+        void accept(int lineNumber, String line);
+    }
+
+    private static class Entry {
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+    }
+}
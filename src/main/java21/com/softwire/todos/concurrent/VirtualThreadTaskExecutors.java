@@ -0,0 +1,24 @@
+package com.softwire.todos.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs each task on a new virtual thread, so that blocking on JIRA or on a git
+ * command doesn't tie up a platform thread.
+ * <p>
+ * This is only compiled in the Java 21 build, and is loaded by
+ * {@link TaskExecutors#virtualThreads()}.
+ */
+public class VirtualThreadTaskExecutors extends TaskExecutors {
+    @Override
+    protected ExecutorService newExecutor(String name, int parallelism) {
+        // The parallelism is enforced by TaskExecutors.runAll, rather than by pooling
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return true;
+    }
+}
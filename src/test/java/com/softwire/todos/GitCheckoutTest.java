@@ -0,0 +1,80 @@
+package com.softwire.todos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.softwire.todos.TestRepositories.commit;
+import static com.softwire.todos.TestRepositories.git;
+import static com.softwire.todos.TestRepositories.write;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class GitCheckoutTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatCheckedOutSubmodulesAreFound() throws Exception {
+        // Arrange
+        Path root = tempFolder.getRoot().toPath();
+        Path library = root.resolve("library");
+        write(library, "lib.js", "// TODO AAA-1\n");  // todo-checker-ignore
+        git(library, "init", "-q");
+        git(library, "add", "-A");
+        commit(library);
+        Path product = root.resolve("product");
+        write(product, "main.js", "// TODO AAA-2\n");  // todo-checker-ignore
+        git(product, "init", "-q");
+        git(product, "-c", "protocol.file.allow=always", "submodule", "add", "-q", library.toString(), "libs/library");
+        git(product, "-c", "protocol.file.allow=always", "submodule", "add", "-q", library.toString(), "libs/unused");
+        commit(product);
+        git(product, "submodule", "deinit", "-q", "libs/unused");
+        GitCheckout gitCheckout = new GitCheckout(
+                product.toFile(),
+                new SourceControlLinkFormatter.Github("https://github.com/example/product", "master"));
+
+        // Act
+        List<GitCheckout> submodules = gitCheckout.findSubmodules();
+
+        // Assert
+        assertThat(submodules.size(), equalTo(1));
+        GitCheckout submodule = submodules.get(0);
+        assertThat(submodule.getBaseDir(), equalTo(new File(product.toFile(), "libs/library")));
+        // Links go to the commit which is checked out
+        assertThat(
+                submodule.determineGitBranchName(),
+                equalTo(submodule.git(asList("rev-parse", "HEAD")).get(0)));
+    }
+
+    @Test
+    public void testThatASubmoduleNotOnGithubIsLinkedLikeItsSuperproject() throws Exception {
+        // Arrange
+        Path root = tempFolder.getRoot().toPath();
+        Path library = root.resolve("library");
+        write(library, "lib.js", "// TODO AAA-1\n");  // todo-checker-ignore
+        git(library, "init", "-q");
+        git(library, "add", "-A");
+        commit(library);
+        Path product = root.resolve("product");
+        git(product.getParent(), "init", "-q", product.toString());
+        // (So the submodule's "origin" is a local path)
+        git(product, "-c", "protocol.file.allow=always", "submodule", "add", "-q", library.toString(), "libs/library");
+        commit(product);
+        SourceControlLinkFormatter productLinks =
+                new SourceControlLinkFormatter.Github("https://github.com/example/product", "master");
+        GitCheckout gitCheckout = new GitCheckout(product.toFile(), productLinks);
+
+        // Act
+        GitCheckout submodule = gitCheckout.findSubmodules().get(0);
+
+        // Assert
+        assertThat(submodule.getSourceControlLinkFormatter(), equalTo(productLinks));
+    }
+}
@@ -0,0 +1,51 @@
+package com.softwire.todos;
+
+import com.google.common.base.VerifyException;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class GitGrepOutputTest {
+    private static final GitCheckout GIT_CHECKOUT = new GitCheckout(
+            new File("."),
+            new SourceControlLinkFormatter.Github("https://github.com/example/project", "master"));
+
+    @Test
+    public void testThatPathsContainingColonsAreParsed() {
+        // Arrange
+        byte[] output = bytes(
+                "HEAD:docs/12:30 notes.txt\u00001\u0000TODO: caf\u00e9\r\n" +  // todo-checker-ignore
+                "HEAD:docs/12:30 notes.txt\u000012\u0000  // todo 2\n" +  // todo-checker-ignore
+                "HEAD:src/Main.java\u0000345\u0000// TODO AAA-1\n");  // todo-checker-ignore
+
+        // Act
+        List<CodeTodo> todos = GitGrepOutput.parse(output, "HEAD:", GIT_CHECKOUT);
+
+        // Assert
+        assertThat(todos.size(), equalTo(3));
+        assertThat(todos.get(0).getPosixPath(), equalTo("docs/12:30 notes.txt"));
+        assertThat(todos.get(0).getLineNumber(), equalTo(1));
+        assertThat(todos.get(0).getLine(), equalTo("TODO: caf\u00e9"));  // todo-checker-ignore
+        // The path is only decoded once for each file
+        assertThat(todos.get(1).getFile(), sameInstance(todos.get(0).getFile()));
+        assertThat(todos.get(1).getLineNumber(), equalTo(12));
+        assertThat(todos.get(2).getPosixPath(), equalTo("src/Main.java"));
+        assertThat(todos.get(2).getLineNumber(), equalTo(345));
+        assertThat(todos.get(2).getLine(), equalTo("// TODO AAA-1"));  // todo-checker-ignore
+    }
+
+    @Test(expected = VerifyException.class)
+    public void testThatOutputWithoutNulsIsRejected() {
+        GitGrepOutput.parse(bytes("src/Main.java:1:// TODO\n"), "", GIT_CHECKOUT);  // todo-checker-ignore
+    }
+
+    private static byte[] bytes(String output) {
+        return output.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,62 @@
+package com.softwire.todos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.softwire.todos.TestRepositories.git;
+import static com.softwire.todos.TestRepositories.write;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PathExclusionsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatPatternsBecomeExcludePathspecs() {
+        // Act
+        List<String> pathspecs = new PathExclusions(asList("build", "/docs/*.md", "vendor/"), null).toPathspecs();
+
+        // Assert
+        assertThat(pathspecs, equalTo(asList(
+                ":(exclude,glob)**/build",
+                ":(exclude,glob)**/build/**",
+                ":(exclude,glob)docs/*.md",
+                ":(exclude,glob)docs/*.md/**",
+                // As in a .gitignore, only a "/" before the end anchors a pattern
+                ":(exclude,glob)**/vendor/**")));
+    }
+
+    @Test
+    public void testThatGitGrepSkipsExcludedPaths() throws Exception {
+        // Arrange
+        Path root = tempFolder.getRoot().toPath();
+        write(root, PathExclusions.IGNORE_FILE, "# Generated\n*.min.js\n!keep.min.js\n");
+        write(root, "vendor/lib/lib.js", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "src/build/Out.java", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "src/app.min.js", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "src/app.js", "// TODO kept\n");  // todo-checker-ignore
+        git(root, "init", "-q");
+        git(root, "add", "-A");
+        git(root, "-c", "user.name=Test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "Add files");
+        TodoFinder todoFinder = new TodoFinder(new GitCheckout(
+                root.toFile(),
+                new SourceControlLinkFormatter.Github("https://github.com/example/project", "master")));
+
+        // Act
+        List<CodeTodo> todos = todoFinder.findAllTodosInSource(
+                new PathExclusions(asList("vendor", "build/"), null));
+
+        // Assert
+        assertThat(
+                todos.stream().map(CodeTodo::getPosixPath).collect(toList()),
+                equalTo(asList("src/app.js")));
+    }
+}
@@ -0,0 +1,46 @@
+package com.softwire.todos;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Builds the files and git repositories for tests which scan a directory on disk.
+ */
+public class TestRepositories {
+
+    private TestRepositories() {
+    }
+
+    /**
+     * Writes the file at the given path under the root, creating any directories
+     */
+    public static void write(Path root, String path, String contents) throws Exception {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Commits whatever has been staged in the given repository
+     */
+    public static void commit(Path repository) throws Exception {
+        git(repository, "-c", "user.name=Test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "Commit");
+    }
+
+    /**
+     * Runs git in the given directory, and checks that it succeeded
+     */
+    public static void git(Path dir, String... args) throws Exception {
+        List<String> cmd = new ArrayList<>(asList("git"));
+        cmd.addAll(asList(args));
+        Process process = new ProcessBuilder(cmd).directory(dir.toFile()).inheritIO().start();
+        assertThat(process.waitFor(), equalTo(0));
+    }
+}
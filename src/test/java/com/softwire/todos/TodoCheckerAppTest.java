@@ -0,0 +1,132 @@
+package com.softwire.todos;
+
+import com.atlassian.jira.rest.client.api.domain.Issue;
+import com.google.common.collect.Multimap;
+import com.softwire.todos.concurrent.TaskExecutors;
+import com.softwire.todos.history.RunHistory;
+import com.softwire.todos.jira.CommentSnapshot;
+import com.softwire.todos.jira.JiraCallBudget;
+import com.softwire.todos.jira.JiraClient;
+import com.softwire.todos.jira.JiraCommenter;
+import com.softwire.todos.jira.JiraProject;
+import com.softwire.todos.jira.ReconciliationJournal;
+import com.softwire.todos.jira.ResolvedIssueCache;
+import com.softwire.todos.jira.SharedIssueCache;
+import com.softwire.todos.metrics.Metrics;
+import com.softwire.todos.reporter.Reporter;
+import com.softwire.todos.reporter.SlackReportState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TodoCheckerAppTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test(timeout = 60_000)
+    public void testThatMoreCardsThanTheCommentStageCanBufferAreAllCommentedOn() throws Exception {
+        // Arrange
+        // (More than TodoCheckerApp.STAGE_BUFFER_SIZE, with one comment worker)
+        int cardCount = 1500;
+        TodoCheckerConfig config = new TodoCheckerConfig();
+        config.jiraProjects.add(JiraProject.parse("AAA"));
+        config.jiraParallelism = 1;
+        config.applyDefaults();
+
+        // The cards are all in the resolved card cache, so none of them is fetched
+        Path cacheFile = tempFolder.newFile("resolved-cards.json").toPath();
+        StringBuilder cache = new StringBuilder("{\"formatVersion\": 1, \"issues\": {");
+        GitCheckout gitCheckout = new GitCheckout(
+                new File("."),
+                new SourceControlLinkFormatter.Github("https://github.com/example/product", "master"));
+        List<CodeTodo> todos = new ArrayList<>();
+        for (int i = 1; i <= cardCount; i++) {
+            cache.append(i == 1 ? "" : ", ").append(String.format(
+                    "\"AAA-%s\": {\"key\": \"AAA-%s\", \"resolutionName\": \"Fixed\", \"statusName\": \"Closed\", " +
+                            "\"verifiedAt\": %s}",
+                    i, i, System.currentTimeMillis()));
+            todos.add(new CodeTodo(new File("Main.java"), i, "// TODO AAA-" + i, gitCheckout));  // todo-checker-ignore
+        }
+        cache.append("}}");
+        Files.write(cacheFile, cache.toString().getBytes(StandardCharsets.UTF_8));
+
+        Metrics metrics = new Metrics();
+        JiraClient jiraClient = new JiraClient(config, metrics, JiraCallBudget.unlimited());
+        TodoCheckerServices services = new TodoCheckerServices(
+                jiraClient,
+                metrics,
+                TaskExecutors.platformThreads(),
+                null,
+                null,
+                ResolvedIssueCache.read(cacheFile, Duration.ofDays(7)),
+                SharedIssueCache.disabled(),
+                CommentSnapshot.disabled(),
+                ReconciliationJournal.disabled(),
+                RunHistory.disabled(),
+                SlackReportState.disabled());
+        RecordingJiraCommenter jiraCommenter = new RecordingJiraCommenter(config, jiraClient, services.getTaskExecutors());
+        ArrayList<Reporter> reporters = new ArrayList<>();
+        TodoCheckerApp app = new TodoCheckerApp(config, reporters, jiraCommenter, emptyList(), services);
+
+        // Act
+        boolean success = app.check(todos);
+
+        // Assert
+        // (The cards are all resolved)
+        assertThat(success, equalTo(false));
+        assertThat(jiraCommenter.events.get(0), equalTo("begin"));
+        assertThat(jiraCommenter.events.stream().filter("update"::equals).count(), equalTo((long) cardCount));
+        assertThat(jiraCommenter.events.contains("removeStale"), equalTo(true));
+        assertThat(jiraCommenter.events.get(jiraCommenter.events.size() - 1), equalTo("finish"));
+    }
+
+    /**
+     * Records the comment work it is given, without connecting to JIRA
+     */
+    private static class RecordingJiraCommenter extends JiraCommenter {
+        private final List<String> events = new ArrayList<>();
+
+        RecordingJiraCommenter(TodoCheckerConfig config, JiraClient jiraClient, TaskExecutors taskExecutors) {
+            super(config, jiraClient, taskExecutors, CommentSnapshot.disabled(), ReconciliationJournal.disabled());
+        }
+
+        @Override
+        public void beginReconciliation(Multimap<String, CodeTodo> todosByIssueKey) {
+            record("begin");
+        }
+
+        @Override
+        public void updateJiraComment(String issueKey, Collection<CodeTodo> codeTodos) {
+            record("update");
+        }
+
+        @Override
+        public void removeStaleComments(Set<Issue> issuesWithTodos, Set<String> unfetchedIssueKeys) {
+            record("removeStale");
+        }
+
+        @Override
+        public void finishReconciliation() {
+            record("finish");
+        }
+
+        private synchronized void record(String event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.softwire.todos;
+
+import org.junit.Test;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TodoCheckerConfigTest {
+
+    @Test
+    public void testThatTheSharedCardCacheRequiresACommentSnapshot() throws Exception {
+        // Arrange
+        TodoCheckerConfig withoutSnapshot = new TodoCheckerConfig();
+        TodoCheckerConfig withSnapshot = new TodoCheckerConfig();
+
+        // Act
+        try {
+            new CmdLineParser(withoutSnapshot).parseArgument(
+                    "--src", ".", "--shared-card-cache", "cards.log");
+            fail("Expected --shared-card-cache to be rejected without --comment-snapshot");
+        } catch (CmdLineException e) {
+            // Assert
+            assertThat(e.getMessage(), containsString("--comment-snapshot"));
+        }
+        new CmdLineParser(withSnapshot).parseArgument(
+                "--src", ".", "--shared-card-cache", "cards.log", "--comment-snapshot", "comments.json");
+        assertThat(withSnapshot.sharedCardCache, equalTo("cards.log"));
+    }
+}
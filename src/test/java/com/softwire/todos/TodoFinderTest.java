@@ -0,0 +1,31 @@
+package com.softwire.todos;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TodoFinderTest {
+
+    @Test
+    public void testThatPathsAreSplitIntoBatchesOfLimitedLength() throws Exception {
+        // Act
+        List<List<String>> batches = TodoFinder.batchPaths(
+                asList("a/1.java", "a/2.java", "a/3.java", "a/very/long/path/4.java", "a/5.java"),
+                20);
+
+        // Assert
+        assertThat(batches, equalTo(asList(
+                asList("a/1.java", "a/2.java"),
+                singletonList("a/3.java"),
+                singletonList("a/very/long/path/4.java"),
+                singletonList("a/5.java"))));
+        // No paths means the whole tree, in one command
+        assertThat(TodoFinder.batchPaths(emptyList(), 20), equalTo(singletonList(emptyList())));
+    }
+}
@@ -0,0 +1,61 @@
+package com.softwire.todos.blame;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class GitBlamerTest {
+
+    @Test
+    public void testThatEachLineIsAttributedToItsCommit() {
+        // Arrange
+        // (The author of a commit is only given the first time that the commit appears)
+        String first = "d61a67eaa52d33273ab1e1f8368a8cf37a306287";
+        String second = "1ddfa7c967268aab5878d60180924d8af4d07ecb";
+        String notCommitted = "0000000000000000000000000000000000000000";
+
+        // Act
+        Map<Integer, Blame> blames = GitBlamer.parsePorcelain(asList(
+                first + " 1 1 1",
+                "author Jane Smith",
+                "author-mail <jane@example.com>",
+                "author-time 1551657600",
+                "author-tz +0000",
+                "summary Add the first TODO",
+                "boundary",
+                "filename src/Main.java",
+                "\t// TODO AAA-1 tidy up",  // todo-checker-ignore
+                second + " 2 4 2",
+                "author Joe Bloggs",
+                "author-mail <joe@example.com>",
+                "author-time 1583280000",
+                "author-tz +0000",
+                "summary Add more TODOs",
+                "previous " + first + " src/Main.java",
+                "filename src/Main.java",
+                "\t// TODO AAA-2",  // todo-checker-ignore
+                second + " 3 5",
+                "\t// TODO AAA-3",  // todo-checker-ignore
+                notCommitted + " 9 9 1",
+                "author Not Committed Yet",
+                "author-mail <not.committed.yet>",
+                "author-time 1600000000",
+                "author-tz +0000",
+                "summary Version of src/Main.java from src/Main.java",
+                "filename src/Main.java",
+                "\t// TODO"));  // todo-checker-ignore
+
+        // Assert
+        assertThat(blames.size(), equalTo(4));
+        assertThat(blames.get(1), equalTo(new Blame(first, "Jane Smith", "jane@example.com", 1551657600)));
+        assertThat(blames.get(4), equalTo(new Blame(second, "Joe Bloggs", "joe@example.com", 1583280000)));
+        assertThat(blames.get(5), equalTo(blames.get(4)));
+        assertThat(blames.get(1).describe(), equalTo("Jane Smith on 2019-03-04"));
+        assertThat(blames.get(1).isCommitted(), equalTo(true));
+        assertThat(blames.get(9).isCommitted(), equalTo(false));
+    }
+}
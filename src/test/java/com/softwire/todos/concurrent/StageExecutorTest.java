@@ -0,0 +1,104 @@
+package com.softwire.todos.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StageExecutorTest {
+
+    @Test(timeout = 10_000)
+    public void testThatSubmittingBlocksWhileTheBufferIsFull() throws Exception {
+        // Arrange
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        try (StageExecutor stage = TaskExecutors.platformThreads().newStage("test", 1, 2)) {
+            CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+                await(release);
+                record(order, 1);
+            }, stage);
+            CompletableFuture<Void> second = CompletableFuture.runAsync(() -> record(order, 2), stage);
+            CompletableFuture<Void> third = CompletableFuture.runAsync(() -> record(order, 3), stage);
+
+            // Act
+            AtomicBoolean fourthSubmitted = new AtomicBoolean();
+            CompletableFuture<CompletableFuture<Void>> submitFourth = CompletableFuture.supplyAsync(() -> {
+                CompletableFuture<Void> fourth = CompletableFuture.runAsync(() -> record(order, 4), stage);
+                fourthSubmitted.set(true);
+                return fourth;
+            });
+            Thread.sleep(200);
+            boolean submittedWhileFull = fourthSubmitted.get();
+            release.countDown();
+            CompletableFuture.allOf(first, second, third, submitFourth.get(5, TimeUnit.SECONDS))
+                    .get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(submittedWhileFull, equalTo(false));
+            // (With a parallelism of 1, the tasks run in the order they were submitted)
+            assertThat(order, equalTo(asList(1, 2, 3, 4)));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testThatClosingDropsQueuedTasksAndRejectsNewOnes() throws Exception {
+        // Arrange
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        StageExecutor stage = TaskExecutors.platformThreads().newStage("test", 1, 10);
+        stage.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        stage.execute(() -> record(order, 2));
+        stage.execute(() -> record(order, 3));
+        started.await();
+
+        // Act
+        stage.close();
+
+        // Assert
+        // The running task is interrupted, and the queued ones are never run
+        assertThat(interrupted.await(5, TimeUnit.SECONDS), equalTo(true));
+        Thread.sleep(100);
+        assertThat(order.isEmpty(), equalTo(true));
+        for (int i = 0; i < 20; i++) {
+            // (Each rejection gives its slot back, so this never blocks)
+            try {
+                stage.execute(() -> record(order, 4));
+                fail("Expected the task to be rejected");
+            } catch (RejectedExecutionException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static void record(List<Integer> order, int task) {
+        synchronized (order) {
+            order.add(task);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.softwire.todos.history;
+
+import com.google.common.collect.ImmutableMap;
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.errors.TodoCheckerErrors;
+import com.softwire.todos.errors.WithResolvedCardError;
+import com.softwire.todos.errors.WithoutCardError;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class RunHistoryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatQueriesAddUpTheLatestRunOfEachJob() throws Exception {
+        // Arrange
+        RunHistory history = RunHistory.open(tempFolder.newFolder("history").toPath());
+        history.append(record("2024-01-01T10:00:00Z", "A", 1, 0, ImmutableMap.of("ABC-1", 2, "ABC-2", 1)));
+        history.append(record("2024-01-03T10:00:00Z", "B", 0, 0, ImmutableMap.of("XYZ-5", 3)));
+        history.append(record("2024-01-10T10:00:00Z", "A", 2, 1, ImmutableMap.of("ABC-1", 1, "ABC-3", 4)));
+
+        // Act
+        List<List<String>> trend = query(history, "trend", null);
+        List<List<String>> topIssues = query(history, "top-issues", null);
+        List<List<String>> topIssuesForA = query(history, "top-issues", "A");
+
+        // Assert
+        assertThat(trend, equalTo(asList(
+                asList("period", "runs", "todos", "without_card", "invalid_status", "resolved_card"),
+                asList("2024-01-01", "2", "7", "1", "0", "0"),
+                // (Job B didn't run that week, so is counted as it was)
+                asList("2024-01-08", "1", "10", "2", "0", "1"))));
+        assertThat(topIssues, equalTo(asList(
+                asList("card", "todos", "change"),
+                asList("ABC-3", "4", "+4"),
+                asList("XYZ-5", "3", "+0"))));
+        assertThat(topIssuesForA, equalTo(asList(
+                asList("card", "todos", "change"),
+                asList("ABC-3", "4", "+4"),
+                asList("ABC-1", "1", "-1"))));
+    }
+
+    @Test
+    public void testThatAnAppendWhichDidNotFinishIsUndone() throws Exception {
+        // Arrange
+        Path dir = tempFolder.newFolder("history").toPath();
+        RunHistory history = RunHistory.open(dir);
+        history.append(record("2024-01-01T10:00:00Z", null, 1, 0, emptyMap()));
+        // As if the process were killed while appending another run
+        Files.write(dir.resolve(RunHistory.RECORDS_FILE), "{\"timest".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        Files.write(dir.resolve(RunHistory.INDEX_FILE), new byte[5], StandardOpenOption.APPEND);
+
+        // Act
+        history.append(record("2024-01-02T10:00:00Z", null, 2, 0, emptyMap()));
+
+        // Assert
+        List<RunHistory.Entry> entries = history.readIndex();
+        assertThat(entries.size(), equalTo(2));
+        assertThat(history.read(entries.get(0)).getWithoutCard(), equalTo(1));
+        assertThat(history.read(entries.get(1)).getWithoutCard(), equalTo(2));
+    }
+
+    private static RunRecord record(
+            String time,
+            String jobName,
+            int withoutCard,
+            int resolvedCard,
+            Map<String, Integer> todosByIssue) {
+        TodoCheckerErrors errors = TodoCheckerErrors.empty();
+        errors.getWithoutCardErrors().add(new WithoutCardError(todos(withoutCard)));
+        errors.getWithResolvedCardErrors().add(new WithResolvedCardError(todos(resolvedCard), "ABC-1", "Done"));
+        return RunRecord.of(Instant.parse(time).toEpochMilli(), jobName, emptyMap(), todosByIssue, errors);
+    }
+
+    private static List<CodeTodo> todos(int count) {
+        List<CodeTodo> todos = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            todos.add(new CodeTodo(new File("Main.java"), i + 1, "// TODO", null));  // todo-checker-ignore
+        }
+        return todos;
+    }
+
+    private static List<List<String>> query(RunHistory history, String query, String jobName) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RunHistoryQuery(history, new RunHistoryQuery.Config() {
+            @Override
+            public String getHistoryQuery() {
+                return query;
+            }
+
+            @Override
+            public String getHistorySince() {
+                return "2024-01-01";
+            }
+
+            @Override
+            public String getHistoryInterval() {
+                return "week";
+            }
+
+            @Override
+            public int getHistoryTop() {
+                return 2;
+            }
+
+            @Override
+            public String getJobName() {
+                return jobName;
+            }
+        }).run(new PrintStream(out, true, "UTF-8"));
+        return Arrays.stream(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"))
+                .map(line -> asList(line.trim().split(" +")))
+                .collect(toList());
+    }
+}
@@ -0,0 +1,52 @@
+package com.softwire.todos.jira;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CommentSnapshotTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatCommentsAreTrustedUntilTheNextFullVerification() throws Exception {
+        // Arrange
+        Instant now = Instant.parse("2020-06-01T00:00:00Z");
+        CommentSnapshot snapshot = new CommentSnapshot(Duration.ofDays(7), Clock.fixed(now, ZoneOffset.UTC));
+        CommentSnapshot.Job job = snapshot.forJob("ProjectA");
+        assertThat(job.isFullVerificationDue(), equalTo(true));
+        job.putComment("AAA-1", "Some TODOs in code comments reference this card.");
+        job.putComment("AAA-2", "Some TODOs in code comments reference this card.");
+        job.removeComment("AAA-2");
+        job.markVerified();
+        Path file = tempFolder.newFile("comments.json").toPath();
+        snapshot.writeTo(file);
+
+        // Act
+        CommentSnapshot nextDay = CommentSnapshot.read(
+                file, Duration.ofDays(7), Clock.fixed(now.plus(Duration.ofDays(1)), ZoneOffset.UTC));
+        CommentSnapshot nextWeek = CommentSnapshot.read(
+                file, Duration.ofDays(7), Clock.fixed(now.plus(Duration.ofDays(7)), ZoneOffset.UTC));
+
+        // Assert
+        CommentSnapshot.Job reread = nextDay.forJob("ProjectA");
+        assertThat(reread.isFullVerificationDue(), equalTo(false));
+        assertThat(reread.hasComment("AAA-1", "Some TODOs in code comments reference this card."), equalTo(true));
+        assertThat(reread.hasComment("AAA-1", "Something else"), equalTo(false));
+        assertThat(reread.hasComment("AAA-2", "Some TODOs in code comments reference this card."), equalTo(false));
+        // Each job has its own comments
+        assertThat(nextDay.forJob(null).isFullVerificationDue(), equalTo(true));
+        assertThat(nextDay.forJob(null).getIssueKeys().isEmpty(), equalTo(true));
+        assertThat(nextWeek.forJob("ProjectA").isFullVerificationDue(), equalTo(true));
+    }
+}
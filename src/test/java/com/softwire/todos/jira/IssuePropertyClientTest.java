@@ -0,0 +1,143 @@
+package com.softwire.todos.jira;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class IssuePropertyClientTest {
+
+    @Test
+    public void testThatPropertiesCanBeSetSearchedForAndDeleted() throws Exception {
+        // Arrange
+        StubJira jira = new StubJira();
+        try {
+            IssuePropertyClient client = new IssuePropertyClient(jira.getUri(), "user", "password", 5, 5);
+            JsonObject value = new JsonObject();
+            value.addProperty("commentId", 10001);
+            value.addProperty("fingerprint", "abc");
+
+            // Act
+            client.setProperty("AAA-1", "todo-checker-ProjectA", value);
+            client.setProperty("AAA-2", "todo-checker-ProjectA", value);
+            client.setProperty("AAA-3", "todo-checker-ProjectB", value);
+            client.deleteProperty("AAA-2", "todo-checker-ProjectA");
+            // (Deleting a property which isn't there is fine)
+            client.deleteProperty("AAA-2", "todo-checker-ProjectA");
+            Map<String, JsonElement> found = client.search(
+                    "(project = AAA) AND issue.property[todo-checker-ProjectA].fingerprint IS NOT EMPTY",
+                    "todo-checker-ProjectA");
+
+            // Assert
+            assertThat(found.keySet().toString(), equalTo("[AAA-1]"));
+            assertThat(found.get("AAA-1").getAsJsonObject().get("commentId").getAsLong(), equalTo(10001L));
+        } finally {
+            jira.stop();
+        }
+    }
+
+    /**
+     * Just enough of the JIRA entity property REST API to test against, which gzips
+     * its responses when asked to
+     */
+    private static class StubJira {
+        private static final Pattern PROPERTY_PATH = Pattern.compile("/rest/api/2/issue/([^/]+)/properties/([^/]+)");
+        private static final Pattern PROPERTY_JQL = Pattern.compile("issue\\.property\\[([^]]+)]");
+
+        // By "<issue key>/<property key>"
+        private final ConcurrentMap<String, String> properties = new ConcurrentHashMap<>();
+        private final HttpServer server;
+
+        StubJira() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(0), 0);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        URI getUri() {
+            return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            if (!"Basic dXNlcjpwYXNzd29yZA==".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "");
+                return;
+            }
+            String path = exchange.getRequestURI().getPath();
+            Matcher propertyPath = PROPERTY_PATH.matcher(path);
+            if (propertyPath.matches()) {
+                String key = propertyPath.group(1) + "/" + propertyPath.group(2);
+                if (exchange.getRequestMethod().equals("PUT")) {
+                    properties.put(key, new String(
+                            ByteStreams.toByteArray(exchange.getRequestBody()), StandardCharsets.UTF_8));
+                    respond(exchange, 200, "");
+                } else if (exchange.getRequestMethod().equals("DELETE")) {
+                    respond(exchange, properties.remove(key) == null ? 404 : 204, "");
+                } else {
+                    respond(exchange, 405, "");
+                }
+            } else if (path.equals("/rest/api/2/search")) {
+                String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+                Matcher jql = PROPERTY_JQL.matcher(query);
+                if (!jql.find() || !query.contains("properties=" + jql.group(1))) {
+                    respond(exchange, 400, "");
+                    return;
+                }
+                StringBuilder issues = new StringBuilder();
+                int total = 0;
+                for (Map.Entry<String, String> entry : properties.entrySet()) {
+                    String[] keys = entry.getKey().split("/");
+                    if (keys[1].equals(jql.group(1))) {
+                        total++;
+                        issues.append(issues.length() == 0 ? "" : ",").append(String.format(
+                                "{\"key\":\"%s\",\"properties\":{\"%s\":%s}}", keys[0], keys[1], entry.getValue()));
+                    }
+                }
+                respond(exchange, 200, "{\"total\":" + total + ",\"issues\":[" + issues + "]}");
+            } else {
+                respond(exchange, 404, "");
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (bytes.length > 0 && "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+                    out.write(bytes);
+                }
+                bytes = gzipped.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.softwire.todos.jira;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class JiraCallBudgetTest {
+
+    @Test
+    public void testThatReadsAreLimitedToTheBudget() throws Exception {
+        // Arrange
+        JiraCallBudget budget = new JiraCallBudget(2, null, null);
+        // (The server info is fetched whatever the budget)
+        budget.recordUnbudgetedRead("getServerInfo");
+
+        // Act / Assert
+        assertThat(budget.tryAcquireRead("getIssue"), equalTo(true));
+        assertThat(budget.tryAcquireRead("searchJql"), equalTo(true));
+        assertThat(budget.tryAcquireRead("getIssue"), equalTo(false));
+        assertThat(budget.tryAcquireRead("getIssue"), equalTo(false));
+        // Writes have their own budget, which is unlimited here
+        for (int i = 0; i < 100; i++) {
+            assertThat(budget.tryAcquireWrite("addComment"), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testThatIssuePropertyWritesDontSpendTheWriteBudget() throws Exception {
+        // Arrange
+        JiraCallBudget budget = new JiraCallBudget(null, 2, null);
+
+        // Act / Assert
+        for (int i = 0; i < 2; i++) {
+            assertThat(budget.tryAcquireWrite("addComment"), equalTo(true));
+            budget.recordUnbudgetedWrite("setIssueProperty");
+        }
+        assertThat(budget.tryAcquireWrite("addComment"), equalTo(false));
+    }
+
+    @Test
+    public void testThatAnUnlimitedBudgetIsNeverSpent() throws Exception {
+        // Arrange
+        JiraCallBudget budget = JiraCallBudget.unlimited();
+
+        // Act / Assert
+        for (int i = 0; i < 100; i++) {
+            assertThat(budget.tryAcquireRead("getIssue"), equalTo(true));
+            assertThat(budget.tryAcquireWrite("addComment"), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testThatAZeroBudgetAllowsNothing() throws Exception {
+        // Arrange
+        JiraCallBudget budget = new JiraCallBudget(0, 0, null);
+
+        // Act / Assert
+        assertThat(budget.tryAcquireRead("getIssue"), equalTo(false));
+        assertThat(budget.tryAcquireWrite("addComment"), equalTo(false));
+    }
+}
@@ -13,6 +13,7 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
 
@@ -21,7 +22,8 @@ public class JiraClientRetryTest {
     @Test
     public void testThatHttp429IsRetried() throws Exception {
         // Arrange
-        HttpServer server = createServerWithTooManyRequestsResponses();
+        AtomicInteger requestCount = new AtomicInteger(0);
+        HttpServer server = createServerWithTooManyRequestsResponses(requestCount);
         try {
             JiraClient jiraClient = new JiraClient(new JiraClient.Config() {
                 @Override
@@ -48,6 +50,26 @@ public class JiraClientRetryTest {
                 public String getJiraPassword() {
                     return "password";
                 }
+
+                @Override
+                public int getJiraMaxConnections() {
+                    return 20;
+                }
+
+                @Override
+                public int getJiraConnectionTtlSeconds() {
+                    return 30;
+                }
+
+                @Override
+                public int getJiraConnectTimeoutSeconds() {
+                    return 5;
+                }
+
+                @Override
+                public int getJiraReadTimeoutSeconds() {
+                    return 20;
+                }
             });
 
             // Act
@@ -55,6 +77,7 @@ public class JiraClientRetryTest {
 
             // Assert
             assertThat(serverInfo, notNullValue());
+            assertThat(requestCount.get(), equalTo(2));
         } finally {
             server.stop(5);
         }
@@ -64,9 +87,7 @@ public class JiraClientRetryTest {
      * A started HTTP server which will return 429 Too Many Requests on the first
      * request and a 200 OK body on the second request.
      */
-    private HttpServer createServerWithTooManyRequestsResponses() throws IOException {
-        AtomicInteger requestCount = new AtomicInteger(0);
-
+    private HttpServer createServerWithTooManyRequestsResponses(AtomicInteger requestCount) throws IOException {
         HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
         HttpContext context = server.createContext("/");
         context.setHandler((he) -> {
@@ -0,0 +1,54 @@
+package com.softwire.todos.jira;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ReconciliationJournalTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatAnInterruptedRunIsOnlyResumedWithTheSameKey() throws Exception {
+        // Arrange
+        Path dir = tempFolder.newFolder("journal").toPath();
+        ReconciliationJournal.Job interrupted = ReconciliationJournal.open(dir).forJob("Project A");
+        interrupted.begin("key1");
+        interrupted.commentWritten("AAA-1", "fingerprint1");
+        interrupted.commentDeleted("AAA-2");
+        // (The run was killed while writing the next line)
+        Path file = dir.resolve("reconcile-Project_A.jsonl");
+        Files.write(file, "{\"issueKey\":\"AAA-3\",\"fing".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // Act
+        ReconciliationJournal.Job resumed = ReconciliationJournal.open(dir).forJob("Project A");
+        resumed.begin("key1");
+        boolean written = resumed.isCommentWritten("AAA-1", "fingerprint1");
+        boolean writtenWithOtherText = resumed.isCommentWritten("AAA-1", "fingerprint2");
+        boolean deleted = resumed.isCommentDeleted("AAA-2");
+        boolean partlyWritten = resumed.isCommentWritten("AAA-3", "fingerprint3");
+        resumed.commentWritten("AAA-3", "fingerprint3");
+
+        ReconciliationJournal.Job other = ReconciliationJournal.open(dir).forJob("Project A");
+        other.begin("key2");
+        boolean writtenForOtherKey = other.isCommentWritten("AAA-1", "fingerprint1");
+        other.finish();
+
+        // Assert
+        assertThat(written, equalTo(true));
+        assertThat(writtenWithOtherText, equalTo(false));
+        assertThat(deleted, equalTo(true));
+        assertThat(partlyWritten, equalTo(false));
+        assertThat(writtenForOtherKey, equalTo(false));
+        assertThat(Files.exists(file), equalTo(false));
+    }
+}
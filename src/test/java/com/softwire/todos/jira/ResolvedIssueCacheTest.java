@@ -0,0 +1,80 @@
+package com.softwire.todos.jira;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResolvedIssueCacheTest {
+    private static final long DAY = Duration.ofDays(1).toMillis();
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatOnlyCardsResolvedForAWhileAreRemembered() {
+        // Arrange
+        Instant now = Instant.parse("2020-06-01T00:00:00Z");
+        ResolvedIssueCache cache = new ResolvedIssueCache(Duration.ofDays(7), Clock.fixed(now, ZoneOffset.UTC));
+        cache.record("AAA-1", "AAA-1", "Fixed", "Done", now.toEpochMilli() - 30 * DAY);
+        cache.record("AAA-2", "BBB-2", "Fixed", "Done", now.toEpochMilli() - 30 * DAY);
+        // Resolved too recently to trust
+        cache.record("AAA-3", "AAA-3", "Fixed", "Done", now.toEpochMilli() - DAY);
+        // Open
+        cache.record("AAA-4", "AAA-4", null, "In Progress", now.toEpochMilli() - 30 * DAY);
+
+        // Act
+        IssueSummary moved = cache.lookup("AAA-2");
+
+        // Assert
+        assertThat(cache.lookup("AAA-1").getResolutionName(), equalTo("Fixed"));
+        assertThat(moved.getKey(), equalTo("BBB-2"));
+        assertThat(cache.lookup("AAA-3"), nullValue());
+        assertThat(cache.lookup("AAA-4"), nullValue());
+        assertThat(cache.lookup("AAA-5"), nullValue());
+        assertThat(cache.getHits(), equalTo(2));
+    }
+
+    @Test
+    public void testThatCardsAreFetchedAgainAfterTheReverifyInterval() throws Exception {
+        // Arrange
+        Instant now = Instant.parse("2020-06-01T00:00:00Z");
+        ResolvedIssueCache cache = new ResolvedIssueCache(Duration.ofDays(7), Clock.fixed(now, ZoneOffset.UTC));
+        cache.record("AAA-1", "AAA-1", "Fixed", "Done", now.toEpochMilli() - 30 * DAY);
+        Path file = tempFolder.newFile("resolved-cards.json").toPath();
+        cache.writeTo(file);
+
+        // Act
+        ResolvedIssueCache nextDay = ResolvedIssueCache.read(
+                file, Duration.ofDays(7), Clock.fixed(now.plus(Duration.ofDays(1)), ZoneOffset.UTC));
+        ResolvedIssueCache nextWeek = ResolvedIssueCache.read(
+                file, Duration.ofDays(7), Clock.fixed(now.plus(Duration.ofDays(7)), ZoneOffset.UTC));
+
+        // Assert
+        assertThat(nextDay.lookup("AAA-1").getStatusName(), equalTo("Done"));
+        assertThat(nextWeek.lookup("AAA-1"), nullValue());
+    }
+
+    @Test
+    public void testThatReopenedCardsAreForgotten() {
+        // Arrange
+        Instant now = Instant.parse("2020-06-01T00:00:00Z");
+        ResolvedIssueCache cache = new ResolvedIssueCache(Duration.ofDays(7), Clock.fixed(now, ZoneOffset.UTC));
+        cache.record("AAA-1", "AAA-1", "Fixed", "Done", now.toEpochMilli() - 30 * DAY);
+
+        // Act
+        cache.record("AAA-1", "AAA-1", null, "Reopened", now.toEpochMilli());
+
+        // Assert
+        assertThat(cache.lookup("AAA-1"), nullValue());
+    }
+}
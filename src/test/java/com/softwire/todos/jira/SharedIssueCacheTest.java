@@ -0,0 +1,120 @@
+package com.softwire.todos.jira;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SharedIssueCacheTest {
+    private static final Instant NOW = Instant.parse("2020-06-01T00:00:00Z");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatCardsFetchedByOneRunAreUsedByAnother() throws Exception {
+        // Arrange
+        Path file = tempFolder.getRoot().toPath().resolve("shared-cards.log");
+        SharedIssueCache first = cacheAt(file, NOW);
+        SharedIssueCache second = cacheAt(file, NOW);
+        assertThat(first.lookupOrClaim("AAA-1"), nullValue());
+        first.record("AAA-1", "BBB-1", "Fixed", "Done");
+
+        // Act
+        IssueSummary shared = second.lookupOrClaim("AAA-1");
+
+        // Assert
+        assertThat(shared.getKey(), equalTo("BBB-1"));
+        assertThat(shared.getResolutionName(), equalTo("Fixed"));
+        assertThat(second.getHits(), equalTo(1));
+        // Nobody has claimed this one
+        assertThat(second.lookupOrClaim("AAA-2"), nullValue());
+    }
+
+    @Test
+    public void testThatARunWaitsForACardClaimedByAnother() throws Exception {
+        // Arrange
+        Path file = tempFolder.getRoot().toPath().resolve("shared-cards.log");
+        SharedIssueCache first = cacheAt(file, NOW);
+        SharedIssueCache second = cacheAt(file, NOW);
+        assertThat(first.lookupOrClaim("AAA-1"), nullValue());
+        assertThat(first.lookupOrClaim("AAA-2"), nullValue());
+
+        // Act
+        CompletableFuture<IssueSummary> fetched = CompletableFuture.supplyAsync(() -> lookupOrClaim(second, "AAA-1"));
+        CompletableFuture<IssueSummary> released = CompletableFuture.supplyAsync(() -> lookupOrClaim(second, "AAA-2"));
+        Thread.sleep(300);
+        boolean waited = !fetched.isDone() && !released.isDone();
+        first.record("AAA-1", "AAA-1", null, "In Progress");
+        first.release("AAA-2");
+
+        // Assert
+        assertThat(waited, equalTo(true));
+        assertThat(fetched.get().getStatusName(), equalTo("In Progress"));
+        // The claim was given up, so the second run must fetch the card itself
+        assertThat(released.get(), nullValue());
+    }
+
+    @Test
+    public void testThatARunStopsWaitingForACardAfterAWhile() throws Exception {
+        // Arrange
+        Path file = tempFolder.getRoot().toPath().resolve("shared-cards.log");
+        SharedIssueCache first = cacheAt(file, NOW);
+        SharedIssueCache second = new SharedIssueCache(
+                file, Duration.ofMinutes(5), Duration.ofMillis(300), Clock.fixed(NOW, ZoneOffset.UTC));
+        assertThat(first.lookupOrClaim("AAA-1"), nullValue());
+
+        // Act
+        long start = System.nanoTime();
+        IssueSummary issue = second.lookupOrClaim("AAA-1");
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Assert
+        // The first run never fetched the card, so the second must fetch it itself
+        assertThat(issue, nullValue());
+        assertTrue("Waited for " + waitedMillis + "ms", waitedMillis >= 300);
+    }
+
+    @Test
+    public void testThatOldCardsAndClaimsAreIgnored() throws Exception {
+        // Arrange
+        Path file = tempFolder.getRoot().toPath().resolve("shared-cards.log");
+        SharedIssueCache first = cacheAt(file, NOW);
+        first.lookupOrClaim("AAA-1");
+        first.record("AAA-1", "AAA-1", "Fixed", "Done");
+        // Claimed by a run which then died
+        first.lookupOrClaim("AAA-2");
+
+        // Act
+        SharedIssueCache later = cacheAt(file, NOW.plus(Duration.ofMinutes(10)));
+
+        // Assert
+        assertThat(later.lookupOrClaim("AAA-1"), nullValue());
+        assertThat(later.lookupOrClaim("AAA-2"), nullValue());
+        assertThat(later.getHits(), equalTo(0));
+    }
+
+    private static SharedIssueCache cacheAt(Path file, Instant now) {
+        return new SharedIssueCache(file, Duration.ofMinutes(5), Duration.ofMinutes(1), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static IssueSummary lookupOrClaim(SharedIssueCache cache, String key) {
+        try {
+            return cache.lookupOrClaim(key);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.softwire.todos.metrics;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void testThatCallsAreWrittenAsACounterAndAHistogram() throws Exception {
+        // Arrange
+        Metrics metrics = new Metrics();
+
+        // Act
+        metrics.recordCall("jira", "getIssue", "success", TimeUnit.MILLISECONDS.toNanos(300));
+        metrics.recordCall("jira", "getIssue", "success", TimeUnit.MILLISECONDS.toNanos(2000));
+        metrics.recordCall("slack", "say \"hi\" \\ bye", "error", TimeUnit.MILLISECONDS.toNanos(10));
+        String text = metrics.toPrometheusText();
+
+        // Assert
+        assertThat(text, containsString(
+                "# TYPE todo_checker_client_calls_total counter\n" +
+                "todo_checker_client_calls_total{client=\"jira\",method=\"getIssue\",outcome=\"success\"} 2\n" +
+                "todo_checker_client_calls_total{client=\"slack\",method=\"say \\\"hi\\\" \\\\ bye\",outcome=\"error\"} 1\n"));
+        assertThat(text, containsString(
+                "# TYPE todo_checker_client_call_duration_seconds histogram\n" +
+                bucket("0.05", 0) +
+                bucket("0.1", 0) +
+                bucket("0.25", 0) +
+                bucket("0.5", 1) +
+                bucket("1.0", 1) +
+                bucket("2.5", 2) +
+                bucket("5.0", 2) +
+                bucket("10.0", 2) +
+                bucket("30.0", 2) +
+                bucket("+Inf", 2) +
+                "todo_checker_client_call_duration_seconds_sum{client=\"jira\",method=\"getIssue\",outcome=\"success\"} 2.300000\n" +
+                "todo_checker_client_call_duration_seconds_count{client=\"jira\",method=\"getIssue\",outcome=\"success\"} 2\n"));
+
+        JsonObject json = JsonParser.parseString(metrics.toJson()).getAsJsonObject();
+        JsonObject jiraCalls = json.getAsJsonArray("clientCalls").get(0).getAsJsonObject();
+        assertThat(jiraCalls.get("method").getAsString(), equalTo("getIssue"));
+        assertThat(jiraCalls.get("count").getAsLong(), equalTo(2L));
+        assertThat(jiraCalls.getAsJsonObject("buckets").get("0.5").getAsLong(), equalTo(1L));
+        assertThat(jiraCalls.getAsJsonObject("buckets").get("+Inf").getAsLong(), equalTo(2L));
+    }
+
+    @Test
+    public void testThatTheTimeWithCallsInFlightAtTheConnectionLimitIsAGauge() throws Exception {
+        // Arrange
+        Metrics metrics = new Metrics();
+        metrics.setConnectionLimit("jira", 2);
+
+        // Act
+        metrics.timeCall("jira", "getIssue", () -> metrics.timeCall("jira", "getIssue", () -> {
+            Thread.sleep(50);
+            return null;
+        }));
+        // (One call at a time never reaches the limit)
+        metrics.timeCall("jira", "getIssue", () -> {
+            Thread.sleep(50);
+            return null;
+        });
+        String text = metrics.toPrometheusText();
+
+        // Assert
+        assertThat(text, containsString(
+                "# TYPE todo_checker_client_peak_in_flight_calls gauge\n" +
+                "todo_checker_client_peak_in_flight_calls{client=\"jira\"} 2\n"));
+        assertThat(text, containsString(
+                "# TYPE todo_checker_client_connection_limit gauge\n" +
+                "todo_checker_client_connection_limit{client=\"jira\"} 2\n"));
+        String atLimit = "todo_checker_client_in_flight_at_limit_seconds{client=\"jira\"} ";
+        assertThat(text, containsString("# TYPE todo_checker_client_in_flight_at_limit_seconds gauge\n" + atLimit));
+        int start = text.indexOf(atLimit) + atLimit.length();
+        double seconds = Double.parseDouble(text.substring(start, text.indexOf('\n', start)));
+        assertTrue("At the limit for " + seconds + "s", seconds >= 0.05 && seconds < 0.1);
+    }
+
+    private static String bucket(String le, int count) {
+        return "todo_checker_client_call_duration_seconds_bucket" +
+                "{client=\"jira\",method=\"getIssue\",outcome=\"success\",le=\"" + le + "\"} " + count + "\n";
+    }
+}
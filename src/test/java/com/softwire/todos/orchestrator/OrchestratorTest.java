@@ -0,0 +1,97 @@
+package com.softwire.todos.orchestrator;
+
+import com.softwire.todos.TodoCheckerConfig;
+import com.softwire.todos.TodoCheckerReturnCode;
+import com.softwire.todos.TodoCheckerServices;
+import com.softwire.todos.concurrent.TaskExecutors;
+import com.softwire.todos.history.RunHistory;
+import com.softwire.todos.jira.CommentSnapshot;
+import com.softwire.todos.jira.JiraCallBudget;
+import com.softwire.todos.jira.JiraClient;
+import com.softwire.todos.jira.ReconciliationJournal;
+import com.softwire.todos.jira.ResolvedIssueCache;
+import com.softwire.todos.jira.SharedIssueCache;
+import com.softwire.todos.metrics.Metrics;
+import com.softwire.todos.reporter.SlackReportState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.softwire.todos.TestRepositories.commit;
+import static com.softwire.todos.TestRepositories.git;
+import static com.softwire.todos.TestRepositories.write;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class OrchestratorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatARepositoryWhichFailsDoesNotStopTheOthers() throws Exception {
+        // Arrange
+        Path root = tempFolder.getRoot().toPath();
+        // (This fails when the TODOs are grepped for)
+        Path notGit = root.resolve("not-git");
+        write(notGit, "Main.java", "class Main {}\n");
+        Path clean = root.resolve("clean");
+        write(clean, "Main.java", "class Main {}\n");
+        git(clean, "init", "-q");
+        git(clean, "add", "-A");
+        commit(clean);
+        Path manifestFile = root.resolve("manifest.json");
+        write(root, "manifest.json", "{\"repositories\": [" +
+                repository(root.resolve("missing"), "Missing") + ", " +
+                repository(notGit, "NotGit") + ", " +
+                repository(clean, "Clean") + "]}");
+
+        TodoCheckerConfig config = new TodoCheckerConfig();
+        // One at a time, so the last repository is only checked after the others have failed
+        config.parallelism = 1;
+        config.summaryFile = root.resolve("summary.txt").toString();
+        config.applyDefaults();
+        Metrics metrics = new Metrics();
+        TodoCheckerServices services = new TodoCheckerServices(
+                new JiraClient(config, metrics, JiraCallBudget.unlimited()),
+                metrics,
+                TaskExecutors.platformThreads(),
+                null,
+                null,
+                ResolvedIssueCache.disabled(),
+                SharedIssueCache.disabled(),
+                CommentSnapshot.disabled(),
+                ReconciliationJournal.disabled(),
+                RunHistory.disabled(),
+                SlackReportState.disabled());
+        Orchestrator orchestrator = new Orchestrator(config, RepositoryManifest.read(manifestFile), services);
+
+        // Act
+        TodoCheckerReturnCode returnCode = orchestrator.run();
+
+        // Assert
+        assertThat(returnCode, equalTo(TodoCheckerReturnCode.ERROR));
+        List<String> summary = Files.readAllLines(root.resolve("summary.txt"), StandardCharsets.UTF_8);
+        // (The failures' messages may take several lines)
+        assertThat(summary.get(0).startsWith("Missing: failed: "), equalTo(true));
+        assertThat(summary.stream().anyMatch(line -> line.startsWith("NotGit: failed: ")), equalTo(true));
+        assertThat(summary.contains("Clean: OK"), equalTo(true));
+        assertThat(summary.get(summary.size() - 1).startsWith("Total: 3 repositories, 2 failed to run"),
+                equalTo(true));
+    }
+
+    private static String repository(Path src, String jobName) {
+        return String.format(
+                "{\"src\": \"%s\", \"jobName\": \"%s\", \"githubUrl\": \"https://github.com/example/%s\", " +
+                        "\"branch\": \"master\"}",
+                src.toString().replace("\\", "\\\\"),
+                jobName,
+                jobName);
+    }
+}
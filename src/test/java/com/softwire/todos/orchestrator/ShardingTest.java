@@ -0,0 +1,128 @@
+package com.softwire.todos.orchestrator;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShardingTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatEachRepositoryIsInExactlyOneShard() throws Exception {
+        // Arrange
+        RepositoryManifest manifest = manifestWithRepositories(50);
+
+        // Act
+        List<String> jobNames = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobNames.addAll(jobNames(manifest.getRepositoriesInShard(i, 3)));
+        }
+
+        // Assert
+        assertThat(jobNames.size(), equalTo(50));
+        assertThat(jobNames.stream().distinct().count(), equalTo(50L));
+    }
+
+    @Test
+    public void testThatAddingAShardOnlyMovesRepositoriesOntoIt() throws Exception {
+        // Arrange
+        RepositoryManifest manifest = manifestWithRepositories(50);
+
+        // Act / Assert
+        for (int i = 0; i < 3; i++) {
+            List<String> before = jobNames(manifest.getRepositoriesInShard(i, 3));
+            List<String> after = jobNames(manifest.getRepositoriesInShard(i, 4));
+            assertThat(before.containsAll(after), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testThatMergeReadsBackEveryShard() throws Exception {
+        // Arrange
+        RepositoryManifest manifest = manifestWithRepositories(10);
+        Path shardDir = tempFolder.newFolder("shards").toPath();
+        writeShards(manifest, shardDir, 2);
+
+        // Act
+        Map<String, ShardFile.RepositoryScan> scans = ShardFile.readAll(shardDir, manifest);
+
+        // Assert
+        assertThat(scans.size(), equalTo(10));
+        List<CodeTodo> todos = scans.get("Job3").toCodeTodos();
+        assertThat(todos.size(), equalTo(1));
+        assertThat(todos.get(0).getLine(), equalTo("// TODO JIRA-3 fix this"));
+        assertThat(todos.get(0).getSourceControlLinkUrl(),
+                equalTo("https://github.com/example/job3/blob/master/src/Job3.java#L3"));
+    }
+
+    @Test
+    public void testThatMergeRefusesAnIncompleteSetOfShards() throws Exception {
+        // Arrange
+        RepositoryManifest manifest = manifestWithRepositories(10);
+        Path shardDir = tempFolder.newFolder("shards").toPath();
+        writeShards(manifest, shardDir, 2);
+        Files.delete(shardDir.resolve(ShardFile.fileName(1, 2)));
+
+        // Act / Assert
+        try {
+            ShardFile.readAll(shardDir, manifest);
+            fail("Expected the missing shard to be reported");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().contains("shard 1 of 2"), equalTo(true));
+        }
+    }
+
+    private static void writeShards(RepositoryManifest manifest, Path shardDir, int shardCount) throws Exception {
+        for (int i = 0; i < shardCount; i++) {
+            List<ShardFile.RepositoryScan> scans = new ArrayList<>();
+            for (RepositoryManifest.Repository repository : manifest.getRepositoriesInShard(i, shardCount)) {
+                String jobName = repository.getJobName();
+                GitCheckout gitCheckout = new GitCheckout(
+                        new File(repository.getSrc()),
+                        new SourceControlLinkFormatter.Github(
+                                "https://github.com/example/" + jobName.toLowerCase(), "master"));
+                String number = jobName.substring("Job".length());
+                CodeTodo todo = new CodeTodo(
+                        new File("src/" + jobName + ".java"),
+                        Integer.parseInt(number),
+                        "// TODO JIRA-" + number + " fix this",  // todo-checker-ignore
+                        gitCheckout);
+                scans.add(ShardFile.RepositoryScan.of(jobName, gitCheckout, singletonList(todo)));
+            }
+            new ShardFile(i, shardCount, scans).writeTo(shardDir);
+        }
+    }
+
+    private RepositoryManifest manifestWithRepositories(int count) throws Exception {
+        String repositories = IntStream.range(0, count)
+                .mapToObj(i -> String.format("{\"src\": \"/src/job%s\", \"jobName\": \"Job%s\"}", i, i))
+                .collect(Collectors.joining(","));
+        Path path = Files.createTempFile(tempFolder.getRoot().toPath(), "manifest", ".json");
+        Files.write(path, ("{\"repositories\": [" + repositories + "]}").getBytes(StandardCharsets.UTF_8));
+        return RepositoryManifest.read(path);
+    }
+
+    private static List<String> jobNames(List<RepositoryManifest.Repository> repositories) {
+        return repositories.stream().map(RepositoryManifest.Repository::getJobName).collect(Collectors.toList());
+    }
+}
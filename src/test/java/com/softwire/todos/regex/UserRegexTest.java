@@ -0,0 +1,84 @@
+package com.softwire.todos.regex;
+
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class UserRegexTest {
+
+    @Test
+    public void testThatMatchesAreFound() {
+        // Arrange
+        UserRegex regex = UserRegex.compile("test", "\\b(foo|bar)-(?P<id>[0-9]+)", 0, Duration.ofSeconds(10));
+
+        // Act
+        String id = regex.find("// TODO: bar-123 later", null).group("id");
+
+        // Assert
+        assertThat(id, equalTo("123"));
+        assertThat(regex.find("// TODO: baz-123 later", null), nullValue());
+    }
+
+    @Test
+    public void testThatJavaStyleNamedGroupsAreAccepted() {
+        // Arrange
+        UserRegex regex = UserRegex.compile("test", "(?<project>[A-Z]+)-(?<id>[0-9]+)", 0, Duration.ofSeconds(10));
+
+        // Act
+        String id = regex.find("// TODO: ABC-123 later", null).group("id");
+
+        // Assert
+        assertThat(id, equalTo("123"));
+        // Only groups are rewritten, not escaped brackets, character classes or lookbehind
+        assertThat(UserRegex.toRe2NamedGroups("\\(?<a>[(?<]"), equalTo("\\(?<a>[(?<]"));
+        assertThat(UserRegex.toRe2NamedGroups("(?<=a)(?<!b)"), equalTo("(?<=a)(?<!b)"));
+    }
+
+    @Test
+    public void testThatBacktrackingOnlySyntaxIsRejected() {
+        try {
+            UserRegex.compile("--exclude-path-regex", "(a)\\1", 0, Duration.ofSeconds(10));
+            fail("Expected the backreference to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().startsWith("Invalid --exclude-path-regex"), equalTo(true));
+        }
+        try {
+            UserRegex.compile("--exclude-path-regex", "(?<!test/)Main", 0, Duration.ofSeconds(10));
+            fail("Expected the lookbehind to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().startsWith("Invalid --exclude-path-regex"), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testThatNestedRepetitionIsRejected() {
+        assertThat(UserRegex.estimateSize("[a-z]{1000}"), equalTo(1000L));
+        assertThat(UserRegex.estimateSize("(?i)(?P<id>ab|c)+"), equalTo(6L));
+        try {
+            UserRegex.compile("test", "((a{100}){100}){100}", 0, Duration.ofSeconds(10));
+            fail("Expected the regex to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().contains("too complex"), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testThatSlowLinesAreGivenUpOn() {
+        // Arrange
+        UserRegex regex = UserRegex.compile("test", "(x+x+)+y", 0, Duration.ZERO);
+        // This would match, given long enough
+        String line = Strings.repeat("x", 100000) + "y";
+
+        // Act
+        Object match = regex.find(line, "bundle.min.js:1");
+
+        // Assert
+        assertThat(match, nullValue());
+    }
+}
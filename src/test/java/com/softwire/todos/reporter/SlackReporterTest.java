@@ -0,0 +1,100 @@
+package com.softwire.todos.reporter;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.TodoCheckerConfig;
+import com.softwire.todos.errors.TodoCheckerErrors;
+import com.softwire.todos.errors.WithResolvedCardError;
+import com.softwire.todos.errors.WithoutCardError;
+import com.softwire.todos.jira.JiraClient;
+import com.softwire.todos.metrics.Metrics;
+import com.softwire.todos.slack.SlackClient;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SlackReporterTest {
+    private static final GitCheckout CHECKOUT = new GitCheckout(
+            new File("."),
+            new SourceControlLinkFormatter.Github("https://github.com/example/project", "master"));
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatTheLastReportIsEditedUnlessThereIsSomethingNew() throws Exception {
+        // Arrange
+        SlackReportState state = SlackReportState.open(tempFolder.getRoot().toPath().resolve("state.json"));
+        FakeSlackClient slack = new FakeSlackClient();
+        SlackReporter reporter = new SlackReporter(slack, new JiraClient(new TodoCheckerConfig()), state, "Job");
+
+        // Act
+        reporter.report(errors(todo("A.java", 1, "// TODO: ABC-1 one"), todo("B.java", 1, "// TODO two")));  // todo-checker-ignore
+        // (The TODOs have moved down a line, so only the links change)
+        reporter.report(errors(todo("A.java", 2, "// TODO: ABC-1 one"), todo("B.java", 2, "// TODO two")));  // todo-checker-ignore
+        reporter.report(errors(todo("A.java", 2, "// TODO: ABC-1 one"), todo("B.java", 2, "// TODO two")));  // todo-checker-ignore
+        // (The TODO without a card has been fixed)
+        reporter.report(errors(todo("A.java", 2, "// TODO: ABC-1 one"), null));  // todo-checker-ignore
+        // (There is a new TODO without a card)
+        reporter.report(errors(todo("A.java", 2, "// TODO: ABC-1 one"), todo("C.java", 1, "// TODO three")));  // todo-checker-ignore
+
+        // Assert
+        assertThat(slack.calls, equalTo(asList(
+                "post 1", "post 2",
+                "update 1", "update 2",
+                "update 2",
+                "post 3", "post 4")));
+    }
+
+    private static CodeTodo todo(String path, int lineNumber, String line) {
+        return new CodeTodo(new File(path), lineNumber, line, CHECKOUT);
+    }
+
+    private static TodoCheckerErrors errors(CodeTodo onResolvedCard, CodeTodo withoutCard) {
+        TodoCheckerErrors errors = TodoCheckerErrors.empty();
+        errors.getWithResolvedCardErrors().add(
+                new WithResolvedCardError(singletonList(onResolvedCard), "ABC-1", "Done"));
+        if (withoutCard != null) {
+            errors.getWithoutCardErrors().add(new WithoutCardError(singletonList(withoutCard)));
+        }
+        return errors;
+    }
+
+    /**
+     * Records the calls made, and numbers the messages posted
+     */
+    private static class FakeSlackClient extends SlackClient {
+        private final List<String> calls = new ArrayList<>();
+
+        FakeSlackClient() {
+            super(new TodoCheckerConfig(), new Metrics());
+        }
+
+        @Override
+        public String getChannel() {
+            return "#todos";
+        }
+
+        @Override
+        public PostedMessage postMessage(String message) {
+            String ts = Long.toString(calls.stream().filter(call -> call.startsWith("post")).count() + 1);
+            calls.add("post " + ts);
+            return new PostedMessage("C123", ts);
+        }
+
+        @Override
+        public void updateMessage(PostedMessage posted, String message) {
+            calls.add("update " + posted.getTs());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.softwire.todos.scan;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.blame.Blame;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ScanResultFileTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatTodosAreReadBackFromAFile() throws Exception {
+        // Arrange
+        GitCheckout projectA = new GitCheckout(
+                new File("/src/project-a"),
+                new SourceControlLinkFormatter.Github("https://github.com/example/project-a", "master"));
+        GitCheckout projectB = new GitCheckout(
+                new File("/src/project-b"),
+                new SourceControlLinkFormatter.Gitblit("https://example.com/gitblit?r=project-b.git", "develop"));
+        List<CodeTodo> todos = asList(
+                new CodeTodo(new File("src/Main.java"), 12, "// TODO AAA-1 tidy up", projectA,  // todo-checker-ignore
+                        new Blame("d61a67eaa52d33273ab1e1f8368a8cf37a306287", "Jane Smith", "jane@example.com", 1551657600L)),
+                new CodeTodo(new File("src/Main.java"), 300, "// TODO AAA-2 \u00e9t\u00e9", projectA),  // todo-checker-ignore
+                new CodeTodo(new File("src/Main.java"), 7, "// TODO", projectB));  // todo-checker-ignore
+        Path path = tempFolder.newFile("scan.bin").toPath();
+
+        // Act
+        ScanResultWriter.write(path, todos);
+        ScanResultReader reader = ScanResultReader.open(path);
+        List<CodeTodo> readBack = reader.readAll();
+
+        // Assert
+        assertThat(reader.size(), equalTo(3));
+        assertThat(readBack, equalTo(todos));
+        for (int i = 0; i < todos.size(); i++) {
+            assertThat(readBack.get(i).getSourceControlLinkUrl(), equalTo(todos.get(i).getSourceControlLinkUrl()));
+            assertThat(readBack.get(i).getContainingGitCheckout().getBaseDir(),
+                    equalTo(todos.get(i).getContainingGitCheckout().getBaseDir()));
+            assertThat(readBack.get(i).getBlame(), equalTo(todos.get(i).getBlame()));
+        }
+    }
+
+    @Test
+    public void testThatOtherVersionsAreRefused() throws Exception {
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ScanResultWriter.write(out, asList());
+        byte[] bytes = out.toByteArray();
+        bytes[ScanResultWriter.MAGIC.length] = ScanResultWriter.FORMAT_VERSION + 1;
+
+        // Act / Assert
+        try {
+            new ScanResultReader(ByteBuffer.wrap(bytes));
+            fail("Expected the file to be refused");
+        } catch (IOException e) {
+            assertThat(e.getMessage().contains("version " + (ScanResultWriter.FORMAT_VERSION + 1)), equalTo(true));
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.softwire.todos.synthetic;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.PathExclusions;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.TodoCheckerConfig;
+import com.softwire.todos.TodoCheckerMain;
+import com.softwire.todos.TodoFinder;
+import com.softwire.todos.worktree.WorkingTreeScanner;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Measures how the time taken to scan grows with the size of the codebase, by
+ * scanning a {@link SyntheticRepoGenerator synthetic repository} of each of the
+ * given sizes.
+ * <p>
+ * Each repository is scanned with `git grep` and with the {@link WorkingTreeScanner},
+ * in this JVM, taking the best of several runs. With `--cli`, it is also scanned by
+ * a whole `--scan-only` run of the tool, in a new JVM, so that the time includes
+ * startup and saving the scan. The results are printed as CSV, e.g.
+ * <pre>
+ *   sbt "test:runMain com.softwire.todos.synthetic.ScanBenchmark --work-dir /tmp/bench --files 10000 --files 100000"
+ * </pre>
+ */
+public class ScanBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(ScanBenchmark.class);
+
+    @Option(name = "--work-dir",
+            usage = "The directory to create the repositories in, which must not exist or be empty.",
+            required = true)
+    public String workDir;
+
+    @Option(name = "--files",
+            usage = "The number of source files in a repository to scan. Pass this arg multiple times for " +
+                    "multiple repositories. Defaults to 1000, 10000 and 100000.")
+    public List<Integer> sizes;
+
+    @Option(name = "--todos-per-thousand-lines",
+            usage = "The density of TODOs in the source files. Defaults to 2.")
+    public double todosPerThousandLines = 2;
+
+    @Option(name = "--repeats",
+            usage = "The number of times to run each scan, after a first run to warm up. Defaults to 3.")
+    public int repeats = 3;
+
+    @Option(name = "--cli",
+            usage = "Also time a --scan-only run of the tool, in a new JVM.")
+    public boolean cli = false;
+
+    public static void main(String[] args) throws Exception {
+        ScanBenchmark benchmark = new ScanBenchmark();
+        CmdLineParser parser = new CmdLineParser(benchmark);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            log.error(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        List<Integer> sizes = this.sizes == null ? asList(1000, 10000, 100000) : this.sizes;
+        Path workDir = Paths.get(this.workDir);
+        List<String> results = new ArrayList<>();
+        results.add("files,todos,generate_ms,git_grep_ms,working_tree_ms,cli_ms");
+
+        for (int size : sizes) {
+            SyntheticRepoGenerator generator = new SyntheticRepoGenerator();
+            generator.files = size;
+            generator.todosPerThousandLines = todosPerThousandLines;
+            long start = System.nanoTime();
+            SyntheticRepoGenerator.GeneratedRepo repo = generator.generate(workDir.resolve("repo-" + size));
+            long generateMillis = (System.nanoTime() - start) / 1000000;
+
+            GitCheckout gitCheckout = new GitCheckout(
+                    repo.getDir().toFile(),
+                    new SourceControlLinkFormatter.Github("https://github.com/example/project", "master"));
+            // The defaults, which exclude nothing
+            PathExclusions exclusions = PathExclusions.fromConfig(new TodoCheckerConfig());
+            TodoFinder gitGrep = new TodoFinder(gitCheckout);
+            TodoFinder workingTree = new TodoFinder(
+                    gitCheckout,
+                    null,
+                    new WorkingTreeScanner(Runtime.getRuntime().availableProcessors()));
+            long gitGrepMillis = bestOf(repo, () -> gitGrep.findAllTodosInSource(exclusions));
+            long workingTreeMillis = bestOf(repo, () -> workingTree.findAllTodosInSource(exclusions));
+            String cliMillis = cli ? Long.toString(timeCli(repo, workDir)) : "";
+
+            results.add(String.join(",",
+                    Integer.toString(repo.getFileCount()),
+                    Integer.toString(repo.getExpectedTodoCount()),
+                    Long.toString(generateMillis),
+                    Long.toString(gitGrepMillis),
+                    Long.toString(workingTreeMillis),
+                    cliMillis));
+        }
+
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * @return the fastest time, in milliseconds, of the repeated runs
+     */
+    private long bestOf(SyntheticRepoGenerator.GeneratedRepo repo, Callable<List<CodeTodo>> scan) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i <= repeats; i++) {
+            long start = System.nanoTime();
+            List<CodeTodo> todos = scan.call();
+            long millis = (System.nanoTime() - start) / 1000000;
+            if (todos.size() != repo.getExpectedTodoCount()) {
+                throw new IllegalStateException(String.format(
+                        "Found %d TODOs in %s, but expected %d",
+                        todos.size(),
+                        repo.getDir(),
+                        repo.getExpectedTodoCount()));
+            }
+            // (The first run warms up the JVM and the file system cache)
+            if (i > 0) {
+                best = Math.min(best, millis);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs the tool with `--scan-only`, as a user would, in a new JVM with the same
+     * classpath as this one. (This needs the benchmark to be forked by sbt, so that the
+     * classpath is the project's rather than sbt's own.)
+     *
+     * @return the time it took, in milliseconds
+     */
+    private static long timeCli(SyntheticRepoGenerator.GeneratedRepo repo, Path workDir) throws Exception {
+        Path scanFile = workDir.resolve(repo.getDir().getFileName() + ".scan");
+        Path logFile = workDir.resolve(repo.getDir().getFileName() + ".log");
+        List<String> cmd = asList(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                TodoCheckerMain.class.getName(),
+                "--src",
+                repo.getDir().toString(),
+                "--scan-only",
+                scanFile.toString());
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(cmd)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start();
+        int exitCode = process.waitFor();
+        long millis = (System.nanoTime() - start) / 1000000;
+        if (exitCode != 0) {
+            throw new IllegalStateException("The --scan-only run failed, see " + logFile);
+        }
+        Files.delete(scanFile);
+        return millis;
+    }
+}
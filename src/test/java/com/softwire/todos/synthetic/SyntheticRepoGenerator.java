@@ -0,0 +1,321 @@
+package com.softwire.todos.synthetic;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Creates a git repository of made-up source files, with TODOs in them, for testing
+ * how the tool copes with large codebases without needing a real one.
+ * <p>
+ * The repository has a single commit, which is streamed into `git fast-import`, so
+ * that creating a million files doesn't need a million git commands. The files are
+ * then checked out, since the scanners read the working tree. Everything is chosen
+ * by a seeded {@link Random}, and the commit has a fixed date, so the same options
+ * always give the same commit.
+ * <p>
+ * Run it with e.g.
+ * <pre>
+ *   sbt "test:runMain com.softwire.todos.synthetic.SyntheticRepoGenerator --dir /tmp/repo --files 100000"
+ * </pre>
+ */
+public class SyntheticRepoGenerator {
+    private static final Logger log = LoggerFactory.getLogger(SyntheticRepoGenerator.class);
+
+    // By file extension, the start and end of a comment
+    private static final List<String[]> LANGUAGES = asList(
+            new String[]{"java", "// ", ""},
+            new String[]{"js", "// ", ""},
+            new String[]{"py", "# ", ""},
+            new String[]{"sh", "# ", ""},
+            new String[]{"xml", "<!-- ", " -->"});
+    // The ways a TODO may refer to a card, where %1$s is the project key and %2$d the
+    // card number
+    private static final List<String> KEYED_TODO_FORMATS = asList(
+            "TODO %1$s-%2$d: tidy this up",  // todo-checker-ignore
+            "todo(%1$s-%2$d) handle the empty case",  // todo-checker-ignore
+            "TODO: %1$s_%2$d remove once migrated",  // todo-checker-ignore
+            "ToDo %1$s:%2$d check with the team");  // todo-checker-ignore
+    // Another project, whose cards aren't in --project-key
+    private static final String OTHER_PROJECT_KEY = "ZZZ";
+    private static final String UNKEYED_TODO = "TODO work out why this is needed";  // todo-checker-ignore
+    // Mentions todos without being one: the scanners only match "todo" as a whole word
+    private static final String NEAR_MISS = "todoList.add(item);";
+    private static final String COMMITTER = "Synthetic <synthetic@example.com> 1500000000 +0000";
+
+    @Option(name = "--dir",
+            usage = "The directory to create the repository in, which must not exist or be empty.",
+            required = true)
+    public String dir;
+
+    @Option(name = "--files",
+            usage = "The number of source files, not counting --binary-fraction or --vendored-files. " +
+                    "Defaults to 10000.")
+    public int files = 10000;
+
+    @Option(name = "--max-depth",
+            usage = "The deepest directory a file may be in. Defaults to 8.")
+    public int maxDepth = 8;
+
+    @Option(name = "--fan-out",
+            usage = "The number of subdirectories of each directory. Files are skewed towards the first few, " +
+                    "as in a real codebase. Defaults to 10.")
+    public int fanOut = 10;
+
+    @Option(name = "--lines-per-file",
+            usage = "The average number of lines in a source file. Defaults to 40.")
+    public int linesPerFile = 40;
+
+    @Option(name = "--todos-per-thousand-lines",
+            usage = "The density of TODOs in the source files. Defaults to 2.")
+    public double todosPerThousandLines = 2;
+
+    @Option(name = "--unkeyed-todo-fraction",
+            usage = "The fraction of TODOs without a card, or with a card in another project. Defaults to 0.1.")
+    public double unkeyedTodoFraction = 0.1;
+
+    @Option(name = "--project-key",
+            usage = "The JIRA project of the cards referred to by TODOs. Defaults to ABC.")
+    public String projectKey = "ABC";
+
+    @Option(name = "--cards",
+            usage = "The number of cards in --project-key referred to by TODOs. Defaults to 1000.")
+    public int cards = 1000;
+
+    @Option(name = "--binary-fraction",
+            usage = "The number of binary files, which contain TODOs which should not be found, as a fraction " +
+                    "of --files. Defaults to 0.01.")
+    public double binaryFraction = 0.01;
+
+    @Option(name = "--vendored-files",
+            usage = "The number of source files under a vendor/ directory. Defaults to 0.")
+    public int vendoredFiles = 0;
+
+    @Option(name = "--ignore-vendored",
+            usage = "Exclude the vendor/ directory in a .todocheckerignore file.")
+    public boolean ignoreVendored = false;
+
+    @Option(name = "--seed",
+            usage = "The seed for the random choices. Defaults to 1.")
+    public long seed = 1;
+
+    public static void main(String[] args) throws Exception {
+        SyntheticRepoGenerator generator = new SyntheticRepoGenerator();
+        CmdLineParser parser = new CmdLineParser(generator);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            log.error(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(1);
+        }
+        GeneratedRepo repo = generator.generate(Paths.get(generator.dir));
+        log.info("Created {}", repo);
+    }
+
+    /**
+     * Creates the repository.
+     *
+     * @param dir the directory to create it in, which must not exist or be empty
+     */
+    public GeneratedRepo generate(Path dir) throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+        try (Stream<Path> contents = Files.list(dir)) {
+            if (contents.findAny().isPresent()) {
+                throw new IllegalArgumentException("Not an empty directory: " + dir);
+            }
+        }
+        long start = System.nanoTime();
+        git(dir, "init", "-q");
+        // Whatever init.defaultBranch is
+        git(dir, "symbolic-ref", "HEAD", "refs/heads/master");
+        // So that the tool can work out links to the TODOs, as for a real checkout
+        git(dir, "remote", "add", "origin", "git@github.com:example/synthetic.git");
+
+        Random random = new Random(seed);
+        GeneratedRepo repo = new GeneratedRepo(dir);
+        Process fastImport = new ProcessBuilder("git", "fast-import", "--quiet")
+                .directory(dir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (OutputStream out = new BufferedOutputStream(fastImport.getOutputStream(), 1 << 20)) {
+            byte[] message = "Synthetic repository\n".getBytes(StandardCharsets.UTF_8);
+            write(out, "commit refs/heads/master\ncommitter " + COMMITTER + "\ndata " + message.length + "\n");
+            out.write(message);
+
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            for (int i = 0; i < files; i++) {
+                contents.reset();
+                String[] language = LANGUAGES.get(random.nextInt(LANGUAGES.size()));
+                repo.todoCount += writeSource(contents, language, random);
+                writeFile(out, directory(random, "src") + "/file" + i + "." + language[0], contents.toByteArray());
+                repo.fileCount++;
+            }
+            int binaryFiles = (int) Math.round(files * binaryFraction);
+            for (int i = 0; i < binaryFiles; i++) {
+                contents.reset();
+                writeBinary(contents, random);
+                writeFile(out, directory(random, "assets") + "/blob" + i + ".bin", contents.toByteArray());
+                repo.fileCount++;
+            }
+            for (int i = 0; i < vendoredFiles; i++) {
+                contents.reset();
+                String[] language = LANGUAGES.get(random.nextInt(LANGUAGES.size()));
+                repo.vendoredTodoCount += writeSource(contents, language, random);
+                writeFile(out, directory(random, "vendor") + "/file" + i + "." + language[0], contents.toByteArray());
+                repo.fileCount++;
+            }
+            if (ignoreVendored) {
+                writeFile(out, ".todocheckerignore", "vendor/\n".getBytes(StandardCharsets.UTF_8));
+                repo.fileCount++;
+            }
+        }
+        int exitCode = fastImport.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("git fast-import failed with exit code " + exitCode);
+        }
+        git(dir, "reset", "-q", "--hard");
+        repo.vendoredTodosIgnored = ignoreVendored;
+
+        log.info("Generated {} files in {}ms", repo.fileCount, (System.nanoTime() - start) / 1000000);
+        return repo;
+    }
+
+    /**
+     * Writes a made-up source file.
+     *
+     * @return the number of TODOs in it
+     */
+    private int writeSource(ByteArrayOutputStream out, String[] language, Random random) throws IOException {
+        int todos = 0;
+        int lines = 1 + random.nextInt(2 * linesPerFile);
+        for (int line = 0; line < lines; line++) {
+            String text;
+            if (random.nextDouble() * 1000 < todosPerThousandLines) {
+                text = "    " + language[1] + todo(random) + language[2];
+                todos++;
+            } else if (random.nextInt(50) == 0) {
+                text = "    " + NEAR_MISS;
+            } else {
+                text = "    int value" + line + " = compute(" + random.nextInt(1000) + ");";
+            }
+            write(out, text + "\n");
+        }
+        return todos;
+    }
+
+    private String todo(Random random) {
+        if (random.nextDouble() < unkeyedTodoFraction) {
+            return random.nextBoolean()
+                    ? UNKEYED_TODO
+                    : String.format(KEYED_TODO_FORMATS.get(0), OTHER_PROJECT_KEY, 1 + random.nextInt(cards));
+        }
+        String format = KEYED_TODO_FORMATS.get(random.nextInt(KEYED_TODO_FORMATS.size()));
+        String key = random.nextInt(10) == 0 ? projectKey.toLowerCase() : projectKey;
+        return String.format(format, key, 1 + random.nextInt(cards));
+    }
+
+    /**
+     * Writes a file which git takes to be binary, as it has a NUL in it, so that the
+     * TODO in it should not be found.
+     */
+    private static void writeBinary(ByteArrayOutputStream out, Random random) throws IOException {
+        byte[] bytes = new byte[256 + random.nextInt(4096)];
+        random.nextBytes(bytes);
+        bytes[0] = 0;
+        out.write(bytes);
+        write(out, "\n" + UNKEYED_TODO + "\n");
+    }
+
+    /**
+     * A directory under the given top-level directory, with the choice of each
+     * subdirectory skewed towards the first, so that some directories are much
+     * bigger than others.
+     */
+    private String directory(Random random, String top) {
+        StringBuilder path = new StringBuilder(top);
+        int depth = random.nextInt(maxDepth);
+        for (int level = 0; level < depth; level++) {
+            double skewed = random.nextDouble();
+            path.append("/dir").append((int) (skewed * skewed * fanOut));
+        }
+        return path.toString();
+    }
+
+    private static void writeFile(OutputStream out, String path, byte[] contents) throws IOException {
+        write(out, "M 100644 inline " + path + "\ndata " + contents.length + "\n");
+        out.write(contents);
+        out.write('\n');
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void git(Path dir, String... args) throws IOException, InterruptedException {
+        List<String> cmd = new ArrayList<>(asList("git"));
+        cmd.addAll(asList(args));
+        int exitCode = new ProcessBuilder(cmd).directory(dir.toFile()).inheritIO().start().waitFor();
+        if (exitCode != 0) {
+            throw new IOException(cmd + " failed with exit code " + exitCode);
+        }
+    }
+
+    /**
+     * What was generated, and how many TODOs a scan should find in it.
+     */
+    public static class GeneratedRepo {
+        private final Path dir;
+        private int fileCount;
+        private int todoCount;
+        private int vendoredTodoCount;
+        private boolean vendoredTodosIgnored;
+
+        GeneratedRepo(Path dir) {
+            this.dir = dir;
+        }
+
+        public Path getDir() {
+            return dir;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * The number of TODOs a scan should find, with or without a card. (The TODOs in
+         * binary files, and in the vendor/ directory if it is ignored, are not counted.)
+         */
+        public int getExpectedTodoCount() {
+            return todoCount + (vendoredTodosIgnored ? 0 : vendoredTodoCount);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%s, with %d files and %d TODOs to find",
+                    dir,
+                    fileCount,
+                    getExpectedTodoCount());
+        }
+    }
+}
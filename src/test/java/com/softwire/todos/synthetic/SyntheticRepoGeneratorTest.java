@@ -0,0 +1,74 @@
+package com.softwire.todos.synthetic;
+
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.PathExclusions;
+import com.softwire.todos.TodoCheckerConfig;
+import com.softwire.todos.TodoFinder;
+import com.softwire.todos.worktree.WorkingTreeScanner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class SyntheticRepoGeneratorTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatScansFindTheExpectedTodos() throws Exception {
+        // Arrange
+        SyntheticRepoGenerator generator = new SyntheticRepoGenerator();
+        generator.files = 300;
+        generator.todosPerThousandLines = 20;
+        generator.binaryFraction = 0.1;
+        generator.vendoredFiles = 50;
+        generator.ignoreVendored = true;
+        Path root = tempFolder.newFolder("synthetic").toPath();
+
+        // Act
+        SyntheticRepoGenerator.GeneratedRepo repo = generator.generate(root);
+
+        // Assert
+        assertThat(repo.getFileCount(), equalTo(300 + 30 + 50 + 1));
+        assertThat(repo.getExpectedTodoCount(), not(equalTo(0)));
+        GitCheckout gitCheckout = new GitCheckout(root.toFile(), new TodoCheckerConfig());
+        PathExclusions exclusions = PathExclusions.fromConfig(new TodoCheckerConfig());
+        List<CodeTodo> grepped = new TodoFinder(gitCheckout).findAllTodosInSource(exclusions);
+        List<CodeTodo> read = new TodoFinder(gitCheckout, null, new WorkingTreeScanner(2))
+                .findAllTodosInSource(exclusions);
+        assertThat(grepped.size(), equalTo(repo.getExpectedTodoCount()));
+        assertThat(read.size(), equalTo(repo.getExpectedTodoCount()));
+        // (The link format is worked out from the origin)
+        assertThat(
+                gitCheckout.getSourceControlLinkFormatter().getBaseUrl(),
+                equalTo("https://github.com/example/synthetic"));
+    }
+
+    @Test
+    public void testThatTheSameSeedGivesTheSameCommit() throws Exception {
+        // Arrange
+        SyntheticRepoGenerator generator = new SyntheticRepoGenerator();
+        generator.files = 100;
+
+        // Act
+        SyntheticRepoGenerator.GeneratedRepo first = generator.generate(tempFolder.newFolder("first").toPath());
+        SyntheticRepoGenerator.GeneratedRepo second = generator.generate(tempFolder.newFolder("second").toPath());
+
+        // Assert
+        assertThat(head(first), equalTo(head(second)));
+    }
+
+    private static String head(SyntheticRepoGenerator.GeneratedRepo repo) throws Exception {
+        return new GitCheckout(repo.getDir().toFile(), new TodoCheckerConfig())
+                .git(asList("rev-parse", "HEAD")).get(0);
+    }
+}
@@ -0,0 +1,68 @@
+package com.softwire.todos.webhook;
+
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import com.softwire.todos.TodoFinder;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class PushQueueTest {
+    private static final TodoFinder PROJECT_A = todoFinder("project-a");
+    private static final TodoFinder PROJECT_B = todoFinder("project-b");
+
+    @Test
+    public void testThatPushesToTheSameBranchAreCoalesced() throws Exception {
+        // Arrange
+        PushQueue queue = new PushQueue(10);
+
+        // Act
+        PushQueue.OfferResult first = queue.offer(new PendingCheck(PROJECT_A, "master", "c1", "c2"));
+        PushQueue.OfferResult second = queue.offer(new PendingCheck(PROJECT_A, "master", "c2", "c3"));
+        PushQueue.OfferResult otherBranch = queue.offer(new PendingCheck(PROJECT_A, "release", "c1", "c4"));
+        PushQueue.OfferResult otherRepository = queue.offer(new PendingCheck(PROJECT_B, "master", "c1", "c5"));
+
+        // Assert
+        assertThat(first, equalTo(PushQueue.OfferResult.QUEUED));
+        assertThat(second, equalTo(PushQueue.OfferResult.COALESCED));
+        assertThat(otherBranch, equalTo(PushQueue.OfferResult.QUEUED));
+        assertThat(otherRepository, equalTo(PushQueue.OfferResult.QUEUED));
+        assertThat(queue.size(), equalTo(3));
+        // The coalesced check covers both pushes, and keeps its place in the queue
+        PendingCheck coalesced = queue.take();
+        assertThat(coalesced.getBranchName(), equalTo("master"));
+        assertThat(coalesced.getBefore(), equalTo("c1"));
+        assertThat(coalesced.getAfter(), equalTo("c3"));
+        assertThat(queue.take().getBranchName(), equalTo("release"));
+    }
+
+    @Test
+    public void testThatNewBranchesAreRejectedWhenTheQueueIsFull() throws Exception {
+        // Arrange
+        PushQueue queue = new PushQueue(2);
+        queue.offer(new PendingCheck(PROJECT_A, "master", "c1", "c2"));
+        queue.offer(new PendingCheck(PROJECT_B, "master", "c1", "c2"));
+
+        // Act
+        PushQueue.OfferResult newBranch = queue.offer(new PendingCheck(PROJECT_A, "release", "c1", "c2"));
+        PushQueue.OfferResult queuedBranch = queue.offer(new PendingCheck(PROJECT_A, "master", "c2", "c3"));
+        queue.take();
+        PushQueue.OfferResult afterTake = queue.offer(new PendingCheck(PROJECT_A, "release", "c1", "c2"));
+
+        // Assert
+        assertThat(newBranch, equalTo(PushQueue.OfferResult.REJECTED));
+        // (A push to a branch which is already queued takes no more room)
+        assertThat(queuedBranch, equalTo(PushQueue.OfferResult.COALESCED));
+        assertThat(afterTake, equalTo(PushQueue.OfferResult.QUEUED));
+        assertThat(queue.size(), equalTo(2));
+    }
+
+    private static TodoFinder todoFinder(String name) {
+        return new TodoFinder(new GitCheckout(
+                new File(name),
+                new SourceControlLinkFormatter.Github("https://github.com/example/" + name, "master")));
+    }
+}
@@ -0,0 +1,62 @@
+package com.softwire.todos.webhook;
+
+import com.sun.net.httpserver.Headers;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class WebhookServerTest {
+    private static final byte[] BODY = "{\"ref\":\"refs/heads/master\"}".getBytes(StandardCharsets.UTF_8);
+    // HMAC-SHA256 of BODY with the key "secret"
+    private static final String SIGNATURE =
+            "sha256=18bd702ca7dab5713101db346ec6cd6768820c090515db9744deff53bc95ff52";
+
+    @Test
+    public void testThatGithubSignaturesAreChecked() throws Exception {
+        assertThat(WebhookServer.isAuthorised("secret", headers("X-Hub-Signature-256", SIGNATURE), BODY),
+                equalTo(true));
+        assertThat(WebhookServer.isAuthorised("wrong", headers("X-Hub-Signature-256", SIGNATURE), BODY),
+                equalTo(false));
+        byte[] tamperedBody = "{\"ref\":\"refs/heads/other\"}".getBytes(StandardCharsets.UTF_8);
+        assertThat(WebhookServer.isAuthorised("secret", headers("X-Hub-Signature-256", SIGNATURE), tamperedBody),
+                equalTo(false));
+    }
+
+    @Test
+    public void testThatGitlabTokensAreChecked() throws Exception {
+        assertThat(WebhookServer.isAuthorised("secret", headers("X-Gitlab-Token", "secret"), BODY),
+                equalTo(true));
+        assertThat(WebhookServer.isAuthorised("secret", headers("X-Gitlab-Token", "secrets"), BODY),
+                equalTo(false));
+    }
+
+    @Test
+    public void testThatUnsignedRequestsAreOnlyAcceptedWithoutASecret() throws Exception {
+        assertThat(WebhookServer.isAuthorised("secret", new Headers(), BODY), equalTo(false));
+        assertThat(WebhookServer.isAuthorised(null, new Headers(), BODY), equalTo(true));
+    }
+
+    @Test
+    public void testThatRepositoryUrlsAreNormalised() throws Exception {
+        String expected = "github.com/softwire/todo-checker";
+        assertThat(WebhookServer.normaliseRepositoryUrl("git@github.com:Softwire/todo-checker.git"),
+                equalTo(expected));
+        assertThat(WebhookServer.normaliseRepositoryUrl("https://github.com/Softwire/todo-checker"),
+                equalTo(expected));
+        assertThat(WebhookServer.normaliseRepositoryUrl("https://user@github.com/Softwire/todo-checker.git/"),
+                equalTo(expected));
+        assertThat(WebhookServer.normaliseRepositoryUrl("ssh://git@github.com:22/Softwire/todo-checker.git"),
+                equalTo(expected));
+        assertThat(WebhookServer.normaliseRepositoryUrl("git://github.com/softwire/todo-checker.git"),
+                equalTo(expected));
+    }
+
+    private static Headers headers(String name, String value) {
+        Headers headers = new Headers();
+        headers.add(name, value);
+        return headers;
+    }
+}
@@ -0,0 +1,82 @@
+package com.softwire.todos.worktree;
+
+import com.google.common.base.Strings;
+import com.softwire.todos.CodeTodo;
+import com.softwire.todos.GitCheckout;
+import com.softwire.todos.SourceControlLinkFormatter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.softwire.todos.TestRepositories.write;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class WorkingTreeScannerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testThatTodosAreFoundInFilesWhichAreNotIgnored() throws Exception {
+        // Arrange
+        Path root = tempFolder.getRoot().toPath();
+        write(root, ".gitignore", "build/\n*.log\n!keep.log\n/docs/*.md\n");
+        write(root, "src/.gitignore", "generated.java\n");
+        write(root, "src/Main.java", "class Main {\n// TODO AAA-1 tidy up\r\nint todos;\n/*ToDo*/ int x;\n}");  // todo-checker-ignore
+        write(root, "src/generated.java", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "build/Out.java", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "debug.log", "TODO ignored\n");  // todo-checker-ignore
+        write(root, "keep.log", "TODO kept\n");  // todo-checker-ignore
+        write(root, "docs/index.md", "TODO ignored\n");  // todo-checker-ignore
+        write(root, "docs/guide/index.md", "TODO kept\n");  // todo-checker-ignore
+        write(root, "image.bin", "\u0000TODO ignored\n");  // todo-checker-ignore
+        // (Large enough to be memory-mapped)
+        write(root, "large.txt", Strings.repeat("filler\n", 5000) + "todo: last line");  // todo-checker-ignore
+        GitCheckout gitCheckout = new GitCheckout(
+                root.toFile(),
+                new SourceControlLinkFormatter.Github("https://github.com/example/project", "master"));
+
+        // Act
+        List<CodeTodo> todos = new WorkingTreeScanner(2).scan(gitCheckout, emptyList());
+
+        // Assert
+        assertThat(
+                todos.stream()
+                        .map(todo -> todo.getPosixPath() + ":" + todo.getLineNumber() + ":" + todo.getLine())
+                        .collect(toList()),
+                equalTo(asList(
+                        "docs/guide/index.md:1:TODO kept",  // todo-checker-ignore
+                        "keep.log:1:TODO kept",  // todo-checker-ignore
+                        "large.txt:5001:todo: last line",  // todo-checker-ignore
+                        "src/Main.java:2:// TODO AAA-1 tidy up",  // todo-checker-ignore
+                        "src/Main.java:4:/*ToDo*/ int x;")));  // todo-checker-ignore
+    }
+
+    @Test
+    public void testThatExcludedPathsAreSkippedEvenIfAGitignoreIncludesThem() throws Exception {
+        // Arrange
+        Path root = tempFolder.getRoot().toPath();
+        write(root, ".gitignore", "!vendor/\n");
+        write(root, "vendor/lib.js", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "src/app.min.js", "// TODO ignored\n");  // todo-checker-ignore
+        write(root, "src/app.js", "// TODO kept\n");  // todo-checker-ignore
+        GitCheckout gitCheckout = new GitCheckout(
+                root.toFile(),
+                new SourceControlLinkFormatter.Github("https://github.com/example/project", "master"));
+
+        // Act
+        List<CodeTodo> todos = new WorkingTreeScanner(2).scan(gitCheckout, asList("vendor/", "*.min.js"));
+
+        // Assert
+        assertThat(
+                todos.stream().map(CodeTodo::getPosixPath).collect(toList()),
+                equalTo(asList("src/app.js")));
+    }
+}